@@ -0,0 +1,21 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the optional first argument (a regular expression, default all) with the GC profiler,
+ * so allocation rates are reported along with the timings.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : EditionReconciliationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
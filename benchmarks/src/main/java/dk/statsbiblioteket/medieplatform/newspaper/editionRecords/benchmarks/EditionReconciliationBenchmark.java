@@ -0,0 +1,144 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import dk.statsbiblioteket.medieplatform.autonomous.DomsItemFactory;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.EditionMetadata;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.EpochDays;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.ModsEditionExtractor;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.RelationDiff;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.RunnableEditionRecordRelationsMaintainer;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.TitleIntervalIndex;
+import dk.statsbiblioteket.util.xml.DOM;
+import dk.statsbiblioteket.util.xml.XPathSelector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the hot path of edition reconciliation, against in-memory fakes of DOMS and the title index.
+ * Run with the GC profiler ({@code -prof gc}, as {@link BenchmarkRunner} does) to see allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EditionReconciliationBenchmark {
+
+    private static final String PREDICATE = "http://doms.statsbiblioteket.dk/relations/default/0/1/#isPartOfNewspaper";
+    private static final int EDITIONS = 1024;
+
+    @Param({"1", "10", "50"})
+    public int titlesPerAvisID;
+
+    @Param({"0", "3", "10"})
+    public int existingRelations;
+
+    private SyntheticData data;
+    private RunnableEditionRecordRelationsMaintainer maintainer;
+    private ModsEditionExtractor extractor;
+    private TitleIntervalIndex titleIndex;
+    private List<Item> items;
+    private List<EditionMetadata> metadata;
+    private List<long[]> days;
+    private final RelationDiff relationDiff = new RelationDiff();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        data = new SyntheticData(100, titlesPerAvisID, EDITIONS, existingRelations, 42);
+        FakeFedora fedora = new FakeFedora(PREDICATE);
+        fedora.setPersistWrites(false);
+        data.load(fedora);
+        DomsItemFactory itemFactory = new DomsItemFactory();
+        maintainer = new RunnableEditionRecordRelationsMaintainer(new Properties(), fedora.proxy(), itemFactory,
+                                                                  new FakeNewspaperIndex(data.getTitles(),
+                                                                                         itemFactory));
+        extractor = new ModsEditionExtractor();
+        titleIndex = new TitleIntervalIndex(data.getTitles());
+        items = new ArrayList<>();
+        metadata = new ArrayList<>();
+        days = new ArrayList<>();
+        for (int e = 0; e < EDITIONS; e++) {
+            items.add(itemFactory.create(data.getEditionIDs().get(e)));
+            EditionMetadata edition = extractor.extract(data.getEditionMods().get(e));
+            metadata.add(edition);
+            days.add(new long[]{EpochDays.parse(edition.getDateIssued())});
+        }
+    }
+
+    private int nextEdition() {
+        next = (next + 1) % EDITIONS;
+        return next;
+    }
+
+    /**
+     * Reconcile one edition: read MODS, look up titles, read relations, diff and write.
+     */
+    @Benchmark
+    public void doWorkOnItem() throws Exception {
+        maintainer.doWorkOnItem(items.get(nextEdition()), null);
+    }
+
+    /**
+     * Extract avisID and issue date with the streaming extractor.
+     */
+    @Benchmark
+    public EditionMetadata parseModsStreaming() throws Exception {
+        return extractor.extract(data.getEditionMods().get(nextEdition()));
+    }
+
+    /**
+     * Extract avisID and issue date with DOM and XPath, as the maintainer did before the streaming extractor.
+     */
+    @Benchmark
+    public String parseModsDom() throws Exception {
+        Document newspaperDOM = DOM.stringToDOM(data.getEditionMods().get(nextEdition()), true);
+        XPathSelector xpath = DOM.createXPathSelector("v3", "http://www.loc.gov/mods/v3");
+        String avisID = xpath.selectString(newspaperDOM, "/v3:mods/v3:titleInfo[@type='uniform']/v3:title/text()");
+        String date = xpath.selectString(newspaperDOM, "/v3:mods/v3:originInfo/v3:dateIssued/text()");
+        return avisID + date;
+    }
+
+    /**
+     * Look up the titles of an edition in the in-memory title index.
+     */
+    @Benchmark
+    public List<String> titleLookup() {
+        int edition = nextEdition();
+        return titleIndex.lookup(metadata.get(edition).getAvisID(), days.get(edition)[0]);
+    }
+
+    /**
+     * Diff the wanted and existing relations of an edition.
+     */
+    @Benchmark
+    public boolean relationDiff() {
+        int edition = nextEdition();
+        RelationDiff diff = relationDiff.clear();
+        for (String wanted : titleIndex.lookup(metadata.get(edition).getAvisID(), days.get(edition)[0])) {
+            diff.getWanted().add(wanted);
+        }
+        for (String existing : data.getEditionRelations().get(edition)) {
+            diff.getExisting().add(existing);
+        }
+        return diff.compute().isEmpty();
+    }
+}
@@ -0,0 +1,163 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords.benchmarks;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.FedoraRelation;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory DOMS holding edition MODS and edition to newspaper relations, implementing the parts of
+ * {@link EnhancedFedora} the maintainer uses. Other methods throw {@link UnsupportedOperationException}.
+ */
+public class FakeFedora implements InvocationHandler {
+    private static final String URI_PREFIX = "info:fedora/";
+    private static final Pattern RELATION = Pattern.compile("isPartOfNewspaper[^>]*?resource=\"info:fedora/([^\"]+)\"");
+
+    private final ConcurrentMap<String, String> editions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CopyOnWriteArrayList<String>> relations = new ConcurrentHashMap<>();
+    private final String predicate;
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private volatile boolean persistWrites = true;
+
+    /**
+     * @param predicate The predicate of the relations from edition to newspaper title.
+     */
+    public FakeFedora(String predicate) {
+        this.predicate = predicate;
+    }
+
+    /**
+     * @return A DOMS client backed by this fake.
+     */
+    public EnhancedFedora proxy() {
+        return (EnhancedFedora) Proxy.newProxyInstance(EnhancedFedora.class.getClassLoader(),
+                                                       new Class<?>[]{EnhancedFedora.class}, this);
+    }
+
+    /**
+     * Add an edition.
+     *
+     * @param domsID The DOMS PID of the edition.
+     * @param mods The EDITION MODS.
+     * @param titles DOMS PIDs of the titles the edition has relations to.
+     */
+    public void putEdition(String domsID, String mods, List<String> titles) {
+        editions.put(domsID, mods);
+        relations.put(domsID, new CopyOnWriteArrayList<>(new LinkedHashSet<>(titles)));
+    }
+
+    /**
+     * @param persistWrites If false, writes are counted but do not change the relations, so the same work can be
+     * repeated.
+     */
+    public void setPersistWrites(boolean persistWrites) {
+        this.persistWrites = persistWrites;
+    }
+
+    /**
+     * @return The number of read calls made.
+     */
+    public long getReads() {
+        return reads.get();
+    }
+
+    /**
+     * @return The number of write calls made.
+     */
+    public long getWrites() {
+        return writes.get();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            try {
+                return method.invoke(this, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+        return handle(method.getName(), args);
+    }
+
+    /**
+     * Handle a call to the DOMS client.
+     *
+     * @param name The name of the called method.
+     * @param args The arguments of the call.
+     * @return The result of the call.
+     * @throws Exception as DOMS would.
+     */
+    protected Object handle(String name, Object[] args) throws Exception {
+        String pid = (String) args[0];
+        switch (name) {
+            case "getXMLDatastreamContents":
+                reads.incrementAndGet();
+                return "RELS-EXT".equals(args[1]) ? relsExt(pid) : editions.get(pid);
+            case "getNamedRelations":
+                reads.incrementAndGet();
+                List<FedoraRelation> result = new ArrayList<>();
+                for (String title : relationsOf(pid)) {
+                    result.add(new FedoraRelation(URI_PREFIX + pid, predicate, URI_PREFIX + title));
+                }
+                return result;
+            case "addRelation":
+                writes.incrementAndGet();
+                if (persistWrites) {
+                    relationsOf(pid).addIfAbsent(((String) args[3]).substring(URI_PREFIX.length()));
+                }
+                return null;
+            case "deleteRelation":
+                writes.incrementAndGet();
+                if (persistWrites) {
+                    relationsOf(pid).remove(((String) args[3]).substring(URI_PREFIX.length()));
+                }
+                return null;
+            case "modifyDatastreamByValue":
+                writes.incrementAndGet();
+                if (persistWrites && "RELS-EXT".equals(args[1])) {
+                    List<String> titles = new ArrayList<>();
+                    Matcher matcher = RELATION.matcher((String) args[2]);
+                    while (matcher.find()) {
+                        titles.add(matcher.group(1));
+                    }
+                    relations.put(pid, new CopyOnWriteArrayList<>(new LinkedHashSet<>(titles)));
+                }
+                return null;
+            case "modifyObjectState":
+                writes.incrementAndGet();
+                return null;
+            default:
+                throw new UnsupportedOperationException(name);
+        }
+    }
+
+    private CopyOnWriteArrayList<String> relationsOf(String pid) {
+        CopyOnWriteArrayList<String> titles = relations.get(pid);
+        return titles == null ? new CopyOnWriteArrayList<String>() : titles;
+    }
+
+    private String relsExt(String pid) {
+        StringBuilder relsExt = new StringBuilder();
+        relsExt.append("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns:doms=\"")
+               .append(predicate.substring(0, predicate.lastIndexOf('#') + 1)).append("\">")
+               .append("<rdf:Description rdf:about=\"info:fedora/").append(pid).append("\">");
+        for (String title : relationsOf(pid)) {
+            relsExt.append("<doms:isPartOfNewspaper rdf:resource=\"info:fedora/").append(title).append("\"/>");
+        }
+        return relsExt.append("</rdf:Description></rdf:RDF>").toString();
+    }
+}
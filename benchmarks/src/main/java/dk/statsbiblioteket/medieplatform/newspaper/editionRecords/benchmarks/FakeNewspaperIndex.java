@@ -0,0 +1,43 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords.benchmarks;
+
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.autonomous.ItemFactory;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.EpochDays;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.NewspaperIndex;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.TitleIntervalIndex;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.TitleRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Newspaper index answering from a fixed set of title records in memory, without SBOI.
+ */
+public class FakeNewspaperIndex extends NewspaperIndex {
+    private final TitleIntervalIndex titles;
+    private final ItemFactory<Item> itemFactory;
+
+    /**
+     * @param titles The title records.
+     * @param itemFactory Factory for the returned items.
+     */
+    public FakeNewspaperIndex(List<TitleRecord> titles, ItemFactory<Item> itemFactory) {
+        super(null, itemFactory);
+        this.titles = new TitleIntervalIndex(titles);
+        this.itemFactory = itemFactory;
+    }
+
+    @Override
+    public List<Item> getNewspapers(String avisID, String date) {
+        List<Item> hits = new ArrayList<>();
+        for (String uuid : titles.lookup(avisID, EpochDays.parse(date))) {
+            hits.add(itemFactory.create(uuid));
+        }
+        return hits;
+    }
+
+    @Override
+    public TitleIntervalIndex getTitleIntervals(String avisID) {
+        return titles;
+    }
+}
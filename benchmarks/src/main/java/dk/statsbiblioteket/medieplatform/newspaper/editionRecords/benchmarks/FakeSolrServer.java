@@ -0,0 +1,133 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords.benchmarks;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+
+import dk.statsbiblioteket.medieplatform.autonomous.SBOIEventIndex;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.EpochDays;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.TitleRecord;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory SBOI answering the newspaper title queries of {@link
+ * dk.statsbiblioteket.medieplatform.newspaper.editionRecords.NewspaperIndex}, both the load of all titles and the
+ * lookup of titles by avisID and date, with cursor paging. Every request takes a latency drawn from a distribution,
+ * and fails with 503 at a given rate. Other queries match nothing.
+ */
+public class FakeSolrServer extends SolrServer {
+    private static final Pattern TITLE_QUERY = Pattern.compile("item_model:\"doms:ContentModel_Newspaper\"");
+    private static final Pattern AVIS_ID = Pattern.compile("newspapr_title_avisID:\"([^\"]*)\"");
+    private static final Pattern DATE = Pattern.compile("newspapr_title_startDate:\\[\\* TO ([^\\]]*)\\]");
+
+    private final List<TitleRecord> titles;
+    private final LatencyDistribution latency;
+    private final double errorRate;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * @param titles The newspaper title records.
+     * @param latency The latency of requests.
+     * @param errorRate The fraction of requests failing with 503 Service Unavailable.
+     */
+    public FakeSolrServer(List<TitleRecord> titles, LatencyDistribution latency, double errorRate) {
+        this.titles = new ArrayList<>(titles);
+        // Cursor paging requires a sort on the unique key
+        Collections.sort(this.titles, new Comparator<TitleRecord>() {
+            @Override
+            public int compare(TitleRecord o1, TitleRecord o2) {
+                return o1.getDomsID().compareTo(o2.getDomsID());
+            }
+        });
+        this.latency = latency;
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @return The number of requests made.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return The number of requests failed with 503.
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest request) throws SolrServerException {
+        requests.incrementAndGet();
+        try {
+            latency.sleep();
+        } catch (InterruptedException e) {
+            throw new SolrServerException("Interrupted", e);
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            errors.incrementAndGet();
+            throw new SolrServerException(
+                    new SolrException(SolrException.ErrorCode.SERVICE_UNAVAILABLE, "Service Unavailable"));
+        }
+        SolrParams params = request.getParams();
+        String query = params.get("q");
+        int rows = params.get("rows") == null ? 10 : Integer.parseInt(params.get("rows"));
+        String cursorMark = params.get("cursorMark");
+        SolrDocumentList results = new SolrDocumentList();
+        String lastUuid = cursorMark;
+        if (query != null && TITLE_QUERY.matcher(query).find()) {
+            Matcher avisIDMatcher = AVIS_ID.matcher(query);
+            String avisID = avisIDMatcher.find() ? avisIDMatcher.group(1) : null;
+            Matcher dateMatcher = DATE.matcher(query);
+            Long day = dateMatcher.find() ? EpochDays.parse(dateMatcher.group(1)) : null;
+            for (TitleRecord title : titles) {
+                if (results.size() == rows) {
+                    break;
+                }
+                // The cursor mark is the UUID of the last title returned
+                if (!"*".equals(cursorMark) && title.getDomsID().compareTo(cursorMark) <= 0) {
+                    continue;
+                }
+                if ((avisID != null && !avisID.equals(title.getAvisID()))
+                    || (day != null && (title.getStartDay() > day || title.getEndDay() < day))) {
+                    continue;
+                }
+                results.add(toDocument(title));
+                lastUuid = title.getDomsID();
+            }
+        }
+        results.setNumFound(results.size());
+        NamedList<Object> response = new NamedList<>();
+        response.add("response", results);
+        response.add("nextCursorMark", lastUuid);
+        return response;
+    }
+
+    private static SolrDocument toDocument(TitleRecord title) {
+        SolrDocument document = new SolrDocument();
+        document.setField(SBOIEventIndex.UUID, title.getDomsID());
+        document.setField("newspapr_title_avisID", title.getAvisID());
+        document.setField("newspapr_title_startDate", EpochDays.format(title.getStartDay()));
+        document.setField("newspapr_title_endDate", EpochDays.format(title.getEndDay()));
+        return document;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
@@ -0,0 +1,46 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log-normal distribution of simulated call latencies, given by the median and the 99th percentile. Backend
+ * latencies are typically skewed like this: most calls are close to the median, with a long tail of slow ones.
+ */
+public class LatencyDistribution {
+    private static final double Z_99 = 2.3263;
+
+    private final double medianNanos;
+    private final double sigma;
+
+    /**
+     * @param medianMillis The median latency in milliseconds. 0 for no latency.
+     * @param p99Millis The 99th percentile latency in milliseconds, at least the median.
+     */
+    public LatencyDistribution(double medianMillis, double p99Millis) {
+        if (p99Millis < medianMillis) {
+            throw new IllegalArgumentException("99th percentile " + p99Millis + " below median " + medianMillis);
+        }
+        this.medianNanos = medianMillis * 1e6;
+        this.sigma = medianMillis > 0 ? Math.log(p99Millis / medianMillis) / Z_99 : 0;
+    }
+
+    /**
+     * @return A latency drawn from the distribution, in nanoseconds.
+     */
+    public long sampleNanos() {
+        return (long) (medianNanos * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    /**
+     * Sleep for a latency drawn from the distribution.
+     *
+     * @throws InterruptedException if interrupted while sleeping.
+     */
+    public void sleep() throws InterruptedException {
+        long nanos = sampleNanos();
+        if (nanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+}
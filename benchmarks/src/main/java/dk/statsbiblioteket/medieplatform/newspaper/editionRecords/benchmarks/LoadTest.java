@@ -0,0 +1,228 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords.benchmarks;
+
+import org.apache.solr.client.solrj.SolrServer;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.medieplatform.autonomous.DomsItemFactory;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.AdaptiveCallLimiter;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.EditionRecordsMetrics;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.FixedCallLimiter;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.LatencyHistogram;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.LimitedFedora;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.MeteredFedora;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.NewspaperIndex;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.PerRelationWriter;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.RelationsWriter;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.RelsExtRelationsWriter;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.RetryBudget;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.RunnableEditionRecordRelationsMaintainer;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.StateAwareRelationsWriter;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the real maintainer against simulated DOMS and SBOI in the same JVM, with synthetic editions and
+ * titles and configurable latency and failure distributions. For each thread count, all editions are reconciled by
+ * that many threads calling {@link RunnableEditionRecordRelationsMaintainer#doWorkOnItem}, as the autonomous component
+ * does, and the throughput, the latency percentiles per edition and the failures are reported.
+ * <p>
+ * Usage: {@code LoadTest [name=value ...]}, see {@link #DEFAULTS} for the settings and their defaults. Latencies are
+ * in milliseconds, given as median and 99th percentile.
+ */
+public class LoadTest {
+
+    private static final String PREDICATE = "http://doms.statsbiblioteket.dk/relations/default/0/1/#isPartOfNewspaper";
+
+    /**
+     * The settings and their defaults.
+     */
+    static final String[][] DEFAULTS = {
+            {"threads", "1,4,16,64", "Thread counts to test, comma separated"},
+            {"editions", "2000", "Editions reconciled per thread count"},
+            {"avisIDs", "100", "Number of newspapers"},
+            {"titlesPerAvisID", "10", "Titles per newspaper"},
+            {"existingRelations", "3", "Existing relations per edition, some of them wrong"},
+            {"domsRead", "5,50", "DOMS read latency, median and 99th percentile"},
+            {"domsWrite", "20,200", "DOMS write latency, median and 99th percentile"},
+            {"sboi", "3,30", "SBOI query latency, median and 99th percentile"},
+            {"conflictRate", "0.01", "Fraction of DOMS writes failing with 409 Conflict"},
+            {"sboiErrorRate", "0", "Fraction of SBOI queries failing with 503"},
+            {"published", "0.5", "Fraction of editions published, rejecting writes until unpublished"},
+            {"titlesInMemory", "true", "Keep the titles in memory instead of querying SBOI per edition"},
+            {"writer", "perRelation", "perRelation, relsExt, stateAware or stateAwareRelsExt"},
+            {"maxConcurrentCalls", "0", "Fixed limit on concurrent DOMS calls, 0 for none"},
+            {"adaptive", "false", "Adapt concurrent DOMS calls to latency and retry 409s within a budget"},
+            {"seed", "42", "Seed for the synthetic data"}};
+
+    public static void main(String[] args) throws Exception {
+        Properties settings = new Properties();
+        for (String[] setting : DEFAULTS) {
+            settings.setProperty(setting[0], setting[1]);
+        }
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0 || settings.getProperty(arg.substring(0, equals)) == null) {
+                usage(System.err);
+                System.exit(1);
+            }
+            settings.setProperty(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        new LoadTest().run(settings, System.out);
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("Usage: " + LoadTest.class.getSimpleName() + " [name=value ...]");
+        for (String[] setting : DEFAULTS) {
+            out.printf(Locale.ROOT, "  %-18s %s (default %s)%n", setting[0], setting[2], setting[1]);
+        }
+    }
+
+    /**
+     * Run the load test for each thread count and print a line of results for each.
+     *
+     * @param settings The settings, see {@link #DEFAULTS}.
+     * @param out Where to print the results.
+     * @throws Exception if the test could not run.
+     */
+    public void run(Properties settings, PrintStream out) throws Exception {
+        SyntheticData data = new SyntheticData(intSetting(settings, "avisIDs"), intSetting(settings, "titlesPerAvisID"),
+                                               intSetting(settings, "editions"),
+                                               intSetting(settings, "existingRelations"),
+                                               Long.parseLong(settings.getProperty("seed")));
+        for (String[] setting : DEFAULTS) {
+            out.print(setting[0] + "=" + settings.getProperty(setting[0]) + " ");
+        }
+        out.println();
+        out.printf(Locale.ROOT, "%7s %8s %9s %8s %8s %8s %8s %8s %8s %8s %8s%n", "threads", "editions", "per sec",
+                   "p50 ms", "p99 ms", "p99.9 ms", "max ms", "failed", "409s", "rejected", "sboi");
+        for (String threads : settings.getProperty("threads").split(",")) {
+            Result result = runOnce(settings, data, Integer.parseInt(threads.trim()));
+            LatencyHistogram latency = result.metrics.getLatency(EditionRecordsMetrics.Phase.ITEM);
+            out.printf(Locale.ROOT, "%7d %8d %9.1f %8.1f %8.1f %8.1f %8.1f %8d %8d %8d %8d%n", result.threads,
+                       latency.getCount(), latency.getCount() * 1e9 / result.elapsedNanos,
+                       latency.getMedianMillis(), latency.get99thPercentileMillis(),
+                       latency.getPercentileMillis(0.999), latency.getMaxMillis(), result.failed,
+                       result.fedora.getConflicts(), result.fedora.getRejections(), result.solrServer.getRequests());
+        }
+    }
+
+    /**
+     * Reconcile all editions with the given number of threads, against fresh simulated backends.
+     */
+    private Result runOnce(Properties settings, SyntheticData data, int threads) throws Exception {
+        Result result = new Result();
+        result.threads = threads;
+        result.metrics = new EditionRecordsMetrics();
+        result.fedora = new SimulatedFedora(PREDICATE, latencySetting(settings, "domsRead"),
+                                            latencySetting(settings, "domsWrite"),
+                                            Double.parseDouble(settings.getProperty("conflictRate")));
+        data.load(result.fedora);
+        result.fedora.publish(data.getEditionIDs(), Double.parseDouble(settings.getProperty("published")),
+                              Long.parseLong(settings.getProperty("seed")));
+        result.solrServer = new FakeSolrServer(data.getTitles(), latencySetting(settings, "sboi"),
+                                               Double.parseDouble(settings.getProperty("sboiErrorRate")));
+
+        EnhancedFedora eFedora = createFedora(settings, result.fedora.proxy(), result.metrics);
+        DomsItemFactory itemFactory = new DomsItemFactory();
+        SolrServer solrServer = result.solrServer;
+        NewspaperIndex newspaperIndex = Boolean.parseBoolean(settings.getProperty("titlesInMemory"))
+                                        ? new NewspaperIndex(solrServer, itemFactory, Long.MAX_VALUE)
+                                        : new NewspaperIndex(solrServer, itemFactory);
+        final RunnableEditionRecordRelationsMaintainer maintainer = new RunnableEditionRecordRelationsMaintainer(
+                new Properties(), eFedora, itemFactory, newspaperIndex);
+        maintainer.setMetrics(result.metrics);
+        maintainer.setRelationsWriter(createRelationsWriter(settings.getProperty("writer"), eFedora));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final AtomicLong failed = new AtomicLong();
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (String domsID : data.getEditionIDs()) {
+                final Item item = itemFactory.create(domsID);
+                tasks.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            // The maintainer reports failures by throwing, and does not use the result collector
+                            maintainer.doWorkOnItem(item, null);
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            result.elapsedNanos = System.nanoTime() - start;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            newspaperIndex.close();
+        }
+        result.failed = failed.get();
+        return result;
+    }
+
+    private static EnhancedFedora createFedora(Properties settings, EnhancedFedora eFedora,
+                                               EditionRecordsMetrics metrics) {
+        int maxConcurrentCalls = intSetting(settings, "maxConcurrentCalls");
+        if (Boolean.parseBoolean(settings.getProperty("adaptive"))) {
+            RetryBudget retryBudget = new RetryBudget(0.1, 10, 100);
+            metrics.addRetryBudget(retryBudget);
+            eFedora = LimitedFedora.wrap(eFedora, new AdaptiveCallLimiter("DOMS", 2, maxConcurrentCalls > 0
+                                                                                     ? maxConcurrentCalls : 64, 2,
+                                                                          2000), retryBudget);
+        } else if (maxConcurrentCalls > 0) {
+            eFedora = LimitedFedora.wrap(eFedora, new FixedCallLimiter(maxConcurrentCalls));
+        }
+        return MeteredFedora.wrap(eFedora, metrics);
+    }
+
+    private static RelationsWriter createRelationsWriter(String writer, EnhancedFedora eFedora) {
+        switch (writer) {
+            case "perRelation":
+                return new PerRelationWriter(eFedora, PREDICATE);
+            case "relsExt":
+                return new RelsExtRelationsWriter(eFedora, PREDICATE);
+            case "stateAware":
+                return new StateAwareRelationsWriter(eFedora, new PerRelationWriter(eFedora, PREDICATE));
+            case "stateAwareRelsExt":
+                return new StateAwareRelationsWriter(eFedora, new RelsExtRelationsWriter(eFedora, PREDICATE));
+            default:
+                throw new IllegalArgumentException("Unknown writer " + writer);
+        }
+    }
+
+    private static int intSetting(Properties settings, String name) {
+        return Integer.parseInt(settings.getProperty(name));
+    }
+
+    private static LatencyDistribution latencySetting(Properties settings, String name) {
+        String[] values = settings.getProperty(name).split(",");
+        return new LatencyDistribution(Double.parseDouble(values[0]), Double.parseDouble(values[1]));
+    }
+
+    /**
+     * The outcome of reconciling all editions with one thread count.
+     */
+    private static class Result {
+        private int threads;
+        private long elapsedNanos;
+        private long failed;
+        private EditionRecordsMetrics metrics;
+        private SimulatedFedora fedora;
+        private FakeSolrServer solrServer;
+    }
+}
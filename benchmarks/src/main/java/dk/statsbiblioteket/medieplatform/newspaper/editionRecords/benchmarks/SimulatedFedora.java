@@ -0,0 +1,158 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords.benchmarks;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidCredsException;
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.ObjectProfile;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link FakeFedora} with the latencies and failures of a real DOMS: every call takes a latency drawn from a read or
+ * write distribution, writes fail with 409 Conflict at a given rate, and relation writes to published editions are
+ * rejected until the edition is unpublished, as DOMS does.
+ */
+public class SimulatedFedora extends FakeFedora {
+    private static final String ACTIVE = "A";
+
+    private final LatencyDistribution readLatency;
+    private final LatencyDistribution writeLatency;
+    private final double conflictRate;
+    private final ConcurrentMap<String, String> states = new ConcurrentHashMap<>();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * @param predicate The predicate of the relations from edition to newspaper title.
+     * @param readLatency The latency of read calls.
+     * @param writeLatency The latency of write calls, including state changes.
+     * @param conflictRate The fraction of write calls failing with 409 Conflict.
+     */
+    public SimulatedFedora(String predicate, LatencyDistribution readLatency, LatencyDistribution writeLatency,
+                           double conflictRate) {
+        super(predicate);
+        this.readLatency = readLatency;
+        this.writeLatency = writeLatency;
+        this.conflictRate = conflictRate;
+    }
+
+    /**
+     * Publish a random fraction of the given editions.
+     *
+     * @param domsIDs The DOMS PIDs of the editions.
+     * @param fraction The fraction to publish.
+     * @param seed Seed for the random choice.
+     */
+    public void publish(List<String> domsIDs, double fraction, long seed) {
+        Random random = new Random(seed);
+        for (String domsID : domsIDs) {
+            if (random.nextDouble() < fraction) {
+                states.put(domsID, ACTIVE);
+            }
+        }
+    }
+
+    /**
+     * @return The number of writes failed with 409 Conflict.
+     */
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    /**
+     * @return The number of relation writes rejected because the edition was published.
+     */
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    @Override
+    protected Object handle(String name, Object[] args) throws Exception {
+        String pid = (String) args[0];
+        switch (name) {
+            case "getXMLDatastreamContents":
+            case "getNamedRelations":
+                readLatency.sleep();
+                return super.handle(name, args);
+            case "getObjectProfile":
+                readLatency.sleep();
+                ObjectProfile profile = new ObjectProfile();
+                profile.setState(getState(pid));
+                return profile;
+            case "modifyObjectState":
+                writeLatency.sleep();
+                conflict(name, pid);
+                states.put(pid, (String) args[1]);
+                return super.handle(name, args);
+            case "addRelation":
+            case "deleteRelation":
+            case "modifyDatastreamByValue":
+                writeLatency.sleep();
+                conflict(name, pid);
+                if (ACTIVE.equals(getState(pid))) {
+                    rejections.incrementAndGet();
+                    throw new BackendInvalidCredsException("Object " + pid + " is published and cannot be modified");
+                }
+                return super.handle(name, args);
+            default:
+                return super.handle(name, args);
+        }
+    }
+
+    private String getState(String pid) {
+        String state = states.get(pid);
+        return state == null ? "I" : state;
+    }
+
+    private void conflict(String name, String pid) throws BackendMethodFailedException {
+        if (conflictRate > 0 && ThreadLocalRandom.current().nextDouble() < conflictRate) {
+            conflicts.incrementAndGet();
+            throw new BackendMethodFailedException("Conflict in " + name + " of " + pid, new HttpFailure(409));
+        }
+    }
+
+    /**
+     * Failure of an HTTP call carrying the status of its response, as the failures of the Jersey client used by the
+     * DOMS client do.
+     */
+    public static class HttpFailure extends RuntimeException {
+        private final Response response;
+
+        /**
+         * @param status The HTTP status of the response.
+         */
+        public HttpFailure(int status) {
+            super("HTTP " + status);
+            this.response = new Response(status);
+        }
+
+        /**
+         * @return The response of the call.
+         */
+        public Response getResponse() {
+            return response;
+        }
+    }
+
+    /**
+     * Response of a failed HTTP call.
+     */
+    public static class Response {
+        private final int status;
+
+        private Response(int status) {
+            this.status = status;
+        }
+
+        /**
+         * @return The HTTP status.
+         */
+        public int getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords.benchmarks;
+
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.EpochDays;
+import dk.statsbiblioteket.medieplatform.newspaper.editionRecords.TitleRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Synthetic newspaper titles and editions of realistic shape. Each avisID has a number of titles with consecutive,
+ * slightly overlapping periods between 1750 and 2000. Each edition has an existing set of relations, some correct and
+ * some to titles of the wrong period.
+ */
+public class SyntheticData {
+    private static final long FIRST_DAY = EpochDays.parse("1750-01-01");
+    private static final long LAST_DAY = EpochDays.parse("2000-12-31");
+
+    private final List<TitleRecord> titles = new ArrayList<>();
+    private final List<String> editionIDs = new ArrayList<>();
+    private final List<String> editionMods = new ArrayList<>();
+    private final List<List<String>> editionRelations = new ArrayList<>();
+
+    /**
+     * @param avisIDs Number of newspapers.
+     * @param titlesPerAvisID Number of titles per newspaper.
+     * @param editions Number of editions.
+     * @param existingRelations Number of existing relations per edition.
+     * @param seed Seed for the random generator.
+     */
+    public SyntheticData(int avisIDs, int titlesPerAvisID, int editions, int existingRelations, long seed) {
+        Random random = new Random(seed);
+        long period = (LAST_DAY - FIRST_DAY) / titlesPerAvisID;
+        List<List<TitleRecord>> titlesByAvis = new ArrayList<>();
+        for (int avis = 0; avis < avisIDs; avis++) {
+            List<TitleRecord> avisTitles = new ArrayList<>();
+            for (int t = 0; t < titlesPerAvisID; t++) {
+                long start = FIRST_DAY + t * period;
+                avisTitles.add(new TitleRecord(newDomsID(random), avisID(avis), start, start + period + 30));
+            }
+            titles.addAll(avisTitles);
+            titlesByAvis.add(avisTitles);
+        }
+        for (int e = 0; e < editions; e++) {
+            int avis = random.nextInt(avisIDs);
+            long day = FIRST_DAY + (long) (random.nextDouble() * (LAST_DAY - FIRST_DAY));
+            editionIDs.add(newDomsID(random));
+            editionMods.add(mods(avisID(avis), EpochDays.format(day)));
+            List<String> relations = new ArrayList<>();
+            List<TitleRecord> avisTitles = titlesByAvis.get(avis);
+            for (int r = 0; r < existingRelations && r < avisTitles.size(); r++) {
+                relations.add(avisTitles.get(random.nextInt(avisTitles.size())).getDomsID());
+            }
+            editionRelations.add(relations);
+        }
+    }
+
+    /**
+     * Load the editions into a fake DOMS.
+     *
+     * @param fedora The fake DOMS.
+     */
+    public void load(FakeFedora fedora) {
+        for (int e = 0; e < editionIDs.size(); e++) {
+            fedora.putEdition(editionIDs.get(e), editionMods.get(e), editionRelations.get(e));
+        }
+    }
+
+    public List<TitleRecord> getTitles() {
+        return titles;
+    }
+
+    public List<String> getEditionIDs() {
+        return editionIDs;
+    }
+
+    public List<String> getEditionMods() {
+        return editionMods;
+    }
+
+    public List<List<String>> getEditionRelations() {
+        return editionRelations;
+    }
+
+    /**
+     * Make edition MODS as found in the EDITION datastream.
+     *
+     * @param avisID The avisID.
+     * @param date The issue date.
+     * @return The MODS.
+     */
+    public static String mods(String avisID, String date) {
+        return "<mods xmlns=\"http://www.loc.gov/mods/v3\">\n"
+               + "    <titleInfo type=\"uniform\" authority=\"Statens Avissamling\">\n"
+               + "        <title>" + avisID + "</title>\n"
+               + "    </titleInfo>\n"
+               + "    <relatedItem type=\"host\">\n"
+               + "        <titleInfo>\n"
+               + "            <title>Avisen</title>\n"
+               + "        </titleInfo>\n"
+               + "    </relatedItem>\n"
+               + "    <originInfo>\n"
+               + "        <dateIssued>" + date + "</dateIssued>\n"
+               + "    </originInfo>\n"
+               + "    <part>\n"
+               + "        <detail type=\"edition\">\n"
+               + "            <number>1</number>\n"
+               + "        </detail>\n"
+               + "    </part>\n"
+               + "</mods>";
+    }
+
+    private static String avisID(int avis) {
+        return "avis" + avis;
+    }
+
+    private static String newDomsID(Random random) {
+        return "uuid:" + new UUID(random.nextLong(), random.nextLong());
+    }
+}
@@ -0,0 +1,141 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+
+/**
+ * Wraps an HTTP client so the requests a thread executes through it can be aborted from another thread, closing their
+ * connections at once instead of waiting for the socket timeout. A thread {@link #begin}s with a {@link Handle}, and
+ * every request it executes until it {@link #end}s is aborted when the handle is. SolrJ gives no access to the requests
+ * it executes, so this is how a query it sends can be aborted.
+ */
+public class AbortableHttpClient implements HttpClient {
+    private static final ThreadLocal<Handle> CURRENT = new ThreadLocal<>();
+    private final HttpClient delegate;
+
+    /**
+     * Aborts the requests executed by a thread while it holds the handle.
+     */
+    public static class Handle {
+        private volatile HttpRequest request;
+        private volatile boolean aborted;
+
+        /**
+         * Abort the request being executed, if any, and any request executed later with this handle.
+         */
+        public void abort() {
+            aborted = true;
+            abort(request);
+        }
+
+        private void executing(HttpRequest request) {
+            this.request = request;
+            if (aborted) {
+                abort(request);
+            }
+        }
+
+        private static void abort(HttpRequest request) {
+            if (request instanceof HttpUriRequest) {
+                ((HttpUriRequest) request).abort();
+            }
+        }
+    }
+
+    /**
+     * @param delegate The HTTP client executing the requests.
+     */
+    public AbortableHttpClient(HttpClient delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Let the requests the calling thread executes from now on be aborted with the given handle.
+     *
+     * @param handle The handle.
+     */
+    public static void begin(Handle handle) {
+        CURRENT.set(handle);
+    }
+
+    /**
+     * Stop letting the requests the calling thread executes be aborted.
+     */
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    private static <R extends HttpRequest> R executing(R request) {
+        Handle handle = CURRENT.get();
+        if (handle != null) {
+            handle.executing(request);
+        }
+        return request;
+    }
+
+    @Override
+    public HttpParams getParams() {
+        return delegate.getParams();
+    }
+
+    @Override
+    public ClientConnectionManager getConnectionManager() {
+        return delegate.getConnectionManager();
+    }
+
+    @Override
+    public HttpResponse execute(HttpUriRequest request) throws IOException, ClientProtocolException {
+        return delegate.execute(executing(request));
+    }
+
+    @Override
+    public HttpResponse execute(HttpUriRequest request, HttpContext context)
+            throws IOException, ClientProtocolException {
+        return delegate.execute(executing(request), context);
+    }
+
+    @Override
+    public HttpResponse execute(HttpHost target, HttpRequest request) throws IOException, ClientProtocolException {
+        return delegate.execute(target, executing(request));
+    }
+
+    @Override
+    public HttpResponse execute(HttpHost target, HttpRequest request, HttpContext context)
+            throws IOException, ClientProtocolException {
+        return delegate.execute(target, executing(request), context);
+    }
+
+    @Override
+    public <T> T execute(HttpUriRequest request, ResponseHandler<? extends T> responseHandler)
+            throws IOException, ClientProtocolException {
+        return delegate.execute(executing(request), responseHandler);
+    }
+
+    @Override
+    public <T> T execute(HttpUriRequest request, ResponseHandler<? extends T> responseHandler, HttpContext context)
+            throws IOException, ClientProtocolException {
+        return delegate.execute(executing(request), responseHandler, context);
+    }
+
+    @Override
+    public <T> T execute(HttpHost target, HttpRequest request, ResponseHandler<? extends T> responseHandler)
+            throws IOException, ClientProtocolException {
+        return delegate.execute(target, executing(request), responseHandler);
+    }
+
+    @Override
+    public <T> T execute(HttpHost target, HttpRequest request, ResponseHandler<? extends T> responseHandler,
+                         HttpContext context) throws IOException, ClientProtocolException {
+        return delegate.execute(target, executing(request), responseHandler, context);
+    }
+}
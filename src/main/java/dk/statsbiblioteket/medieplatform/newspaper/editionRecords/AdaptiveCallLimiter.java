@@ -0,0 +1,201 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.solr.common.SolrException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of concurrent calls to a backend with an adaptive limit (additive increase, multiplicative
+ * decrease). While calls succeed and the 99th percentile latency stays healthy, the limit grows by about one call per
+ * limit calls. When a call fails with a sign of overload (conflict, unavailable or timeout), or the 99th percentile
+ * latency exceeds the target or rises well above its healthy baseline, the limit is cut by a factor, at most once per
+ * sample window.
+ */
+public class AdaptiveCallLimiter implements CallLimiter {
+
+    private static Logger log = LoggerFactory.getLogger(AdaptiveCallLimiter.class);
+
+    private static final double BACKOFF_RATIO = 0.7;
+    private static final double P99_TOLERANCE = 2.0;
+    private static final int WINDOW_SIZE = 200;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitAvailable = lock.newCondition();
+    private final long[] window = new long[WINDOW_SIZE];
+    private int windowCount;
+    private boolean decreasedInWindow;
+    private double baselineP99;
+    private double limit;
+    private int inFlight;
+
+    /**
+     * @param name Name of the backend, for logging.
+     * @param minLimit The limit never goes below this number of concurrent calls.
+     * @param maxLimit The limit never goes above this number of concurrent calls.
+     * @param initialLimit The limit to start with.
+     * @param latencyTargetMillis The 99th percentile latency above which the backend is considered overloaded.
+     */
+    public AdaptiveCallLimiter(String name, int minLimit, int maxLimit, int initialLimit, long latencyTargetMillis) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(latencyTargetMillis);
+    }
+
+    @Override
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                permitAvailable.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void release(long latencyNanos, Throwable failure) {
+        lock.lock();
+        try {
+            inFlight--;
+            boolean overloaded = isOverload(failure) || latencyNanos > latencyTargetNanos;
+            if (failure == null || overloaded) {
+                window[windowCount++] = latencyNanos;
+            }
+            if (windowCount == WINDOW_SIZE) {
+                overloaded |= endWindow();
+            }
+            if (overloaded) {
+                decrease();
+            } else if (failure == null && limit < maxLimit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            permitAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The current limit of concurrent calls.
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * End a window of latency samples, and update the healthy baseline.
+     *
+     * @return true if the 99th percentile latency of the window shows overload.
+     */
+    private boolean endWindow() {
+        Arrays.sort(window);
+        long p99 = window[(int) (WINDOW_SIZE * 0.99) - 1];
+        windowCount = 0;
+        decreasedInWindow = false;
+        boolean rising = baselineP99 > 0 && p99 > baselineP99 * P99_TOLERANCE;
+        if (p99 > latencyTargetNanos || rising) {
+            log.debug("{} p99 latency {} ms is unhealthy", name, TimeUnit.NANOSECONDS.toMillis(p99));
+            return true;
+        }
+        baselineP99 = baselineP99 == 0 ? p99 : 0.9 * baselineP99 + 0.1 * p99;
+        return false;
+    }
+
+    private void decrease() {
+        if (decreasedInWindow) {
+            return;
+        }
+        decreasedInWindow = true;
+        double newLimit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        if ((int) newLimit < (int) limit) {
+            log.info("Backing off {} to {} concurrent calls", name, (int) newLimit);
+        }
+        limit = newLimit;
+    }
+
+    /**
+     * Decide whether a failure is a sign that the backend is overloaded: a socket timeout, or an HTTP 409 (conflict,
+     * which Fedora gives when an object is locked by concurrent writes), 429 or 503 status. The status is taken from
+     * the failure or its causes, never from their messages, which hold PIDs and other text where these numbers occur.
+     *
+     * @param failure The failure, or null.
+     * @return true if the failure is a sign of overload.
+     */
+    public static boolean isOverload(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException || httpStatus(cause) == 409) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return isRejected(failure);
+    }
+
+    /**
+     * Decide whether a failure is the backend turning a call away unprocessed with an HTTP 429 or 503 status. After a
+     * timeout the call may have been carried out, and after a 409 another client was changing the same object, so
+     * only calls rejected this way are safe to repeat if they write.
+     *
+     * @param failure The failure, or null.
+     * @return true if the backend rejected the call.
+     */
+    public static boolean isRejected(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            int status = httpStatus(cause);
+            if (status == 429 || status == 503) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the HTTP status a failure of an HTTP client carries: the code of a {@link SolrException}, or the status of
+     * the response of a failure with {@code getResponse().getStatus()}, like the exceptions of the Jersey client used
+     * by the DOMS client.
+     *
+     * @param failure The failure.
+     * @return The HTTP status, or 0 if the failure carries none.
+     */
+    static int httpStatus(Throwable failure) {
+        if (failure instanceof SolrException) {
+            return ((SolrException) failure).code();
+        }
+        try {
+            Object response = failure.getClass().getMethod("getResponse").invoke(failure);
+            if (response != null) {
+                Object status = response.getClass().getMethod("getStatus").invoke(response);
+                if (status instanceof Integer) {
+                    return (Integer) status;
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not a failure with a response
+        }
+        return 0;
+    }
+}
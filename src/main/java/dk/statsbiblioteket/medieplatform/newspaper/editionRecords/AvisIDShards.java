@@ -0,0 +1,201 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheListener;
+import org.apache.curator.framework.recipes.nodes.PersistentEphemeralNode;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.utils.ZKPaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Divides the avisIDs between the nodes running the component, so the editions affected by changed titles are only
+ * reconciled by the node owning their avisID. The editions handed out by the autonomous component framework are not
+ * divided, as the framework records an event on every edition it hands out, whichever node gets it. Each node registers
+ * an ephemeral node in ZooKeeper, watches the other registered nodes, and assigns avisIDs to nodes with a
+ * {@link ConsistentHashRing}. When a node joins or leaves, every node recomputes the ring, and only the avisIDs of the nodes
+ * next to it on the ring move. A node always counts itself as a member, so while it is cut off from ZooKeeper it keeps
+ * its share instead of dropping it. The nodes learn of a change of members at different times, so while they disagree
+ * an avisID may be owned by two nodes, or by none. Two nodes reconciling the same editions is harmless. Work left to
+ * another node must be kept by the node leaving it until the node owns the avisID itself, or the owner has done it;
+ * membership listeners are told of every change, so they can take up the work of the avisIDs they now own.
+ */
+public class AvisIDShards implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(AvisIDShards.class);
+
+    private static final int POINTS_PER_NODE = 64;
+    private final String nodeID;
+    private final CuratorFramework client;
+    private final PersistentEphemeralNode registration;
+    private final PathChildrenCache members;
+    private volatile ConsistentHashRing ring;
+    private volatile Set<String> memberIDs;
+    private final List<MembershipListener> membershipListeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService notifier = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "AvisIDShards-notifier");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Is told when the nodes the avisIDs are divided between change.
+     */
+    public interface MembershipListener {
+
+        /**
+         * The members have changed, so this node may own other avisIDs than before.
+         *
+         * @param members The names of the nodes the avisIDs are now divided between, this node included.
+         */
+        void membersChanged(Set<String> members);
+    }
+
+    /**
+     * Register this node and start watching the other nodes. Waits until the current members are known.
+     *
+     * @param connectString The ZooKeeper servers, as host:port,host:port.
+     * @param path The ZooKeeper path the nodes register under.
+     * @param nodeID The name of this node, unique among the nodes.
+     * @throws Exception if the members could not be read from ZooKeeper.
+     */
+    public AvisIDShards(String connectString, String path, String nodeID) throws Exception {
+        this.nodeID = nodeID;
+        updateRing(Collections.<String>emptySet());
+        client = CuratorFrameworkFactory.newClient(connectString, new ExponentialBackoffRetry(1000, 3));
+        client.start();
+        // Recreated by Curator after a lost session, so the node rejoins by itself
+        registration = new PersistentEphemeralNode(client, PersistentEphemeralNode.Mode.EPHEMERAL,
+                                                   ZKPaths.makePath(path, nodeID),
+                                                   nodeID.getBytes(StandardCharsets.UTF_8));
+        registration.start();
+        members = new PathChildrenCache(client, path, false);
+        members.getListenable().addListener(new PathChildrenCacheListener() {
+            @Override
+            public void childEvent(CuratorFramework client, PathChildrenCacheEvent event) {
+                switch (event.getType()) {
+                    case CHILD_ADDED:
+                    case CHILD_REMOVED:
+                    case INITIALIZED:
+                        updateRing();
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+        members.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+        if (!registration.waitForInitialCreate(30, TimeUnit.SECONDS)) {
+            log.warn("Node {} not registered in ZooKeeper yet, continuing with the members known", nodeID);
+        }
+        updateRing();
+    }
+
+    /**
+     * @return The name of this node, the host name and process ID, as reported by the JVM.
+     */
+    public static String defaultNodeID() {
+        return ManagementFactory.getRuntimeMXBean().getName();
+    }
+
+    /**
+     * @param avisID The avisID.
+     * @return true if the editions of the avisID belong to this node.
+     */
+    public boolean owns(String avisID) {
+        return nodeID.equals(ring.getNode(avisID));
+    }
+
+    /**
+     * @return The names of the nodes the avisIDs are divided between, this node included.
+     */
+    public Set<String> getMembers() {
+        return memberIDs;
+    }
+
+    /**
+     * Tell a listener about every change of the members. Listeners are told on a thread of their own, one change at a
+     * time.
+     *
+     * @param listener The listener.
+     */
+    public void addMembershipListener(MembershipListener listener) {
+        membershipListeners.add(listener);
+    }
+
+    /**
+     * Recompute the ring from the registered nodes.
+     */
+    private void updateRing() {
+        Set<String> nodes = new TreeSet<>();
+        for (ChildData child : members.getCurrentData()) {
+            nodes.add(ZKPaths.getNodeFromPath(child.getPath()));
+        }
+        updateRing(nodes);
+    }
+
+    /**
+     * Recompute the ring from the given nodes and this node.
+     *
+     * @param nodes The other nodes.
+     */
+    private synchronized void updateRing(Collection<String> nodes) {
+        Set<String> newMembers = new TreeSet<>(nodes);
+        newMembers.add(nodeID);
+        if (newMembers.equals(memberIDs)) {
+            return;
+        }
+        ring = new ConsistentHashRing(newMembers, POINTS_PER_NODE);
+        final Set<String> members = Collections.unmodifiableSet(newMembers);
+        memberIDs = members;
+        log.info("AvisIDs now divided between {}", newMembers);
+        for (final MembershipListener listener : membershipListeners) {
+            notifier.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        listener.membersChanged(members);
+                    } catch (RuntimeException e) {
+                        log.error("Membership listener {} failed for members {}", listener, members, e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Unregister this node, so the other nodes take over its avisIDs.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            notifier.shutdownNow();
+            members.close();
+            registration.close();
+        } finally {
+            client.close();
+        }
+    }
+}
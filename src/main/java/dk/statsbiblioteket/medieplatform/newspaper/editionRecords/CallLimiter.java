@@ -0,0 +1,23 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+/**
+ * Limits the number of concurrent calls to a backend. Every {@link #acquire()} must be followed by exactly one
+ * {@link #release(long, Throwable)}.
+ */
+public interface CallLimiter {
+
+    /**
+     * Wait until a call may be made.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    void acquire() throws InterruptedException;
+
+    /**
+     * Report that a call has ended.
+     *
+     * @param latencyNanos The duration of the call.
+     * @param failure The exception the call failed with, or null if it succeeded.
+     */
+    void release(long latencyNanos, Throwable failure);
+}
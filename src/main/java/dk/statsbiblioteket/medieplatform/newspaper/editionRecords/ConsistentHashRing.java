@@ -0,0 +1,89 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * Consistent hash ring assigning keys to nodes. Every node is placed on the ring at a number of points hashed from
+ * its name, and a key belongs to the node of the first point at or after the hash of the key. When a node joins or
+ * leaves, only the keys between its points and the points before them move, so about 1/n of the keys move for n
+ * nodes. Every node computing the ring from the same node names assigns keys the same way. Immutable.
+ */
+public class ConsistentHashRing {
+
+    private final long[] points;
+    private final String[] owners;
+
+    /**
+     * @param nodes The names of the nodes.
+     * @param pointsPerNode The number of points on the ring per node. More points spread the keys more evenly.
+     */
+    public ConsistentHashRing(Collection<String> nodes, int pointsPerNode) {
+        // Sort the nodes, so colliding points are resolved the same way on every node
+        TreeSet<String> sortedNodes = new TreeSet<>(nodes);
+        long[] unsortedPoints = new long[sortedNodes.size() * pointsPerNode];
+        int i = 0;
+        for (String node : sortedNodes) {
+            for (int point = 0; point < pointsPerNode; point++) {
+                unsortedPoints[i++] = hash(node + "#" + point);
+            }
+        }
+        points = unsortedPoints.clone();
+        Arrays.sort(points);
+        owners = new String[points.length];
+        i = 0;
+        for (String node : sortedNodes) {
+            for (int point = 0; point < pointsPerNode; point++) {
+                int index = Arrays.binarySearch(points, unsortedPoints[i++]);
+                while (index > 0 && points[index - 1] == points[index]) {
+                    index--;
+                }
+                while (owners[index] != null) {
+                    index++;
+                }
+                owners[index] = node;
+            }
+        }
+    }
+
+    /**
+     * @param key The key.
+     * @return The name of the node the key belongs to, or null if there are no nodes.
+     */
+    public String getNode(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            // Same point for several nodes, use the first
+            while (index > 0 && points[index - 1] == points[index]) {
+                index--;
+            }
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Hash a string to a point on the ring, FNV-1a followed by a finalizer, so similar names like "node#1" and
+     * "node#2" land far apart.
+     *
+     * @param value The string.
+     * @return The point.
+     */
+    static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
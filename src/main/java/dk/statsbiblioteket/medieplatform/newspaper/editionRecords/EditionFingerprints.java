@@ -0,0 +1,146 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Local store of the fingerprint of each edition as it was when its relations were last reconciled successfully. The
+ * fingerprint is a hash of the avisID and issue date of the edition and the version of the titles with that avisID,
+ * which is everything the wanted relations depend on. It does not cover the relations the edition has, so it is only
+ * used to skip editions in sweeps, which hand over editions whether they changed or not; an edition handed over because
+ * it changed in DOMS is always reconciled. A skipped edition needs no relations read or writes. Fingerprints are kept
+ * as primitive longs keyed on the UUID of the edition, so millions of editions fit in a few tens of megabytes, and are
+ * saved to a file of (UUID, fingerprint) records.
+ */
+public class EditionFingerprints {
+
+    private static Logger log = LoggerFactory.getLogger(EditionFingerprints.class);
+
+    private static final int MAGIC = 0x45465031;
+    private final Path file;
+    private final UuidSet editions = new UuidSet(1024);
+    private long[] fingerprints = new long[1024];
+
+    /**
+     * Open a store, reading the fingerprints saved in the file, if any.
+     *
+     * @param file The file the fingerprints are saved in.
+     * @throws IOException if the file exists but could not be read.
+     */
+    public EditionFingerprints(File file) throws IOException {
+        this.file = file.toPath();
+        if (Files.exists(this.file)) {
+            read();
+        }
+    }
+
+    /**
+     * Compute the fingerprint of an edition.
+     *
+     * @param avisID The avisID of the edition.
+     * @param dateIssued The issue date of the edition.
+     * @param titleVersion The version of the titles with the avisID, see {@link TitleIntervalIndex#getVersion}.
+     * @return The fingerprint.
+     */
+    public static long fingerprint(String avisID, String dateIssued, long titleVersion) {
+        long hash = 0xCBF29CE484222325L;
+        hash = mix(hash, avisID);
+        hash = mix(hash, dateIssued);
+        return (hash ^ titleVersion) * 0x9E3779B97F4A7C15L;
+    }
+
+    private static long mix(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        // Separate the fields, so ("ab", "c") and ("a", "bc") differ
+        return (hash ^ 0xFF) * 0x100000001B3L;
+    }
+
+    /**
+     * @param domsID The DOMS PID of the edition.
+     * @param fingerprint The fingerprint of the edition now.
+     * @return true if the edition was last reconciled with the same fingerprint.
+     */
+    public synchronized boolean isUnchanged(String domsID, long fingerprint) {
+        int index = editions.indexOf(Uuids.mostSignificantKeyBits(domsID), Uuids.leastSignificantKeyBits(domsID));
+        return index >= 0 && fingerprints[index] == fingerprint;
+    }
+
+    /**
+     * Record the fingerprint of an edition reconciled successfully.
+     *
+     * @param domsID The DOMS PID of the edition.
+     * @param fingerprint The fingerprint the edition was reconciled with.
+     */
+    public synchronized void put(String domsID, long fingerprint) {
+        put(Uuids.mostSignificantKeyBits(domsID), Uuids.leastSignificantKeyBits(domsID), fingerprint);
+    }
+
+    private void put(long msb, long lsb, long fingerprint) {
+        int index = editions.indexOf(msb, lsb);
+        if (index < 0) {
+            editions.add(msb, lsb);
+            index = editions.size() - 1;
+            if (index == fingerprints.length) {
+                fingerprints = Arrays.copyOf(fingerprints, fingerprints.length * 2);
+            }
+        }
+        fingerprints[index] = fingerprint;
+    }
+
+    /**
+     * @return The number of editions with a fingerprint.
+     */
+    public synchronized int size() {
+        return editions.size();
+    }
+
+    /**
+     * Save the fingerprints. The file is replaced atomically, so a crash leaves either the old or the new
+     * fingerprints.
+     *
+     * @throws IOException if the fingerprints could not be written.
+     */
+    public synchronized void save() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(editions.size());
+            for (int i = 0; i < editions.size(); i++) {
+                out.writeLong(editions.mostSignificantBits(i));
+                out.writeLong(editions.leastSignificantBits(i));
+                out.writeLong(fingerprints[i]);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Saved fingerprints of {} editions to {}", editions.size(), file);
+    }
+
+    private void read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an edition fingerprint file: " + file);
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                put(in.readLong(), in.readLong(), in.readLong());
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated edition fingerprint file: " + file, e);
+        }
+        log.info("Read fingerprints of {} editions from {}", editions.size(), file);
+    }
+}
@@ -0,0 +1,108 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrDocument;
+
+import dk.statsbiblioteket.medieplatform.autonomous.SBOIEventIndex;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lookup of the indexed fields of edition objects in SBOI.
+ */
+public class EditionIndex {
+
+    private static final String ITEM_MODEL_FIELD_NAME = "item_model";
+    private static final String ITEM_MODEL_FIELD_VALUE = "\"doms:ContentModel_Edition\"";
+    private static final String AVIS_ID_FIELD_NAME = "newspapr_edition_avisID";
+    private static final String DATE_ISSUED_FIELD_NAME = "newspapr_edition_dateIssued";
+    private static final int PAGE_SIZE = 1000;
+    private final SolrServer solrServer;
+
+    public EditionIndex(SolrServer solrServer) {
+        this.solrServer = solrServer;
+    }
+
+    /**
+     * Get the avisID and issue date of the given editions with a single query.
+     *
+     * @param domsIDs The DOMS PIDs of the editions.
+     * @return Map from DOMS PID to avisID and issue date. Editions that are not indexed, or are indexed without both
+     * fields, are left out.
+     */
+    public Map<String, EditionMetadata> getEditionMetadata(Collection<String> domsIDs) {
+        Map<String, EditionMetadata> result = new HashMap<>();
+        if (domsIDs.isEmpty()) {
+            return result;
+        }
+        try {
+            StringBuilder uuids = new StringBuilder();
+            for (String domsID : domsIDs) {
+                if (uuids.length() > 0) {
+                    uuids.append(" OR ");
+                }
+                uuids.append('"').append(domsID).append('"');
+            }
+            SolrQuery query = new SolrQuery();
+            query.setQuery(SBOIEventIndex.UUID + ":(" + uuids + ")");
+            query.setRows(domsIDs.size());
+            query.setStart(0);
+            query.set("facet", "false");
+            query.setFields(SBOIEventIndex.UUID, AVIS_ID_FIELD_NAME, DATE_ISSUED_FIELD_NAME);
+            for (SolrDocument document : solrServer.query(query).getResults()) {
+                Object uuid = document.getFirstValue(SBOIEventIndex.UUID);
+                Object avisID = document.getFirstValue(AVIS_ID_FIELD_NAME);
+                Object dateIssued = document.getFirstValue(DATE_ISSUED_FIELD_NAME);
+                if (uuid != null && avisID != null && dateIssued != null) {
+                    result.put(uuid.toString(), new EditionMetadata(avisID.toString(), toDateString(dateIssued)));
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get the editions of a newspaper issued in a period. The editions are read from SBOI a page at a time as they
+     * are iterated.
+     *
+     * @param avisID The avisID of the editions.
+     * @param fromDate The first issue date to include, as yyyy-MM-dd, or null for no lower bound.
+     * @param toDate The last issue date to include, as yyyy-MM-dd, or null for no upper bound.
+     * @return DOMS PIDs of the editions, sorted by PID.
+     */
+    public Iterable<String> getEditions(String avisID, String fromDate, String toDate) {
+        String query = String.format(ITEM_MODEL_FIELD_NAME + ":" + ITEM_MODEL_FIELD_VALUE
+                                             + " AND "
+                                             + AVIS_ID_FIELD_NAME + ":\"%s\""
+                                             + " AND "
+                                             + DATE_ISSUED_FIELD_NAME + ":[%s TO %s]", avisID,
+                                     fromDate == null ? "*" : fromDate, toDate == null ? "*" : toDate);
+        return new SolrCursor(solrServer, query, PAGE_SIZE, SBOIEventIndex.UUID).convert(
+                new SolrCursor.Converter<String>() {
+                    @Override
+                    public String convert(SolrDocument document) {
+                        return document.getFirstValue(SBOIEventIndex.UUID).toString();
+                    }
+                });
+    }
+
+    /**
+     * Convert an indexed date to the string form used in edition MODS.
+     *
+     * @param date The indexed value, either a date or a string.
+     * @return The date as yyyy-MM-dd, the day in {@link EpochDays#ZONE} for a point in time, or the value as it is if
+     * it is not a date, to fail when the edition is matched against the titles.
+     */
+    private String toDateString(Object date) {
+        try {
+            return EpochDays.format(EpochDays.of(date));
+        } catch (IllegalArgumentException e) {
+            return date.toString();
+        }
+    }
+}
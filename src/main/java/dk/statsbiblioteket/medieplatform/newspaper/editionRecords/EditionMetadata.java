@@ -0,0 +1,31 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+/**
+ * The fields of an edition that decide which newspaper titles it belongs to.
+ */
+public class EditionMetadata {
+    private final String avisID;
+    private final String dateIssued;
+
+    /**
+     * @param avisID The avisID of the edition, i.e. the uniform title in the edition MODS.
+     * @param dateIssued The date the edition was issued.
+     */
+    public EditionMetadata(String avisID, String dateIssued) {
+        this.avisID = avisID;
+        this.dateIssued = dateIssued;
+    }
+
+    public String getAvisID() {
+        return avisID;
+    }
+
+    public String getDateIssued() {
+        return dateIssued;
+    }
+
+    @Override
+    public String toString() {
+        return "EditionMetadata{" + "avisID='" + avisID + '\'' + ", dateIssued='" + dateIssued + '\'' + '}';
+    }
+}
@@ -0,0 +1,336 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reconciles editions in explicit stages with a bounded queue in front of each: reading the EDITION datastream,
+ * parsing it, resolving the titles, reading the current relations, and diffing and writing the changes. Each stage has
+ * its own threads, so the DOMS reads of one edition overlap with the writes of another, and parsing never waits
+ * behind network calls. When the queue of a stage is full, the stage feeding it waits, and so on back to
+ * {@link #submit(String, Listener)}, so memory use is bounded however many editions are submitted.
+ */
+public class EditionPipeline {
+
+    private static Logger log = LoggerFactory.getLogger(EditionPipeline.class);
+
+    /**
+     * The stages of the pipeline, in order.
+     */
+    public enum Stage {
+        /** Read avisID and issue date from SBOI, or the EDITION datastream from DOMS. */
+        FETCH(EditionRecordsConfigConstants.PIPELINE_FETCH_THREADS, 8),
+        /** Parse avisID and issue date from the EDITION datastream. */
+        PARSE(EditionRecordsConfigConstants.PIPELINE_PARSE_THREADS, 2),
+        /** Look up the titles the edition should have relations to, and skip the edition if unchanged. */
+        RESOLVE(EditionRecordsConfigConstants.PIPELINE_RESOLVE_THREADS, 2),
+        /** Read the current relations of the edition from DOMS. */
+        READ(EditionRecordsConfigConstants.PIPELINE_READ_THREADS, 8),
+        /** Compute and write the relation changes of the edition. */
+        WRITE(EditionRecordsConfigConstants.PIPELINE_WRITE_THREADS, 8);
+
+        private final String threadsProperty;
+        private final int defaultThreads;
+
+        Stage(String threadsProperty, int defaultThreads) {
+            this.threadsProperty = threadsProperty;
+            this.defaultThreads = defaultThreads;
+        }
+    }
+
+    /**
+     * Told when an edition submitted to the pipeline is done. Called from the threads of the pipeline.
+     */
+    public interface Listener {
+        /**
+         * The relations of an edition were reconciled, or the edition was skipped as unchanged.
+         *
+         * @param domsID The DOMS PID of the edition.
+         */
+        void completed(String domsID);
+
+        /**
+         * An edition failed in one of the stages.
+         *
+         * @param domsID The DOMS PID of the edition.
+         * @param cause The cause.
+         */
+        void failed(String domsID, Exception cause);
+    }
+
+    /**
+     * Queue a task in an executor, waiting for room in the queue if it is full, so a slow stage holds back the stages
+     * feeding it instead of failing their editions. The task is rejected if the executor is shut down, before or
+     * while waiting, so it is never left in the queue of an executor that will not run it.
+     */
+    private static final RejectedExecutionHandler WAIT_FOR_ROOM = new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            try {
+                while (!executor.isShutdown()) {
+                    if (executor.getQueue().offer(task, 100, TimeUnit.MILLISECONDS)) {
+                        if (executor.isShutdown() && executor.getQueue().remove(task)) {
+                            break;
+                        }
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted waiting for room in the queue", e);
+            }
+            throw new RejectedExecutionException("The pipeline is closed");
+        }
+    };
+
+    private final RunnableEditionRecordRelationsMaintainer maintainer;
+    private final Map<Stage, ThreadPoolExecutor> stages = new EnumMap<>(Stage.class);
+    private int pending;
+
+    /**
+     * @param maintainer The maintainer whose steps the stages perform.
+     * @param threads Number of threads of each stage.
+     * @param queueSize Number of editions each stage can queue before the stage feeding it waits.
+     */
+    public EditionPipeline(RunnableEditionRecordRelationsMaintainer maintainer, Map<Stage, Integer> threads,
+                           int queueSize) {
+        this.maintainer = maintainer;
+        for (final Stage stage : Stage.values()) {
+            int stageThreads = threads.get(stage);
+            stages.put(stage, new ThreadPoolExecutor(stageThreads, stageThreads, 0, TimeUnit.MILLISECONDS,
+                                                     new ArrayBlockingQueue<Runnable>(queueSize),
+                                                     new ThreadFactory() {
+                                                         private final AtomicInteger count = new AtomicInteger();
+
+                                                         @Override
+                                                         public Thread newThread(Runnable r) {
+                                                             Thread thread = new Thread(r, "EditionPipeline-"
+                                                                     + stage.name().toLowerCase(Locale.ROOT) + "-"
+                                                                     + count.incrementAndGet());
+                                                             thread.setDaemon(true);
+                                                             return thread;
+                                                         }
+                                                     }, WAIT_FOR_ROOM));
+        }
+    }
+
+    /**
+     * Create a pipeline with the threads and queue size configured in the properties.
+     *
+     * @param maintainer The maintainer whose steps the stages perform.
+     * @param properties The properties.
+     * @return The pipeline.
+     */
+    public static EditionPipeline create(RunnableEditionRecordRelationsMaintainer maintainer, Properties properties) {
+        Map<Stage, Integer> threads = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            threads.put(stage, Integer.parseInt(properties.getProperty(stage.threadsProperty,
+                                                                       Integer.toString(stage.defaultThreads))));
+        }
+        int queueSize = Integer.parseInt(properties.getProperty(EditionRecordsConfigConstants.PIPELINE_QUEUE_SIZE,
+                                                                "100"));
+        return new EditionPipeline(maintainer, threads, queueSize);
+    }
+
+    /**
+     * Submit an edition to be reconciled. Waits if the first stage has no room for it. If the edition cannot be
+     * submitted, e.g. because the pipeline is closed, the listener is told it failed.
+     *
+     * @param domsID The DOMS PID of the edition.
+     * @param listener Told when the edition is done.
+     */
+    public void submit(String domsID, Listener listener) {
+        Edition edition = new Edition(domsID, listener);
+        synchronized (this) {
+            pending++;
+        }
+        try {
+            enqueue(edition, Stage.FETCH);
+        } catch (RuntimeException e) {
+            // Counted as pending, so it must be done, or awaitCompletion would wait for it forever
+            done(edition, e);
+        }
+    }
+
+    /**
+     * Wait until all submitted editions are done.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized void awaitCompletion() throws InterruptedException {
+        while (pending > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Stop the threads of all stages. Editions waiting in the queues are told failed, and editions being processed
+     * are interrupted.
+     */
+    public void close() {
+        for (ThreadPoolExecutor stage : stages.values()) {
+            for (Runnable task : stage.shutdownNow()) {
+                done(((StageTask) task).edition, new RejectedExecutionException("The pipeline is closed"));
+            }
+        }
+    }
+
+    /**
+     * Hand an edition to a stage.
+     *
+     * @param edition The edition.
+     * @param stage The stage.
+     */
+    private void enqueue(Edition edition, Stage stage) {
+        stages.get(stage).execute(new StageTask(edition, stage));
+    }
+
+    /**
+     * Perform the step of a stage on an edition, and hand it to the next stage, or finish it.
+     *
+     * @param edition The edition.
+     * @param stage The stage.
+     */
+    private void process(Edition edition, Stage stage) {
+        try {
+            switch (stage) {
+                case FETCH:
+                    edition.metadata = maintainer.getIndexedEditionMetadata(edition.domsID);
+                    if (edition.metadata != null) {
+                        enqueue(edition, Stage.RESOLVE);
+                        return;
+                    }
+                    edition.mods = maintainer.readEditionMods(edition.domsID);
+                    enqueue(edition, Stage.PARSE);
+                    return;
+                case PARSE:
+                    edition.metadata = maintainer.parseEditionMods(edition.mods);
+                    edition.mods = null;
+                    enqueue(edition, Stage.RESOLVE);
+                    return;
+                case RESOLVE:
+                    if (resolve(edition)) {
+                        enqueue(edition, Stage.READ);
+                    } else {
+                        done(edition, null);
+                    }
+                    return;
+                case READ:
+                    edition.existing = maintainer.getTitlesWithRelation(edition.domsID);
+                    enqueue(edition, Stage.WRITE);
+                    return;
+                case WRITE:
+                    maintainer.updateRelations(edition.domsID, edition.wanted, edition.existing);
+                    if (edition.fingerprint != null) {
+                        maintainer.getFingerprints().put(edition.domsID, edition.fingerprint);
+                    }
+                    done(edition, null);
+                    return;
+                default:
+                    throw new IllegalStateException("Unknown stage " + stage);
+            }
+        } catch (Exception e) {
+            done(edition, e);
+        }
+    }
+
+    /**
+     * Look up the titles an edition should have relations to.
+     *
+     * @param edition The edition, with avisID and issue date.
+     * @return False if the edition is unchanged since it was last reconciled, so it needs nothing more.
+     */
+    private boolean resolve(Edition edition) {
+        String avisID = edition.metadata.getAvisID();
+        String date = edition.metadata.getDateIssued();
+        TitleIntervalIndex titles = maintainer.getTitleIntervals(avisID);
+        EditionFingerprints fingerprints = maintainer.getFingerprints();
+        if (fingerprints != null) {
+            long fingerprint = EditionFingerprints.fingerprint(avisID, date, titles.getVersion(avisID));
+            if (fingerprints.isUnchanged(edition.domsID, fingerprint)) {
+                maintainer.getMetrics().itemsUnchanged(1);
+                return false;
+            }
+            edition.fingerprint = fingerprint;
+        }
+        edition.wanted = titles.lookup(avisID, EpochDays.parse(date));
+        return true;
+    }
+
+    /**
+     * Finish an edition: record it in the metrics, tell the listener, and count it as no longer pending.
+     *
+     * @param edition The edition.
+     * @param failure The cause if the edition failed, or null.
+     */
+    private void done(Edition edition, Exception failure) {
+        try {
+            EditionRecordsMetrics metrics = maintainer.getMetrics();
+            metrics.record(EditionRecordsMetrics.Phase.ITEM, edition.start);
+            metrics.itemsDone(failure == null ? 1 : 0, failure == null ? 0 : 1);
+            if (failure == null) {
+                edition.listener.completed(edition.domsID);
+            } else {
+                edition.listener.failed(edition.domsID, failure);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to finish edition {}", edition.domsID, e);
+        } finally {
+            synchronized (this) {
+                pending--;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * The step of a stage on an edition, as queued in the executor of the stage.
+     */
+    private class StageTask implements Runnable {
+        private final Edition edition;
+        private final Stage stage;
+
+        private StageTask(Edition edition, Stage stage) {
+            this.edition = edition;
+            this.stage = stage;
+        }
+
+        @Override
+        public void run() {
+            process(edition, stage);
+        }
+    }
+
+    /**
+     * An edition on its way through the pipeline, with what the stages so far found out about it. Each stage hands
+     * the edition on through the queue of the next, so the fields need no further synchronization.
+     */
+    private static class Edition {
+        private final String domsID;
+        private final Listener listener;
+        private final long start = System.nanoTime();
+        private String mods;
+        private EditionMetadata metadata;
+        private Long fingerprint;
+        private List<String> wanted;
+        private List<String> existing;
+
+        private Edition(String domsID, Listener listener) {
+            this.domsID = domsID;
+            this.listener = listener;
+        }
+    }
+}
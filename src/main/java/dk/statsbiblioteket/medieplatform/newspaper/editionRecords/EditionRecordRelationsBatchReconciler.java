@@ -0,0 +1,284 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.medieplatform.autonomous.DomsItemFactory;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.autonomous.ItemFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reconciles the relations of all editions of a newspaper in pages, without going through the autonomous component
+ * framework. Intended for catch-up runs, e.g. after the date range of a newspaper title has been corrected.
+ * No events are recorded on the editions. If a plan file is configured, the changes are written to the plan instead
+ * of to DOMS, to be applied later with {@link EditionRecordRelationsPlanApplier}.
+ */
+public class EditionRecordRelationsBatchReconciler {
+
+    private static Logger log = LoggerFactory.getLogger(EditionRecordRelationsBatchReconciler.class);
+
+    private final RunnableEditionRecordRelationsMaintainer maintainer;
+    private final EditionIndex editionIndex;
+    private final ItemFactory<Item> itemFactory;
+    private final ExecutorService executor;
+    private final int batchSize;
+    private RelationsJournal journal;
+    private EditionPipeline pipeline;
+
+    /**
+     * @param maintainer The maintainer doing the reconciliation.
+     * @param editionIndex The index to enumerate editions from.
+     * @param itemFactory Factory for edition items.
+     * @param executor Executor used for reading and writing relations in parallel.
+     * @param batchSize Number of editions reconciled together.
+     */
+    public EditionRecordRelationsBatchReconciler(RunnableEditionRecordRelationsMaintainer maintainer,
+                                                 EditionIndex editionIndex, ItemFactory<Item> itemFactory,
+                                                 ExecutorService executor, int batchSize) {
+        this.maintainer = maintainer;
+        this.editionIndex = editionIndex;
+        this.itemFactory = itemFactory;
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Record the editions reconciled in a journal, and skip the editions a previous, interrupted run recorded as
+     * completed.
+     *
+     * @param journal The journal, or null to reconcile all editions.
+     */
+    public void setJournal(RelationsJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Stream the editions through a pipeline of stages with their own threads, instead of reconciling them a page at
+     * a time.
+     *
+     * @param pipeline The pipeline, or null to reconcile a page at a time.
+     */
+    public void setPipeline(EditionPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Usage: properties-file avisID [fromDate [toDate]]
+     *
+     * @param args The path to the properties file, the avisID of the newspaper to reconcile, and optionally the
+     * first and last issue date to reconcile, as yyyy-MM-dd.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new RuntimeException("Usage: " + EditionRecordRelationsBatchReconciler.class.getSimpleName()
+                                       + " properties-file avisID [fromDate [toDate]]");
+        }
+        System.exit(doMain(args));
+    }
+
+    public static int doMain(String[] args) throws Exception {
+        log.info("Starting with args {}", Arrays.asList(args));
+        Properties properties = EditionRecordRelationsMaintainerComponent.readProperties(args);
+        EditionRecordsMetrics metrics = new EditionRecordsMetrics();
+        MetricsHttpServer metricsServer = EditionRecordRelationsMaintainerComponent.exposeMetrics(properties, metrics);
+        String planFile = properties.getProperty(EditionRecordsConfigConstants.PLAN_FILE);
+        // Planning writes nothing to DOMS, so there is nothing to journal
+        RelationsJournal journal = planFile == null ? EditionRecordRelationsMaintainerComponent.createJournal(properties)
+                                                    : null;
+        EnhancedFedora eFedora = EditionRecordRelationsMaintainerComponent.createFedora(properties, metrics);
+        if (journal != null) {
+            eFedora = JournalingFedora.wrap(eFedora, journal);
+        }
+        SolrServer solrServer = EditionRecordRelationsMaintainerComponent.createSolrServer(properties, metrics);
+        DomsItemFactory itemFactory = new DomsItemFactory();
+        NewspaperIndex newspaperIndex = EditionRecordRelationsMaintainerComponent.createNewspaperIndex(properties,
+                solrServer, itemFactory);
+        RunnableEditionRecordRelationsMaintainer maintainer
+                = EditionRecordRelationsMaintainerComponent.createMaintainer(properties, eFedora, solrServer,
+                                                                             itemFactory, newspaperIndex);
+        maintainer.setMetrics(metrics);
+        EditionRecordRelationsMaintainerComponent.useJournal(journal, maintainer, eFedora);
+        int threads = Integer.parseInt(properties.getProperty(EditionRecordsConfigConstants.BATCH_THREADS, "8"));
+        int batchSize = Integer.parseInt(properties.getProperty(EditionRecordsConfigConstants.BATCH_SIZE, "100"));
+        // Planned changes are not written yet, so the editions must not be recorded as reconciled
+        EditionFingerprints fingerprints = planFile == null
+                                           ? EditionRecordRelationsMaintainerComponent.createFingerprints(properties)
+                                           : null;
+        maintainer.setFingerprints(fingerprints);
+        if (fingerprints != null) {
+            // Read avisID and issue date of a page of editions in one SBOI query, so skipping an unchanged edition
+            // takes no DOMS call
+            maintainer.setEditionIndex(new EditionIndex(solrServer));
+        }
+        RelationPlanWriter planWriter = null;
+        if (planFile != null) {
+            // Nothing is written to DOMS, so the reads can run at higher concurrency than the writes normally would
+            planWriter = new RelationPlanWriter(new File(planFile));
+            maintainer.setRelationsWriter(planWriter);
+            threads = Integer.parseInt(properties.getProperty(EditionRecordsConfigConstants.PLAN_THREADS, "32"));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        EditionPipeline pipeline = Boolean.parseBoolean(
+                properties.getProperty(EditionRecordsConfigConstants.BATCH_PIPELINE, "false"))
+                                   ? EditionPipeline.create(maintainer, properties) : null;
+        try {
+            EditionRecordRelationsBatchReconciler reconciler = new EditionRecordRelationsBatchReconciler(maintainer,
+                    new EditionIndex(solrServer), itemFactory, executor, batchSize);
+            reconciler.setJournal(journal);
+            reconciler.setPipeline(pipeline);
+            int failures = reconciler.reconcile(args[1], args.length > 2 ? args[2] : null,
+                                                args.length > 3 ? args[3] : null);
+            if (journal != null) {
+                // Completed, so a rerun must not skip the editions
+                journal.clear();
+            }
+            return failures > 0 ? 1 : 0;
+        } finally {
+            executor.shutdownNow();
+            if (pipeline != null) {
+                pipeline.close();
+            }
+            if (fingerprints != null) {
+                fingerprints.save();
+            }
+            if (journal != null) {
+                journal.close();
+            }
+            if (planWriter != null) {
+                planWriter.close();
+            }
+            newspaperIndex.close();
+            solrServer.shutdown();
+            if (metricsServer != null) {
+                metricsServer.stop();
+            }
+        }
+    }
+
+    /**
+     * Reconcile the relations of all editions of a newspaper issued in a period.
+     *
+     * @param avisID The avisID of the newspaper.
+     * @param fromDate The first issue date to include, as yyyy-MM-dd, or null for no lower bound.
+     * @param toDate The last issue date to include, as yyyy-MM-dd, or null for no upper bound.
+     * @return The number of editions that failed.
+     */
+    public int reconcile(String avisID, String fromDate, String toDate) {
+        if (pipeline != null) {
+            return reconcileInPipeline(avisID, fromDate, toDate);
+        }
+        int processed = 0;
+        int skipped = 0;
+        int failed = 0;
+        List<Item> page = new ArrayList<>(batchSize);
+        Iterator<String> editions = editionIndex.getEditions(avisID, fromDate, toDate).iterator();
+        while (editions.hasNext()) {
+            String domsID = editions.next();
+            if (journal != null && journal.isCompleted(domsID)) {
+                skipped++;
+            } else {
+                page.add(itemFactory.create(domsID));
+            }
+            if (page.size() == batchSize || (!editions.hasNext() && !page.isEmpty())) {
+                Map<String, Exception> failures = maintainer.doWorkOnItems(page, executor);
+                for (Map.Entry<String, Exception> failure : failures.entrySet()) {
+                    log.error("Failed to reconcile relations of edition {}", failure.getKey(), failure.getValue());
+                }
+                markCompleted(page, failures);
+                processed += page.size();
+                failed += failures.size();
+                page.clear();
+            }
+        }
+        log.info("Reconciled {} editions of {}, {} failed, {} skipped as completed before", processed, avisID,
+                 failed, skipped);
+        return failed;
+    }
+
+    /**
+     * Reconcile the relations of all editions of a newspaper issued in a period, streamed through the pipeline as
+     * they are read from SBOI.
+     *
+     * @param avisID The avisID of the newspaper.
+     * @param fromDate The first issue date to include, as yyyy-MM-dd, or null for no lower bound.
+     * @param toDate The last issue date to include, as yyyy-MM-dd, or null for no upper bound.
+     * @return The number of editions that failed.
+     */
+    private int reconcileInPipeline(String avisID, String fromDate, String toDate) {
+        final AtomicInteger processed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        int skipped = 0;
+        EditionPipeline.Listener listener = new EditionPipeline.Listener() {
+            @Override
+            public void completed(String domsID) {
+                processed.incrementAndGet();
+                try {
+                    if (journal != null) {
+                        journal.completed(domsID);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to write the journal", e);
+                }
+            }
+
+            @Override
+            public void failed(String domsID, Exception cause) {
+                processed.incrementAndGet();
+                failed.incrementAndGet();
+                log.error("Failed to reconcile relations of edition {}", domsID, cause);
+            }
+        };
+        for (String domsID : editionIndex.getEditions(avisID, fromDate, toDate)) {
+            if (journal != null && journal.isCompleted(domsID)) {
+                skipped++;
+            } else {
+                pipeline.submit(domsID, listener);
+            }
+        }
+        try {
+            pipeline.awaitCompletion();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted waiting for the pipeline", e);
+        }
+        log.info("Reconciled {} editions of {}, {} failed, {} skipped as completed before", processed.get(), avisID,
+                 failed.get(), skipped);
+        return failed.get();
+    }
+
+    /**
+     * Record the editions of a page that did not fail as completed in the journal, if any. This includes those that
+     * needed no changes, so they are skipped as well when an interrupted run is restarted.
+     *
+     * @param page The editions reconciled.
+     * @param failures The editions that failed.
+     */
+    private void markCompleted(List<Item> page, Map<String, Exception> failures) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            for (Item item : page) {
+                if (!failures.containsKey(item.getDomsID())) {
+                    journal.completed(item.getDomsID());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write the journal", e);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.medieplatform.autonomous.CallResult;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.autonomous.ItemFactory;
+import dk.statsbiblioteket.medieplatform.autonomous.SBOIDomsAutonomousComponentUtils;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the autonomous component in one long-lived JVM, polling SBOI for editions to reconcile with a fixed interval
+ * between runs, instead of starting a new JVM for every poll like pollAndWork.sh. The DOMS and SBOI clients, the
+ * in-memory titles, the edition fingerprints and the metrics are kept across runs, so every run after the first
+ * starts with a warm JIT, open connections and loaded caches. On shutdown, e.g. by SIGTERM, the run in progress is
+ * completed and the journal and other resources are closed before the JVM is let exit.
+ */
+public class EditionRecordRelationsDaemon {
+
+    private static Logger log = LoggerFactory.getLogger(EditionRecordRelationsDaemon.class);
+
+    private final Properties properties;
+    private final RunnableEditionRecordRelationsMaintainer component;
+    private final ItemFactory<Item> itemFactory;
+    private final long pollIntervalMillis;
+    private EditionFingerprints fingerprints;
+    private RelationsJournal journal;
+    private EnhancedFedora eFedora;
+    private final CountDownLatch shutdownRequested = new CountDownLatch(1);
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * @param properties The properties of the autonomous component.
+     * @param component The maintainer run by the autonomous component.
+     * @param itemFactory Factory for edition items.
+     * @param pollIntervalMillis Milliseconds from the end of one run to the start of the next.
+     */
+    public EditionRecordRelationsDaemon(Properties properties, RunnableEditionRecordRelationsMaintainer component,
+                                        ItemFactory<Item> itemFactory, long pollIntervalMillis) {
+        this.properties = properties;
+        this.component = component;
+        this.itemFactory = itemFactory;
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    /**
+     * Save the fingerprints of the editions reconciled after every run.
+     *
+     * @param fingerprints The fingerprints, or null if not used.
+     */
+    public void setFingerprints(EditionFingerprints fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Empty the journal after every run, as the events on the editions then tell what is left to do, and publish the
+     * editions the run left unpublished again.
+     *
+     * @param journal The journal, or null if not used.
+     * @param eFedora The DOMS client to publish editions with.
+     */
+    public void setJournal(RelationsJournal journal, EnhancedFedora eFedora) {
+        this.journal = journal;
+        this.eFedora = eFedora;
+    }
+
+    /**
+     * This method reads a properties file either as the first parameter on the command line or as the system variable
+     * newspaper.component.properties.file .
+     *
+     * @param args an array of length 1, where the first entry is a path to the properties file
+     */
+    public static void main(String[] args) throws Exception {
+        System.exit(doMain(args));
+    }
+
+    public static int doMain(String[] args) throws Exception {
+        log.info("Starting with args {}", Arrays.asList(args));
+        Properties properties = EditionRecordRelationsMaintainerComponent.readProperties(args);
+        if (properties.getProperty(EditionRecordsConfigConstants.PLAN_FILE) != null) {
+            throw new RuntimeException("Planning relation changes is not possible in the autonomous component, as it "
+                                       + "records events on the editions. Use reconcileBatch.sh to plan.");
+        }
+        EditionRecordsResources resources = EditionRecordsResources.open(properties);
+        EditionRecordRelationsDaemon daemon = null;
+        try {
+            try {
+                long pollInterval = Long.parseLong(
+                        properties.getProperty(EditionRecordsConfigConstants.DAEMON_POLL_INTERVAL, "60000"));
+                daemon = new EditionRecordRelationsDaemon(properties, resources.getMaintainer(),
+                                                          resources.getItemFactory(), pollInterval);
+                daemon.setFingerprints(resources.getFingerprints());
+                daemon.setJournal(resources.getJournal(), resources.getFedora());
+                final EditionRecordRelationsDaemon toShutDown = daemon;
+                Runtime.getRuntime().addShutdownHook(new Thread("EditionRecordRelationsDaemon-shutdown") {
+                    @Override
+                    public void run() {
+                        toShutDown.shutdown();
+                    }
+                });
+                return daemon.run();
+            } finally {
+                resources.close();
+            }
+        } finally {
+            // Only now is everything released, so the shutdown hook may let the JVM exit
+            if (daemon != null) {
+                daemon.stopped();
+            }
+        }
+    }
+
+    /**
+     * Run the autonomous component repeatedly until shut down.
+     *
+     * @return The number of runs with failures.
+     */
+    public int run() {
+        int failedRuns = 0;
+        try {
+            while (shutdownRequested.getCount() > 0) {
+                long start = System.currentTimeMillis();
+                try {
+                    CallResult<Item> result = runComponent();
+                    log.info("result was: " + result);
+                    if (result != null && result.containsFailures() != 0) {
+                        failedRuns++;
+                    }
+                    if (fingerprints != null) {
+                        fingerprints.save();
+                    }
+                    if (journal != null) {
+                        journal.clear();
+                        if (journal.getIncompleteCount() > 0) {
+                            journal.recover(component.getRelationsWriter(), eFedora);
+                        }
+                    }
+                } catch (Exception e) {
+                    // Keep polling; the next run retries the editions this one did not get to
+                    log.error("Run of the autonomous component failed", e);
+                    failedRuns++;
+                }
+                log.debug("Run took {} ms, next in {} ms", System.currentTimeMillis() - start, pollIntervalMillis);
+                if (shutdownRequested.await(pollIntervalMillis, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            log.info("Stopped after {} failed runs", failedRuns);
+        }
+        return failedRuns > 0 ? 1 : 0;
+    }
+
+    /**
+     * Run the autonomous component once, processing the editions SBOI has events for.
+     *
+     * @return The result of the run.
+     * @throws Exception if the run failed.
+     */
+    protected CallResult<Item> runComponent() throws Exception {
+        return SBOIDomsAutonomousComponentUtils.startAutonomousComponent(properties, component, itemFactory);
+    }
+
+    /**
+     * Tell {@link #shutdown} that the daemon has stopped running and has released the journal, the title index and
+     * the other resources used by the runs, so the JVM may exit. Called by whoever called {@link #run}, once it has
+     * returned and the resources are closed.
+     */
+    public void stopped() {
+        stopped.countDown();
+    }
+
+    /**
+     * Stop polling, and wait for the run in progress, if any, to complete and for {@link #stopped} to be called.
+     * Called from the shutdown hook.
+     */
+    public void shutdown() {
+        log.info("Shutting down after the run in progress");
+        shutdownRequested.countDown();
+        try {
+            if (!stopped.await(Long.parseLong(
+                    properties.getProperty(EditionRecordsConfigConstants.DAEMON_SHUTDOWN_TIMEOUT, "600000")),
+                               TimeUnit.MILLISECONDS)) {
+                log.warn("Run in progress did not complete before the shutdown timeout");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
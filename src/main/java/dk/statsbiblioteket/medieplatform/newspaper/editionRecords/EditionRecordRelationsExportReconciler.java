@@ -0,0 +1,212 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.statsbiblioteket.medieplatform.autonomous.DomsItemFactory;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reconciles the relations of all editions in a FOXML export of DOMS, without calling DOMS. The EDITION MODS and
+ * current relations are read from the export, files in parallel, and matched against the newspaper titles in SBOI.
+ * The changes needed are written as a plan, to be applied online with {@link EditionRecordRelationsPlanApplier}.
+ */
+public class EditionRecordRelationsExportReconciler {
+
+    private static Logger log = LoggerFactory.getLogger(EditionRecordRelationsExportReconciler.class);
+
+    private final NewspaperIndex newspaperIndex;
+    private final FoxmlEditionReader foxmlEditionReader;
+    private final RelationsWriter relationsWriter;
+    private final ExecutorService executor;
+    private final int maxPendingFiles;
+    private final AtomicInteger editions = new AtomicInteger();
+    private final AtomicInteger changed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final ThreadLocal<RelationDiff> relationDiffs = new ThreadLocal<RelationDiff>() {
+        @Override
+        protected RelationDiff initialValue() {
+            return new RelationDiff();
+        }
+    };
+
+    /**
+     * @param newspaperIndex The newspaper titles to match editions against.
+     * @param editionToNewspaperRelation The predicate of the relations from edition to newspaper title.
+     * @param relationsWriter The writer of the changes needed, normally a {@link RelationPlanWriter}.
+     * @param executor Executor used for reading export files in parallel.
+     * @param maxPendingFiles Maximal number of export files listed but not yet read.
+     */
+    public EditionRecordRelationsExportReconciler(NewspaperIndex newspaperIndex, String editionToNewspaperRelation,
+                                                  RelationsWriter relationsWriter, ExecutorService executor,
+                                                  int maxPendingFiles) {
+        this.newspaperIndex = newspaperIndex;
+        this.foxmlEditionReader = new FoxmlEditionReader(editionToNewspaperRelation);
+        this.relationsWriter = relationsWriter;
+        this.executor = executor;
+        this.maxPendingFiles = maxPendingFiles;
+    }
+
+    /**
+     * Usage: properties-file export plan-file
+     *
+     * @param args The path to the properties file, the path to the FOXML export, either a file or a directory that
+     * is searched for *.xml files, and the path to the plan file to append the changes to.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            throw new RuntimeException("Usage: " + EditionRecordRelationsExportReconciler.class.getSimpleName()
+                                       + " properties-file export plan-file");
+        }
+        System.exit(doMain(args));
+    }
+
+    public static int doMain(String[] args) throws Exception {
+        log.info("Starting with args {}", Arrays.asList(args));
+        Properties properties = EditionRecordRelationsMaintainerComponent.readProperties(args);
+        SolrServer solrServer = EditionRecordRelationsMaintainerComponent.createSolrServer(properties,
+                                                                                           new EditionRecordsMetrics());
+        // All titles are needed, so they are always loaded into memory, and never reloaded during the run
+        NewspaperIndex newspaperIndex = new NewspaperIndex(solrServer, new DomsItemFactory(), Long.MAX_VALUE);
+        int threads = Integer.parseInt(properties.getProperty(EditionRecordsConfigConstants.PLAN_THREADS, "32"));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (RelationPlanWriter planWriter = new RelationPlanWriter(new File(args[2]))) {
+            EditionRecordRelationsExportReconciler reconciler = new EditionRecordRelationsExportReconciler(
+                    newspaperIndex, RunnableEditionRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION,
+                    planWriter, executor, threads * 4);
+            int failures = reconciler.reconcile(new File(args[1]));
+            return failures > 0 ? 1 : 0;
+        } finally {
+            executor.shutdownNow();
+            newspaperIndex.close();
+            solrServer.shutdown();
+        }
+    }
+
+    /**
+     * Reconcile the relations of the editions in an export.
+     *
+     * @param export A FOXML file, or a directory that is searched recursively for *.xml files.
+     * @return The number of editions and files that failed.
+     * @throws IOException if the export could not be listed.
+     * @throws InterruptedException if interrupted while waiting for the files to be read.
+     */
+    public int reconcile(final File export) throws IOException, InterruptedException {
+        final Semaphore pending = new Semaphore(maxPendingFiles);
+        final AtomicInteger files = new AtomicInteger();
+        Files.walkFileTree(export.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, BasicFileAttributes attributes) throws IOException {
+                // An export given as a single file is read whatever its name
+                if (!file.getFileName().toString().endsWith(".xml") && !file.equals(export.toPath())) {
+                    return FileVisitResult.CONTINUE;
+                }
+                try {
+                    pending.acquire();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while listing " + export);
+                }
+                files.incrementAndGet();
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            reconcileFile(file);
+                        } finally {
+                            pending.release();
+                        }
+                    }
+                });
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        pending.acquire(maxPendingFiles);
+        log.info("Reconciled {} editions in {} files of {}, {} to change, {} failed, {} skipped as not inline",
+                 editions.get(), files.get(), export, changed.get(), failed.get(), foxmlEditionReader.getNotInline());
+        return failed.get();
+    }
+
+    /**
+     * Reconcile the editions in one export file. Failures are logged and counted.
+     *
+     * @param file The file.
+     */
+    private void reconcileFile(final Path file) {
+        try (InputStream foxml = new BufferedInputStream(new FileInputStream(file.toFile()), 64 * 1024)) {
+            foxmlEditionReader.read(foxml, new FoxmlEditionReader.EditionHandler() {
+                @Override
+                public void edition(String domsID, EditionMetadata edition, List<String> titlesWithRelation) {
+                    try {
+                        reconcileEdition(domsID, edition, titlesWithRelation);
+                    } catch (Exception e) {
+                        log.error("Failed to reconcile relations of edition {} in {}", domsID, file, e);
+                        failed.incrementAndGet();
+                    }
+                }
+            });
+        } catch (Exception e) {
+            log.error("Failed to read export file {}", file, e);
+            failed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Compute the relation changes of an edition, and write them if there are any.
+     *
+     * @param domsID The DOMS PID of the edition.
+     * @param edition The avisID and issue date of the edition.
+     * @param titlesWithRelation The titles the edition has relations to now.
+     */
+    private void reconcileEdition(String domsID, EditionMetadata edition, List<String> titlesWithRelation)
+            throws Exception {
+        editions.incrementAndGet();
+        String avisID = edition.getAvisID();
+        List<String> wantedNewspapers = newspaperIndex.getTitleIntervals(avisID)
+                                                      .lookup(avisID, EpochDays.parse(edition.getDateIssued()));
+        RelationDiff diff = relationDiffs.get().clear();
+        for (String wanted : wantedNewspapers) {
+            diff.getWanted().add(wanted);
+        }
+        for (String existing : titlesWithRelation) {
+            diff.getExisting().add(existing);
+        }
+        if (!diff.compute().isEmpty()) {
+            relationsWriter.updateRelations(domsID, toDomsIDs(diff.getToAdd()), toDomsIDs(diff.getToRemove()));
+            changed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the DOMS PIDs of a set of UUIDs
+     *
+     * @param uuids The UUIDs.
+     * @return The DOMS PIDs of the UUIDs, in the same order.
+     */
+    private static List<String> toDomsIDs(UuidSet uuids) {
+        List<String> domsIDs = new ArrayList<>(uuids.size());
+        for (int i = 0; i < uuids.size(); i++) {
+            domsIDs.add(uuids.getDomsID(i));
+        }
+        return domsIDs;
+    }
+}
@@ -1,24 +1,30 @@
 package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
 
+import org.apache.http.client.HttpClient;
 import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.impl.HttpClientUtil;
+import org.apache.solr.client.solrj.impl.HttpSolrServer;
+import org.apache.solr.common.params.ModifiableSolrParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
 import dk.statsbiblioteket.doms.central.connectors.EnhancedFedoraImpl;
 import dk.statsbiblioteket.sbutil.webservices.authentication.Credentials;
 import dk.statsbiblioteket.medieplatform.autonomous.CallResult;
 import dk.statsbiblioteket.medieplatform.autonomous.ConfigConstants;
-import dk.statsbiblioteket.medieplatform.autonomous.DomsItemFactory;
 import dk.statsbiblioteket.medieplatform.autonomous.Item;
-import dk.statsbiblioteket.medieplatform.autonomous.RunnableComponent;
+import dk.statsbiblioteket.medieplatform.autonomous.ItemFactory;
 import dk.statsbiblioteket.medieplatform.autonomous.SBOIDomsAutonomousComponentUtils;
-import dk.statsbiblioteket.medieplatform.autonomous.SolrJConnector;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
 
 public class EditionRecordRelationsMaintainerComponent {
 
@@ -39,25 +45,335 @@ public class EditionRecordRelationsMaintainerComponent {
     public static int doMain(String[] args) throws Exception {
         log.info("Starting with args {}", args);
         Properties properties = readProperties(args);
+        if (properties.getProperty(EditionRecordsConfigConstants.PLAN_FILE) != null) {
+            throw new RuntimeException("Planning relation changes is not possible in the autonomous component, as it "
+                                       + "records events on the editions. Use reconcileBatch.sh to plan.");
+        }
+        try (EditionRecordsResources resources = EditionRecordsResources.open(properties)) {
+            CallResult<Item> result = SBOIDomsAutonomousComponentUtils.startAutonomousComponent(
+                    properties, resources.getMaintainer(), resources.getItemFactory());
+            log.info("result was: " + result);
+            if (resources.getJournal() != null) {
+                // The run ended, so the events on the editions now tell what is left to do
+                resources.getJournal().clear();
+            }
+            return result.containsFailures();
+        }
+    }
+
+    /**
+     * Open the journal of relation changes configured in the properties.
+     *
+     * @param properties The properties.
+     * @return The journal, or null if no journal file is configured.
+     * @throws IOException if the journal could not be opened.
+     */
+    static RelationsJournal createJournal(Properties properties) throws IOException {
+        String journalFile = properties.getProperty(EditionRecordsConfigConstants.JOURNAL_FILE);
+        return journalFile != null ? new RelationsJournal(new File(journalFile)) : null;
+    }
+
+    /**
+     * Open the store of fingerprints of reconciled editions configured in the properties.
+     *
+     * @param properties The properties.
+     * @return The fingerprints, or null if no fingerprint file is configured.
+     * @throws IOException if the fingerprint file could not be read.
+     */
+    static EditionFingerprints createFingerprints(Properties properties) throws IOException {
+        String fingerprintsFile = properties.getProperty(EditionRecordsConfigConstants.FINGERPRINTS_FILE);
+        return fingerprintsFile != null ? new EditionFingerprints(new File(fingerprintsFile)) : null;
+    }
+
+    /**
+     * Recover the editions left incomplete in the journal by an earlier run, and journal the relation changes of the
+     * maintainer from now on. The state changes are journaled by the DOMS client, which must be wrapped in
+     * {@link JournalingFedora}.
+     *
+     * @param journal The journal, or null to do nothing.
+     * @param maintainer The maintainer.
+     * @param eFedora The DOMS client.
+     * @throws IOException if the journal could not be written.
+     */
+    static void useJournal(RelationsJournal journal, RunnableEditionRecordRelationsMaintainer maintainer,
+                           EnhancedFedora eFedora) throws IOException {
+        if (journal == null) {
+            return;
+        }
+        if (journal.getIncompleteCount() > 0) {
+            journal.recover(maintainer.getRelationsWriter(), eFedora);
+        }
+        maintainer.setRelationsWriter(new JournalingRelationsWriter(journal, maintainer.getRelationsWriter()));
+    }
+
+    /**
+     * Expose metrics in JMX and over HTTP, as configured in the properties.
+     *
+     * @param properties The properties.
+     * @param metrics The metrics.
+     * @return The HTTP server serving the metrics, or null if not configured.
+     * @throws IOException if the HTTP server could not be started.
+     */
+    static MetricsHttpServer exposeMetrics(Properties properties, EditionRecordsMetrics metrics) throws IOException {
+        if (Boolean.parseBoolean(properties.getProperty(EditionRecordsConfigConstants.METRICS_JMX, "false"))) {
+            metrics.registerMBeans();
+        }
+        int port = Integer.parseInt(properties.getProperty(EditionRecordsConfigConstants.METRICS_HTTP_PORT, "0"));
+        String host = properties.getProperty(EditionRecordsConfigConstants.METRICS_HTTP_HOST, "127.0.0.1");
+        return port > 0 ? new MetricsHttpServer(host, port, metrics) : null;
+    }
+
+    /**
+     * Create the DOMS client from the properties. If so configured, the client limits the number of concurrent
+     * calls from all threads using it. With the adaptive limit, calls failing with a sign of overload are retried
+     * within a retry budget, and not by the client itself. The latency of calls is recorded in the metrics.
+     *
+     * @param properties The properties.
+     * @param metrics The metrics to record in.
+     * @return The DOMS client.
+     */
+    static EnhancedFedora createFedora(Properties properties, EditionRecordsMetrics metrics) throws Exception {
         Credentials creds = new Credentials(properties.getProperty(ConfigConstants.DOMS_USERNAME),
                 properties.getProperty(ConfigConstants.DOMS_PASSWORD));
         String fedoraLocation = properties.getProperty(ConfigConstants.DOMS_URL);
         int fedoraRetries = Integer.parseInt(properties.getProperty(ConfigConstants.FEDORA_RETRIES, "1"));
+        boolean adaptiveLimit = Boolean.parseBoolean(
+                properties.getProperty(EditionRecordsConfigConstants.FEDORA_ADAPTIVE_LIMIT, "false"));
+        if (adaptiveLimit && fedoraRetries > 1) {
+            // Overloaded calls are retried within the retry budget, which retrying in the client would multiply
+            log.info("Ignoring {}={} as the adaptive DOMS limit retries calls within its budget",
+                     ConfigConstants.FEDORA_RETRIES, fedoraRetries);
+            fedoraRetries = 1;
+        }
         int fedoraDelayBetweenRetries = Integer.parseInt(properties.getProperty(ConfigConstants.FEDORA_DELAY_BETWEEN_RETRIES, "100"));
-        EnhancedFedoraImpl eFedora = new EnhancedFedoraImpl(creds,
+        EnhancedFedora eFedora = new EnhancedFedoraImpl(creds,
                 fedoraLocation,
                 properties.getProperty(ConfigConstants.DOMS_PIDGENERATOR_URL),
                 null, fedoraRetries, fedoraDelayBetweenRetries);
-        SolrServer solrServer = new SolrJConnector(properties.getProperty(ConfigConstants.AUTONOMOUS_SBOI_URL)).getSolrServer();
-        DomsItemFactory itemFactory = new DomsItemFactory();
-        NewspaperIndex newspaperIndex = new NewspaperIndex(solrServer, itemFactory);
+        int maxConcurrentCalls = Integer.parseInt(
+                properties.getProperty(EditionRecordsConfigConstants.FEDORA_MAX_CONCURRENT_CALLS, "0"));
+        if (adaptiveLimit) {
+            int minConcurrentCalls = Integer.parseInt(
+                    properties.getProperty(EditionRecordsConfigConstants.FEDORA_MIN_CONCURRENT_CALLS, "2"));
+            long latencyTarget = Long.parseLong(
+                    properties.getProperty(EditionRecordsConfigConstants.FEDORA_LATENCY_TARGET, "2000"));
+            maxConcurrentCalls = maxConcurrentCalls > 0 ? maxConcurrentCalls : 64;
+            eFedora = LimitedFedora.wrap(eFedora, new AdaptiveCallLimiter("DOMS", minConcurrentCalls,
+                                                                          maxConcurrentCalls, minConcurrentCalls,
+                                                                          latencyTarget),
+                                         createRetryBudget(properties, metrics));
+        } else if (maxConcurrentCalls > 0) {
+            eFedora = LimitedFedora.wrap(eFedora, new FixedCallLimiter(maxConcurrentCalls));
+        }
+        return MeteredFedora.wrap(eFedora, metrics);
+    }
+
+    /**
+     * Create the SBOI client from the properties. The client uses a pool of keep-alive HTTP connections shared by
+     * all threads using it, with the limits, timeouts and compression configured. If so configured, queries have a
+     * deadline, slow queries are hedged, and the client adapts the number of concurrent queries from all threads
+     * using it to the health of SBOI. The connections are closed when the client is shut down.
+     *
+     * @param properties The properties.
+     * @param metrics The metrics to count retries and hedges in.
+     * @return The SBOI client.
+     */
+    static SolrServer createSolrServer(Properties properties, EditionRecordsMetrics metrics) {
+        // Lets the hedged client abort the queries it gives up on
+        final HttpClient httpClient = new AbortableHttpClient(createSolrHttpClient(properties));
+        SolrServer solrServer = new HttpSolrServer(properties.getProperty(ConfigConstants.AUTONOMOUS_SBOI_URL),
+                                                   httpClient) {
+            @Override
+            public void shutdown() {
+                super.shutdown();
+                // SolrJ leaves a client it was given open. The hedge endpoints share it, so it is closed with this one
+                httpClient.getConnectionManager().shutdown();
+            }
+        };
+        long deadline = Long.parseLong(properties.getProperty(EditionRecordsConfigConstants.SBOI_DEADLINE, "0"));
+        boolean hedge = Boolean.parseBoolean(properties.getProperty(EditionRecordsConfigConstants.SBOI_HEDGE, "false"));
+        if (deadline > 0 || hedge) {
+            List<SolrServer> endpoints = new ArrayList<>();
+            endpoints.add(solrServer);
+            String hedgeUrls = properties.getProperty(EditionRecordsConfigConstants.SBOI_HEDGE_URLS, "");
+            for (String hedgeUrl : hedgeUrls.split(",")) {
+                if (!hedgeUrl.trim().isEmpty()) {
+                    endpoints.add(new HttpSolrServer(hedgeUrl.trim(), httpClient));
+                }
+            }
+            double hedgePercentile = hedge ? Double.parseDouble(
+                    properties.getProperty(EditionRecordsConfigConstants.SBOI_HEDGE_PERCENTILE, "0.95")) : 0;
+            double hedgeRatio = Double.parseDouble(
+                    properties.getProperty(EditionRecordsConfigConstants.SBOI_HEDGE_RATIO, "0.05"));
+            int maxConnections = Integer.parseInt(
+                    properties.getProperty(EditionRecordsConfigConstants.SBOI_MAX_CONNECTIONS, "128"));
+            solrServer = new HedgedSolrServer(endpoints, deadline, hedgePercentile, new RetryBudget(hedgeRatio, 10, 0),
+                                              metrics, maxConnections);
+        }
+        if (Boolean.parseBoolean(properties.getProperty(EditionRecordsConfigConstants.SBOI_ADAPTIVE_LIMIT, "false"))) {
+            int minConcurrentCalls = Integer.parseInt(
+                    properties.getProperty(EditionRecordsConfigConstants.SBOI_MIN_CONCURRENT_CALLS, "2"));
+            int maxConcurrentCalls = Integer.parseInt(
+                    properties.getProperty(EditionRecordsConfigConstants.SBOI_MAX_CONCURRENT_CALLS, "32"));
+            long latencyTarget = Long.parseLong(
+                    properties.getProperty(EditionRecordsConfigConstants.SBOI_LATENCY_TARGET, "1000"));
+            solrServer = new LimitedSolrServer(solrServer, new AdaptiveCallLimiter("SBOI", minConcurrentCalls,
+                                                                                   maxConcurrentCalls,
+                                                                                   minConcurrentCalls, latencyTarget),
+                                               createRetryBudget(properties, metrics));
+        }
+        return solrServer;
+    }
 
-        RunnableComponent<Item> component = new RunnableEditionRecordRelationsMaintainer(properties, eFedora, itemFactory,
-                newspaperIndex);
-        CallResult<Item> result = SBOIDomsAutonomousComponentUtils.startAutonomousComponent(properties, component,new
-                DomsItemFactory());
-        log.info("result was: " + result);
-        return result.containsFailures();
+    /**
+     * Create the pooled HTTP client of the SBOI client from the properties. The defaults are those of SolrJ, except
+     * for the timeouts, as a hung connection would otherwise hold a worker forever.
+     *
+     * @param properties The properties.
+     * @return The HTTP client.
+     */
+    static HttpClient createSolrHttpClient(Properties properties) {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.set(HttpClientUtil.PROP_MAX_CONNECTIONS_PER_HOST, Integer.parseInt(
+                properties.getProperty(EditionRecordsConfigConstants.SBOI_MAX_CONNECTIONS_PER_ROUTE, "32")));
+        params.set(HttpClientUtil.PROP_MAX_CONNECTIONS, Integer.parseInt(
+                properties.getProperty(EditionRecordsConfigConstants.SBOI_MAX_CONNECTIONS, "128")));
+        params.set(HttpClientUtil.PROP_CONNECTION_TIMEOUT, Integer.parseInt(
+                properties.getProperty(EditionRecordsConfigConstants.SBOI_CONNECT_TIMEOUT, "10000")));
+        params.set(HttpClientUtil.PROP_SO_TIMEOUT, Integer.parseInt(
+                properties.getProperty(EditionRecordsConfigConstants.SBOI_SOCKET_TIMEOUT, "120000")));
+        params.set(HttpClientUtil.PROP_ALLOW_COMPRESSION, Boolean.parseBoolean(
+                properties.getProperty(EditionRecordsConfigConstants.SBOI_COMPRESSION, "false")));
+        params.set(HttpClientUtil.PROP_FOLLOW_REDIRECTS, false);
+        return HttpClientUtil.createClient(params);
+    }
+
+    /**
+     * Create a retry budget from the properties.
+     *
+     * @param properties The properties.
+     * @param metrics The metrics to count retries in.
+     * @return The retry budget.
+     */
+    private static RetryBudget createRetryBudget(Properties properties, EditionRecordsMetrics metrics) {
+        double ratio = Double.parseDouble(properties.getProperty(EditionRecordsConfigConstants.RETRY_BUDGET_RATIO, "0.1"));
+        long baseDelay = Long.parseLong(properties.getProperty(EditionRecordsConfigConstants.RETRY_BASE_DELAY, "100"));
+        RetryBudget retryBudget = new RetryBudget(ratio, 10, baseDelay);
+        metrics.addRetryBudget(retryBudget);
+        return retryBudget;
+    }
+
+    /**
+     * Create the newspaper title index, in memory, and mapped from the title snapshot, if so configured.
+     *
+     * @param properties The properties.
+     * @param solrServer The SBOI client.
+     * @param itemFactory Factory for items.
+     * @return The newspaper title index.
+     */
+    static NewspaperIndex createNewspaperIndex(Properties properties, SolrServer solrServer,
+                                               ItemFactory<Item> itemFactory) {
+        if (Boolean.parseBoolean(properties.getProperty(EditionRecordsConfigConstants.TITLE_INDEX_IN_MEMORY, "false"))) {
+            long refreshInterval = Long.parseLong(
+                    properties.getProperty(EditionRecordsConfigConstants.TITLE_INDEX_REFRESH_INTERVAL, "600000"));
+            String snapshotFile = properties.getProperty(EditionRecordsConfigConstants.TITLES_SNAPSHOT_FILE);
+            return new NewspaperIndex(solrServer, itemFactory, refreshInterval,
+                                      snapshotFile != null ? new File(snapshotFile) : null);
+        } else {
+            return new NewspaperIndex(solrServer, itemFactory);
+        }
+    }
+
+    /**
+     * Create the maintainer with the optional parts enabled in the properties.
+     *
+     * @param properties The properties.
+     * @param eFedora The DOMS client.
+     * @param solrServer The SBOI client.
+     * @param itemFactory Factory for items.
+     * @param newspaperIndex The newspaper title index.
+     * @return The maintainer.
+     */
+    static RunnableEditionRecordRelationsMaintainer createMaintainer(Properties properties, EnhancedFedora eFedora,
+                                                                     SolrServer solrServer,
+                                                                     ItemFactory<Item> itemFactory,
+                                                                     NewspaperIndex newspaperIndex) {
+        RunnableEditionRecordRelationsMaintainer component = new RunnableEditionRecordRelationsMaintainer(properties,
+                eFedora, itemFactory, newspaperIndex);
+        if (Boolean.parseBoolean(properties.getProperty(EditionRecordsConfigConstants.EDITION_METADATA_FROM_SBOI, "false"))) {
+            component.setEditionIndex(new EditionIndex(solrServer));
+        }
+        component.setRelationsWriter(createRelationsWriter(properties, eFedora,
+                                                           component.getEditionToNewspaperRelation()));
+        return component;
+    }
+
+    /**
+     * Create the reconciler of editions affected by changed titles, if a title snapshot file is configured.
+     *
+     * @param properties The properties.
+     * @param maintainer The maintainer doing the reconciliation.
+     * @param solrServer The SBOI client.
+     * @param itemFactory Factory for items.
+     * @param executor Executor used for reading and writing relations in parallel.
+     * @param shards The division of avisIDs between nodes, or null if this node reconciles all avisIDs.
+     * @return The reconciler, or null if no title snapshot file is configured.
+     */
+    static TitleChangeReconciler createTitleChangeReconciler(Properties properties,
+                                                             RunnableEditionRecordRelationsMaintainer maintainer,
+                                                             SolrServer solrServer, ItemFactory<Item> itemFactory,
+                                                             ExecutorService executor, AvisIDShards shards) {
+        String snapshotFile = properties.getProperty(EditionRecordsConfigConstants.TITLES_SNAPSHOT_FILE);
+        if (snapshotFile == null) {
+            return null;
+        }
+        int batchSize = Integer.parseInt(properties.getProperty(EditionRecordsConfigConstants.BATCH_SIZE, "100"));
+        TitleChangeReconciler reconciler = new TitleChangeReconciler(
+                new EditionRecordRelationsBatchReconciler(maintainer, new EditionIndex(solrServer), itemFactory,
+                                                          executor, batchSize),
+                new File(snapshotFile));
+        reconciler.setShards(shards);
+        return reconciler;
+    }
+
+    /**
+     * Register this node among the nodes dividing the avisIDs between them, if so configured.
+     *
+     * @param properties The properties.
+     * @return The division of avisIDs between nodes, or null if not configured.
+     * @throws Exception if the nodes could not be read from ZooKeeper.
+     */
+    static AvisIDShards createShards(Properties properties) throws Exception {
+        if (!Boolean.parseBoolean(properties.getProperty(EditionRecordsConfigConstants.SHARDS_ENABLED, "false"))) {
+            return null;
+        }
+        return new AvisIDShards(properties.getProperty(ConfigConstants.AUTONOMOUS_LOCKSERVER_URL),
+                                properties.getProperty(EditionRecordsConfigConstants.SHARDS_PATH,
+                                                       "/editionRecords/nodes"),
+                                properties.getProperty(EditionRecordsConfigConstants.SHARDS_NODE_ID,
+                                                       AvisIDShards.defaultNodeID()));
+    }
+
+    /**
+     * Create the writer of relation changes to DOMS configured in the properties.
+     *
+     * @param properties The properties.
+     * @param eFedora The DOMS client.
+     * @param editionToNewspaperRelation The predicate of the relations from edition to newspaper title.
+     * @return The writer of relation changes.
+     */
+    static RelationsWriter createRelationsWriter(Properties properties, EnhancedFedora eFedora,
+                                                 String editionToNewspaperRelation) {
+        RelationsWriter relationsWriter;
+        if (Boolean.parseBoolean(properties.getProperty(EditionRecordsConfigConstants.RELATIONS_SINGLE_WRITE, "false"))) {
+            relationsWriter = new RelsExtRelationsWriter(eFedora, editionToNewspaperRelation);
+        } else {
+            relationsWriter = new PerRelationWriter(eFedora, editionToNewspaperRelation);
+        }
+        if (Boolean.parseBoolean(properties.getProperty(EditionRecordsConfigConstants.RELATIONS_STATE_AWARE, "false"))) {
+            relationsWriter = new StateAwareRelationsWriter(eFedora, relationsWriter);
+        }
+        return relationsWriter;
     }
 
     /**
@@ -71,7 +387,7 @@ public class EditionRecordRelationsMaintainerComponent {
      * @throws IOException if the file could not be read
      * @throws RuntimeException    if no path could be determined
      */
-    private static Properties readProperties(String[] args) throws IOException, RuntimeException {
+    static Properties readProperties(String[] args) throws IOException, RuntimeException {
         Properties properties = new Properties();
         String propsFileString;
         if (args.length >= 1) {
@@ -0,0 +1,140 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies a plan of relation changes written by {@link RelationPlanWriter} to DOMS, without looking up editions or
+ * titles again. Editions are written in parallel, the changes of each edition by one task.
+ */
+public class EditionRecordRelationsPlanApplier {
+
+    private static Logger log = LoggerFactory.getLogger(EditionRecordRelationsPlanApplier.class);
+
+    private final RelationsWriter relationsWriter;
+    private final EditionRecordsMetrics metrics;
+    private final ExecutorService executor;
+    private final int maxPending;
+
+    /**
+     * @param relationsWriter The writer of relation changes to DOMS.
+     * @param metrics The metrics to count changes in.
+     * @param executor Executor used for writing editions in parallel.
+     * @param maxPending Maximal number of editions read from the plan but not yet written.
+     */
+    public EditionRecordRelationsPlanApplier(RelationsWriter relationsWriter, EditionRecordsMetrics metrics,
+                                             ExecutorService executor, int maxPending) {
+        this.relationsWriter = relationsWriter;
+        this.metrics = metrics;
+        this.executor = executor;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Usage: properties-file plan-file
+     *
+     * @param args The path to the properties file and the path to the plan file.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new RuntimeException("Usage: " + EditionRecordRelationsPlanApplier.class.getSimpleName()
+                                       + " properties-file plan-file");
+        }
+        System.exit(doMain(args));
+    }
+
+    public static int doMain(String[] args) throws Exception {
+        log.info("Starting with args {}", Arrays.asList(args));
+        Properties properties = EditionRecordRelationsMaintainerComponent.readProperties(args);
+        EditionRecordsMetrics metrics = new EditionRecordsMetrics();
+        MetricsHttpServer metricsServer = EditionRecordRelationsMaintainerComponent.exposeMetrics(properties, metrics);
+        EnhancedFedora eFedora = EditionRecordRelationsMaintainerComponent.createFedora(properties, metrics);
+        RelationsWriter relationsWriter = EditionRecordRelationsMaintainerComponent.createRelationsWriter(properties,
+                eFedora, RunnableEditionRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION);
+        int threads = Integer.parseInt(properties.getProperty(EditionRecordsConfigConstants.BATCH_THREADS, "8"));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (BufferedReader plan = new BufferedReader(new InputStreamReader(new FileInputStream(args[1]),
+                                                                            StandardCharsets.UTF_8))) {
+            int failures = new EditionRecordRelationsPlanApplier(relationsWriter, metrics, executor, threads * 4)
+                    .apply(plan);
+            return failures > 0 ? 1 : 0;
+        } finally {
+            executor.shutdownNow();
+            if (metricsServer != null) {
+                metricsServer.stop();
+            }
+        }
+    }
+
+    /**
+     * Apply a plan.
+     *
+     * @param plan The plan.
+     * @return The number of editions that failed.
+     * @throws IOException if the plan could not be read.
+     * @throws InterruptedException if interrupted while waiting for the writes.
+     */
+    public int apply(BufferedReader plan) throws IOException, InterruptedException {
+        final Semaphore pending = new Semaphore(maxPending);
+        final AtomicInteger failures = new AtomicInteger();
+        int editions = 0;
+        String line;
+        while ((line = plan.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith(RelationPlanWriter.COMMENT)) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 3) {
+                throw new IOException("Malformed plan line: " + line);
+            }
+            final String domsID = fields[0];
+            final List<String> titlesToAdd = toTitles(fields[1]);
+            final List<String> titlesToRemove = toTitles(fields[2]);
+            pending.acquire();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        relationsWriter.updateRelations(domsID, titlesToAdd, titlesToRemove);
+                        metrics.relationsChanged(titlesToAdd.size(), titlesToRemove.size());
+                        metrics.itemsDone(1, 0);
+                    } catch (Exception e) {
+                        log.error("Failed to apply planned relations of edition {}", domsID, e);
+                        metrics.itemsDone(0, 1);
+                        failures.incrementAndGet();
+                    } finally {
+                        pending.release();
+                    }
+                }
+            });
+            editions++;
+        }
+        pending.acquire(maxPending);
+        log.info("Applied planned relations of {} editions, {} failed", editions, failures.get());
+        return failures.get();
+    }
+
+    private static List<String> toTitles(String field) {
+        if (field.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(Arrays.asList(field.split(",")));
+    }
+}
@@ -0,0 +1,268 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+/**
+ * Names of the configuration properties specific to the edition records maintainer. The properties of the
+ * autonomous component framework are found in {@link dk.statsbiblioteket.medieplatform.autonomous.ConfigConstants}.
+ */
+public final class EditionRecordsConfigConstants {
+
+    /**
+     * If true, all newspaper titles are loaded into memory and title lookups are answered without querying SBOI.
+     */
+    public static final String TITLE_INDEX_IN_MEMORY = "editionRecords.titleIndex.inMemory";
+
+    /**
+     * Milliseconds between background reloads of the in-memory newspaper titles.
+     */
+    public static final String TITLE_INDEX_REFRESH_INTERVAL = "editionRecords.titleIndex.refreshIntervalMillis";
+
+    /**
+     * If true, avisID and issue date of editions are read from SBOI, falling back to the EDITION datastream in DOMS
+     * for editions that are not indexed with these fields.
+     */
+    public static final String EDITION_METADATA_FROM_SBOI = "editionRecords.editionMetadata.fromSboi";
+
+    /**
+     * If true, all relation changes of an edition are written as one update of its RELS-EXT datastream instead of
+     * one DOMS call per changed relation.
+     */
+    public static final String RELATIONS_SINGLE_WRITE = "editionRecords.relations.singleWrite";
+
+    /**
+     * If true, the object state of an edition is read before its relations are changed, and a published edition is
+     * unpublished once around all its changes, instead of on every write rejected because it is published.
+     */
+    public static final String RELATIONS_STATE_AWARE = "editionRecords.relations.stateAware";
+
+    /**
+     * Maximal number of concurrent calls to DOMS from all threads of the component. 0 means no limit, unless the
+     * limit is adaptive.
+     */
+    public static final String FEDORA_MAX_CONCURRENT_CALLS = "editionRecords.fedora.maxConcurrentCalls";
+
+    /**
+     * If true, the limit of concurrent calls to DOMS adapts to the latency and overload signals of DOMS, between
+     * {@link #FEDORA_MIN_CONCURRENT_CALLS} and {@link #FEDORA_MAX_CONCURRENT_CALLS}, and calls failing with signs of
+     * overload are retried within a retry budget.
+     */
+    public static final String FEDORA_ADAPTIVE_LIMIT = "editionRecords.fedora.adaptiveLimit";
+
+    /**
+     * The lowest limit of concurrent calls to DOMS when the limit is adaptive.
+     */
+    public static final String FEDORA_MIN_CONCURRENT_CALLS = "editionRecords.fedora.minConcurrentCalls";
+
+    /**
+     * The 99th percentile latency of DOMS calls, in milliseconds, above which DOMS is considered overloaded.
+     */
+    public static final String FEDORA_LATENCY_TARGET = "editionRecords.fedora.latencyTargetMillis";
+
+    /**
+     * If true, the limit of concurrent queries to SBOI adapts to the latency and overload signals of SBOI, between
+     * {@link #SBOI_MIN_CONCURRENT_CALLS} and {@link #SBOI_MAX_CONCURRENT_CALLS}, and queries failing with signs of
+     * overload are retried within a retry budget.
+     */
+    public static final String SBOI_ADAPTIVE_LIMIT = "editionRecords.sboi.adaptiveLimit";
+
+    /**
+     * The lowest limit of concurrent queries to SBOI when the limit is adaptive.
+     */
+    public static final String SBOI_MIN_CONCURRENT_CALLS = "editionRecords.sboi.minConcurrentCalls";
+
+    /**
+     * The highest limit of concurrent queries to SBOI when the limit is adaptive.
+     */
+    public static final String SBOI_MAX_CONCURRENT_CALLS = "editionRecords.sboi.maxConcurrentCalls";
+
+    /**
+     * The 99th percentile latency of SBOI queries, in milliseconds, above which SBOI is considered overloaded.
+     */
+    public static final String SBOI_LATENCY_TARGET = "editionRecords.sboi.latencyTargetMillis";
+
+    /**
+     * Maximum number of pooled HTTP connections to SBOI per route, i.e. per SBOI host.
+     */
+    public static final String SBOI_MAX_CONNECTIONS_PER_ROUTE = "editionRecords.sboi.maxConnectionsPerRoute";
+
+    /**
+     * Maximum number of pooled HTTP connections to SBOI in total.
+     */
+    public static final String SBOI_MAX_CONNECTIONS = "editionRecords.sboi.maxConnections";
+
+    /**
+     * Milliseconds to wait for a connection to SBOI to be established.
+     */
+    public static final String SBOI_CONNECT_TIMEOUT = "editionRecords.sboi.connectTimeoutMillis";
+
+    /**
+     * Milliseconds to wait for data from SBOI on an established connection.
+     */
+    public static final String SBOI_SOCKET_TIMEOUT = "editionRecords.sboi.socketTimeoutMillis";
+
+    /**
+     * Whether to ask SBOI for gzip or deflate compressed responses.
+     */
+    public static final String SBOI_COMPRESSION = "editionRecords.sboi.compression";
+
+    /**
+     * Milliseconds before an SBOI query without an answer fails, 0 for no deadline beyond the socket timeout.
+     */
+    public static final String SBOI_DEADLINE = "editionRecords.sboi.deadlineMillis";
+
+    /**
+     * Whether to send a second, hedged SBOI query when the first is slower than {@link #SBOI_HEDGE_PERCENTILE} of the
+     * latencies seen, or fails. The first answer is used.
+     */
+    public static final String SBOI_HEDGE = "editionRecords.sboi.hedge";
+
+    /**
+     * Comma separated URLs of other SBOI endpoints to send hedged queries to, in turn. If none, hedged queries go to
+     * autonomous.sboi.url as well.
+     */
+    public static final String SBOI_HEDGE_URLS = "editionRecords.sboi.hedgeUrls";
+
+    /**
+     * The percentile of SBOI query latencies, between 0 and 1, after which a query is hedged.
+     */
+    public static final String SBOI_HEDGE_PERCENTILE = "editionRecords.sboi.hedgePercentile";
+
+    /**
+     * Number of hedged SBOI queries allowed per query, e.g. 0.05 for at most 5% extra queries.
+     */
+    public static final String SBOI_HEDGE_RATIO = "editionRecords.sboi.hedgeRatio";
+
+    /**
+     * Number of retries allowed per call for calls failing with signs of overload, e.g. 0.1 for at most 10% extra
+     * calls. Applies to DOMS and SBOI when their limit is adaptive.
+     */
+    public static final String RETRY_BUDGET_RATIO = "editionRecords.retry.budgetRatio";
+
+    /**
+     * Milliseconds before the first retry of a call. Later retries wait exponentially longer, with jitter.
+     */
+    public static final String RETRY_BASE_DELAY = "editionRecords.retry.baseDelayMillis";
+
+    /**
+     * Number of editions reconciled together by the batch reconciler.
+     */
+    public static final String BATCH_SIZE = "editionRecords.batch.size";
+
+    /**
+     * Number of threads the batch reconciler reads and writes relations with.
+     */
+    public static final String BATCH_THREADS = "editionRecords.batch.threads";
+
+    /**
+     * Whether the batch reconciler streams editions through an {@link EditionPipeline} of stages with their own
+     * threads, instead of reconciling them a page at a time with {@link #BATCH_THREADS} threads.
+     */
+    public static final String BATCH_PIPELINE = "editionRecords.batch.pipeline";
+
+    /**
+     * Number of threads of the pipeline stage reading edition fields from SBOI or the EDITION datastream from DOMS.
+     */
+    public static final String PIPELINE_FETCH_THREADS = "editionRecords.pipeline.fetchThreads";
+
+    /**
+     * Number of threads of the pipeline stage parsing the EDITION datastream.
+     */
+    public static final String PIPELINE_PARSE_THREADS = "editionRecords.pipeline.parseThreads";
+
+    /**
+     * Number of threads of the pipeline stage looking up the titles of editions.
+     */
+    public static final String PIPELINE_RESOLVE_THREADS = "editionRecords.pipeline.resolveThreads";
+
+    /**
+     * Number of threads of the pipeline stage reading the current relations of editions from DOMS.
+     */
+    public static final String PIPELINE_READ_THREADS = "editionRecords.pipeline.readThreads";
+
+    /**
+     * Number of threads of the pipeline stage writing relation changes to DOMS.
+     */
+    public static final String PIPELINE_WRITE_THREADS = "editionRecords.pipeline.writeThreads";
+
+    /**
+     * Number of editions each pipeline stage can queue before the stage feeding it waits.
+     */
+    public static final String PIPELINE_QUEUE_SIZE = "editionRecords.pipeline.queueSize";
+
+    /**
+     * File with the newspaper titles as they were when last reconciled. If set, the component reconciles the editions
+     * affected by titles changed since then before processing events, and again whenever it reloads changed titles.
+     * The in-memory titles are memory-mapped from the file instead of kept on the heap while it holds the current
+     * titles, and at startup if it was known to hold them within the refresh interval.
+     */
+    public static final String TITLES_SNAPSHOT_FILE = "editionRecords.titles.snapshotFile";
+
+    /**
+     * Whether to divide the avisIDs between the nodes running the component, registered in the ZooKeeper of
+     * autonomous.lockserver.url. If set, each node only reconciles the editions affected by changed titles of its own
+     * avisIDs.
+     */
+    public static final String SHARDS_ENABLED = "editionRecords.shards.enabled";
+
+    /**
+     * ZooKeeper path the nodes dividing the avisIDs register under.
+     */
+    public static final String SHARDS_PATH = "editionRecords.shards.path";
+
+    /**
+     * Name of this node among the nodes dividing the avisIDs. Defaults to the process ID and host name.
+     */
+    public static final String SHARDS_NODE_ID = "editionRecords.shards.nodeID";
+
+    /**
+     * Write-ahead journal of relation changes and state changes. If set, the editions left incomplete by a crash are
+     * rolled forward at startup, and a restarted batch run skips the editions already completed.
+     */
+    public static final String JOURNAL_FILE = "editionRecords.journal.file";
+
+    /**
+     * File with the fingerprint of each edition as last reconciled. If set, reconcileBatch.sh and title-change
+     * reconciliation skip editions whose avisID, issue date and titles are unchanged since then, without reading or
+     * writing their relations. Editions the component gets events for are always reconciled.
+     */
+    public static final String FINGERPRINTS_FILE = "editionRecords.fingerprints.file";
+
+    /**
+     * Milliseconds the daemon waits from the end of one run of the autonomous component to the start of the next.
+     */
+    public static final String DAEMON_POLL_INTERVAL = "editionRecords.daemon.pollInterval";
+
+    /**
+     * Milliseconds the daemon waits for the run in progress to complete when shut down.
+     */
+    public static final String DAEMON_SHUTDOWN_TIMEOUT = "editionRecords.daemon.shutdownTimeout";
+
+    /**
+     * File to append planned relation changes to instead of writing them to DOMS, when reconciling batches. Apply
+     * the plan with applyPlan.sh.
+     */
+    public static final String PLAN_FILE = "editionRecords.plan.file";
+
+    /**
+     * Number of threads the batch reconciler reads relations with when only planning changes.
+     */
+    public static final String PLAN_THREADS = "editionRecords.plan.threads";
+
+    /**
+     * Whether to register metrics of latencies and work done in JMX.
+     */
+    public static final String METRICS_JMX = "editionRecords.metrics.jmx";
+
+    /**
+     * Port to serve metrics on in the Prometheus text format, at /metrics. 0 to not serve metrics over HTTP.
+     */
+    public static final String METRICS_HTTP_PORT = "editionRecords.metrics.httpPort";
+
+    /**
+     * Host name or address of the interface to serve metrics on over HTTP. Defaults to the loopback interface, use
+     * 0.0.0.0 to serve on all interfaces.
+     */
+    public static final String METRICS_HTTP_HOST = "editionRecords.metrics.httpHost";
+
+    private EditionRecordsConfigConstants() {
+    }
+}
@@ -0,0 +1,318 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency per phase of the reconciliation of an edition, and counters of the work done. Recording only updates
+ * atomic counters, so the metrics can stay on in production. The metrics can be registered in JMX and written in the
+ * Prometheus text format.
+ */
+public class EditionRecordsMetrics implements EditionRecordsMetricsMBean {
+
+    private static Logger log = LoggerFactory.getLogger(EditionRecordsMetrics.class);
+
+    private static final String JMX_DOMAIN = "dk.statsbiblioteket.newspaper.editionRecords";
+    private static final String PREFIX = "edition_records_";
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * The phases of reconciling an edition.
+     */
+    public enum Phase {
+        /** Query SBOI for avisID and issue date of editions. */
+        EDITION_QUERY,
+        /** Read the EDITION datastream from DOMS. */
+        EDITION_READ,
+        /** Parse avisID and issue date from the edition MODS. */
+        MODS_PARSE,
+        /** Look up the newspaper titles of an edition. */
+        TITLE_LOOKUP,
+        /** Read the current relations of an edition from DOMS. */
+        RELATIONS_READ,
+        /** Write relation changes to DOMS. */
+        RELATIONS_WRITE,
+        /** Unpublish or publish an edition in DOMS. */
+        STATE_CHANGE,
+        /** Reconcile one edition, all phases included. */
+        ITEM;
+
+        /**
+         * @return The name of the phase in metric names.
+         */
+        public String getMetricName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Map<Phase, LatencyHistogram> latencies = new EnumMap<>(Phase.class);
+    private final AtomicLong itemsProcessed = new AtomicLong();
+    private final AtomicLong itemsFailed = new AtomicLong();
+    private final AtomicLong itemsUnchanged = new AtomicLong();
+    private final AtomicLong relationsAdded = new AtomicLong();
+    private final AtomicLong relationsRemoved = new AtomicLong();
+    private final AtomicLong editionsUnpublished = new AtomicLong();
+    private final AtomicLong editionsPublished = new AtomicLong();
+    private final AtomicLong sboiHedges = new AtomicLong();
+    private final AtomicLong sboiHedgesWon = new AtomicLong();
+    private final List<RetryBudget> retryBudgets = new CopyOnWriteArrayList<>();
+    private final AtomicLong rateWindowStart = new AtomicLong(System.nanoTime());
+    private final AtomicLong rateWindowItems = new AtomicLong();
+    private volatile double itemsPerSecond;
+
+    public EditionRecordsMetrics() {
+        for (Phase phase : Phase.values()) {
+            latencies.put(phase, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Record the latency of a phase.
+     *
+     * @param phase The phase.
+     * @param startNanos The {@link System#nanoTime()} when the phase started.
+     */
+    public void record(Phase phase, long startNanos) {
+        latencies.get(phase).record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @param phase The phase.
+     * @return The latencies of the phase.
+     */
+    public LatencyHistogram getLatency(Phase phase) {
+        return latencies.get(phase);
+    }
+
+    /**
+     * Record that editions were reconciled.
+     *
+     * @param processed The number of editions reconciled successfully.
+     * @param failed The number of editions that failed.
+     */
+    public void itemsDone(int processed, int failed) {
+        itemsProcessed.addAndGet(processed);
+        itemsFailed.addAndGet(failed);
+        rateWindowItems.addAndGet(processed + failed);
+        long windowStart = rateWindowStart.get();
+        long now = System.nanoTime();
+        if (now - windowStart >= RATE_WINDOW_NANOS && rateWindowStart.compareAndSet(windowStart, now)) {
+            itemsPerSecond = rateWindowItems.getAndSet(0) * 1e9 / (now - windowStart);
+        }
+    }
+
+    /**
+     * Record that editions were skipped as unchanged since they were last reconciled. They are counted as reconciled
+     * successfully too.
+     *
+     * @param unchanged The number of editions skipped.
+     */
+    public void itemsUnchanged(int unchanged) {
+        itemsUnchanged.addAndGet(unchanged);
+    }
+
+    /**
+     * Record relation changes of an edition.
+     *
+     * @param added Number of relations added.
+     * @param removed Number of relations removed.
+     */
+    public void relationsChanged(int added, int removed) {
+        relationsAdded.addAndGet(added);
+        relationsRemoved.addAndGet(removed);
+    }
+
+    /**
+     * Record a change of the state of an edition.
+     *
+     * @param state The new state, "A" for published or "I" for unpublished.
+     */
+    public void stateChanged(String state) {
+        if ("A".equals(state)) {
+            editionsPublished.incrementAndGet();
+        } else {
+            editionsUnpublished.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record that a second, hedged SBOI query was sent because the first was slow.
+     */
+    public void sboiHedged() {
+        sboiHedges.incrementAndGet();
+    }
+
+    /**
+     * Record that a hedged SBOI query answered before the query it hedged.
+     */
+    public void sboiHedgeWon() {
+        sboiHedgesWon.incrementAndGet();
+    }
+
+    /**
+     * Include the retries granted by a retry budget in the retry count.
+     *
+     * @param retryBudget The retry budget.
+     */
+    public void addRetryBudget(RetryBudget retryBudget) {
+        retryBudgets.add(retryBudget);
+    }
+
+    @Override
+    public long getItemsProcessed() {
+        return itemsProcessed.get();
+    }
+
+    @Override
+    public long getItemsFailed() {
+        return itemsFailed.get();
+    }
+
+    @Override
+    public long getItemsUnchanged() {
+        return itemsUnchanged.get();
+    }
+
+    /**
+     * @return The number of editions reconciled per second, over the last completed window of at least 10 seconds.
+     */
+    @Override
+    public double getItemsPerSecond() {
+        return itemsPerSecond;
+    }
+
+    @Override
+    public long getRelationsAdded() {
+        return relationsAdded.get();
+    }
+
+    @Override
+    public long getRelationsRemoved() {
+        return relationsRemoved.get();
+    }
+
+    @Override
+    public long getEditionsUnpublished() {
+        return editionsUnpublished.get();
+    }
+
+    @Override
+    public long getEditionsPublished() {
+        return editionsPublished.get();
+    }
+
+    @Override
+    public long getRetries() {
+        long retries = 0;
+        for (RetryBudget retryBudget : retryBudgets) {
+            retries += retryBudget.getRetries();
+        }
+        return retries;
+    }
+
+    @Override
+    public long getSboiHedges() {
+        return sboiHedges.get();
+    }
+
+    @Override
+    public long getSboiHedgesWon() {
+        return sboiHedgesWon.get();
+    }
+
+    /**
+     * Register the counters and the latency of each phase in the platform MBean server.
+     */
+    public void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, new ObjectName(JMX_DOMAIN + ":type=Metrics"));
+            for (Phase phase : Phase.values()) {
+                server.registerMBean(latencies.get(phase), getObjectName(phase));
+            }
+        } catch (JMException e) {
+            log.warn("Failed to register metrics in JMX", e);
+        }
+    }
+
+    /**
+     * Remove the MBeans registered by {@link #registerMBeans()}.
+     */
+    public void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(new ObjectName(JMX_DOMAIN + ":type=Metrics"));
+            for (Phase phase : Phase.values()) {
+                server.unregisterMBean(getObjectName(phase));
+            }
+        } catch (JMException e) {
+            log.warn("Failed to unregister metrics from JMX", e);
+        }
+    }
+
+    private static ObjectName getObjectName(Phase phase) throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=Latency,phase=" + phase.getMetricName());
+    }
+
+    /**
+     * Write the metrics in the Prometheus text exposition format.
+     *
+     * @param writer The writer to write to.
+     * @throws IOException if writing failed.
+     */
+    public void writePrometheus(Writer writer) throws IOException {
+        writeCounter(writer, "items_processed_total", "Editions reconciled successfully", getItemsProcessed());
+        writeCounter(writer, "items_failed_total", "Editions that failed", getItemsFailed());
+        writeCounter(writer, "items_unchanged_total", "Editions skipped as unchanged since last reconciled",
+                     getItemsUnchanged());
+        writeCounter(writer, "relations_added_total", "Relations added to editions", getRelationsAdded());
+        writeCounter(writer, "relations_removed_total", "Relations removed from editions", getRelationsRemoved());
+        writeCounter(writer, "editions_unpublished_total", "Editions unpublished to change relations",
+                     getEditionsUnpublished());
+        writeCounter(writer, "editions_published_total", "Editions published after changing relations",
+                     getEditionsPublished());
+        writeCounter(writer, "retries_total", "Calls to DOMS or SBOI retried after signs of overload",
+                     getRetries());
+        writeCounter(writer, "sboi_hedges_total", "SBOI queries sent again to another endpoint as the first was slow",
+                     getSboiHedges());
+        writeCounter(writer, "sboi_hedges_won_total", "Hedged SBOI queries answering before the query they hedged",
+                     getSboiHedgesWon());
+        writer.write("# HELP " + PREFIX + "phase_duration_seconds Latency of each phase of reconciling an edition\n");
+        writer.write("# TYPE " + PREFIX + "phase_duration_seconds histogram\n");
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = latencies.get(phase);
+            String labels = "phase=\"" + phase.getMetricName() + "\"";
+            long cumulative = 0;
+            for (int bucket = 0; bucket < LatencyHistogram.BUCKETS - 1; bucket++) {
+                cumulative += histogram.getBucketCount(bucket);
+                writer.write(PREFIX + "phase_duration_seconds_bucket{" + labels + ",le=\""
+                             + LatencyHistogram.getUpperBoundMicros(bucket) / 1e6 + "\"} " + cumulative + "\n");
+            }
+            cumulative += histogram.getBucketCount(LatencyHistogram.BUCKETS - 1);
+            writer.write(PREFIX + "phase_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} " + cumulative + "\n");
+            writer.write(PREFIX + "phase_duration_seconds_sum{" + labels + "} " + histogram.getSumNanos() / 1e9
+                         + "\n");
+            writer.write(PREFIX + "phase_duration_seconds_count{" + labels + "} " + cumulative + "\n");
+        }
+    }
+
+    private static void writeCounter(Writer writer, String name, String help, long value) throws IOException {
+        writer.write("# HELP " + PREFIX + name + " " + help + "\n");
+        writer.write("# TYPE " + PREFIX + name + " counter\n");
+        writer.write(PREFIX + name + " " + value + "\n");
+    }
+}
@@ -0,0 +1,30 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+/**
+ * JMX view of the {@link EditionRecordsMetrics} counters. The phase latencies are registered as separate
+ * {@link LatencyHistogramMBean}s.
+ */
+public interface EditionRecordsMetricsMBean {
+
+    long getItemsProcessed();
+
+    long getItemsFailed();
+
+    long getItemsUnchanged();
+
+    double getItemsPerSecond();
+
+    long getRelationsAdded();
+
+    long getRelationsRemoved();
+
+    long getEditionsUnpublished();
+
+    long getEditionsPublished();
+
+    long getRetries();
+
+    long getSboiHedges();
+
+    long getSboiHedgesWon();
+}
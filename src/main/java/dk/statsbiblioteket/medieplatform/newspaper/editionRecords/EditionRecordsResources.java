@@ -0,0 +1,199 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.solr.client.solrj.SolrServer;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.medieplatform.autonomous.DomsItemFactory;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.autonomous.ItemFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The clients, the title index, the maintainer and the other resources of the autonomous component, wired as
+ * configured in the properties. Used by both {@link EditionRecordRelationsMaintainerComponent} and
+ * {@link EditionRecordRelationsDaemon}. The resources are opened in order; if opening one fails, those already opened
+ * are closed again. Closing releases what was opened in reverse order, each also if releasing a later one failed, and
+ * saves the fingerprints.
+ */
+public class EditionRecordsResources implements Closeable {
+
+    private final EditionRecordsMetrics metrics = new EditionRecordsMetrics();
+    private final Deque<Closeable> opened = new ArrayDeque<>();
+    private RelationsJournal journal;
+    private EnhancedFedora eFedora;
+    private ItemFactory<Item> itemFactory;
+    private RunnableEditionRecordRelationsMaintainer maintainer;
+    private EditionFingerprints fingerprints;
+
+    private EditionRecordsResources() {
+    }
+
+    /**
+     * Open the resources configured in the properties, recover the editions the journal shows an earlier run left
+     * incomplete, and reconcile the editions affected by titles changed since the title snapshot, if so configured.
+     *
+     * @param properties The properties.
+     * @return The resources.
+     * @throws Exception if a resource could not be opened. The resources opened before it are closed.
+     */
+    public static EditionRecordsResources open(Properties properties) throws Exception {
+        EditionRecordsResources resources = new EditionRecordsResources();
+        try {
+            resources.openAll(properties);
+            return resources;
+        } catch (Exception e) {
+            try {
+                resources.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    private void openAll(Properties properties) throws Exception {
+        final MetricsHttpServer metricsServer = EditionRecordRelationsMaintainerComponent.exposeMetrics(properties,
+                                                                                                        metrics);
+        if (metricsServer != null) {
+            opened.push(new Closeable() {
+                @Override
+                public void close() {
+                    metricsServer.stop();
+                }
+            });
+        }
+        journal = EditionRecordRelationsMaintainerComponent.createJournal(properties);
+        if (journal != null) {
+            opened.push(journal);
+        }
+        eFedora = EditionRecordRelationsMaintainerComponent.createFedora(properties, metrics);
+        if (journal != null) {
+            eFedora = JournalingFedora.wrap(eFedora, journal);
+        }
+        final SolrServer solrServer = EditionRecordRelationsMaintainerComponent.createSolrServer(properties, metrics);
+        opened.push(new Closeable() {
+            @Override
+            public void close() {
+                solrServer.shutdown();
+            }
+        });
+        itemFactory = new DomsItemFactory();
+        final NewspaperIndex newspaperIndex = EditionRecordRelationsMaintainerComponent.createNewspaperIndex(
+                properties, solrServer, itemFactory);
+        opened.push(new Closeable() {
+            @Override
+            public void close() {
+                newspaperIndex.close();
+            }
+        });
+        maintainer = EditionRecordRelationsMaintainerComponent.createMaintainer(properties, eFedora, solrServer,
+                                                                                itemFactory, newspaperIndex);
+        maintainer.setMetrics(metrics);
+        EditionRecordRelationsMaintainerComponent.useJournal(journal, maintainer, eFedora);
+        fingerprints = EditionRecordRelationsMaintainerComponent.createFingerprints(properties);
+        maintainer.setFingerprints(fingerprints);
+        if (fingerprints != null) {
+            // Fingerprints are only recorded for editions reconciled successfully, so they are kept also when the
+            // run failed
+            opened.push(new Closeable() {
+                @Override
+                public void close() throws IOException {
+                    fingerprints.save();
+                }
+            });
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Integer.parseInt(properties.getProperty(EditionRecordsConfigConstants.BATCH_THREADS, "8")));
+        opened.push(new Closeable() {
+            @Override
+            public void close() {
+                executor.shutdownNow();
+            }
+        });
+        AvisIDShards shards = EditionRecordRelationsMaintainerComponent.createShards(properties);
+        if (shards != null) {
+            opened.push(shards);
+        }
+        TitleChangeReconciler titleChangeReconciler
+                = EditionRecordRelationsMaintainerComponent.createTitleChangeReconciler(properties, maintainer,
+                                                                                        solrServer, itemFactory,
+                                                                                        executor, shards);
+        if (titleChangeReconciler != null) {
+            titleChangeReconciler.reconcileSinceSnapshot(newspaperIndex.getTitles());
+            newspaperIndex.addTitleChangeListener(titleChangeReconciler);
+        }
+    }
+
+    /**
+     * @return The metrics of the clients and the maintainer.
+     */
+    public EditionRecordsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The journal of relation changes, or null if not used.
+     */
+    public RelationsJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return The DOMS client, journaling state changes if the journal is used.
+     */
+    public EnhancedFedora getFedora() {
+        return eFedora;
+    }
+
+    /**
+     * @return Factory for edition items.
+     */
+    public ItemFactory<Item> getItemFactory() {
+        return itemFactory;
+    }
+
+    /**
+     * @return The maintainer to run in the autonomous component.
+     */
+    public RunnableEditionRecordRelationsMaintainer getMaintainer() {
+        return maintainer;
+    }
+
+    /**
+     * @return The fingerprints of reconciled editions, or null if not used.
+     */
+    public EditionFingerprints getFingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * Release the resources opened, in reverse order, and save the fingerprints.
+     *
+     * @throws IOException if a resource could not be released. The rest are still released.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        while (!opened.isEmpty()) {
+            try {
+                opened.pop().close();
+            } catch (IOException | RuntimeException e) {
+                if (failure == null) {
+                    failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+/**
+ * The editions of a newspaper issued in a period: an avisID and an inclusive range of epoch days.
+ */
+public class EditionWindow {
+    private final String avisID;
+    private final long fromDay;
+    private final long toDay;
+
+    public EditionWindow(String avisID, long fromDay, long toDay) {
+        this.avisID = avisID;
+        this.fromDay = fromDay;
+        this.toDay = toDay;
+    }
+
+    public String getAvisID() {
+        return avisID;
+    }
+
+    public long getFromDay() {
+        return fromDay;
+    }
+
+    public long getToDay() {
+        return toDay;
+    }
+
+    /**
+     * @return The first issue date of the window, as yyyy-MM-dd.
+     */
+    public String getFromDate() {
+        return EpochDays.format(fromDay);
+    }
+
+    /**
+     * @return The last issue date of the window, as yyyy-MM-dd.
+     */
+    public String getToDate() {
+        return EpochDays.format(toDay);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EditionWindow)) {
+            return false;
+        }
+        EditionWindow that = (EditionWindow) o;
+        return fromDay == that.fromDay && toDay == that.toDay && avisID.equals(that.avisID);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = avisID.hashCode();
+        result = 31 * result + (int) (fromDay ^ (fromDay >>> 32));
+        result = 31 * result + (int) (toDay ^ (toDay >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return avisID + " " + getFromDate() + ".." + getToDate();
+    }
+}
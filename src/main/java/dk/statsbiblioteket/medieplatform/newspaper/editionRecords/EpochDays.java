@@ -0,0 +1,171 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeConstants;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Conversion between dates and epoch days (number of days since 1970-01-01 in the proleptic Gregorian calendar).
+ * Epoch days are used as primitive keys wherever dates are compared in bulk. Points in time, such as the dates of the
+ * index, are converted to the day they fall on in {@link #ZONE}, the time zone the dates of the newspapers are given
+ * in, so a title starting at local midnight starts on the same day as an edition issued that day.
+ */
+public final class EpochDays {
+
+    /**
+     * The time zone of the newspaper dates.
+     */
+    public static final TimeZone ZONE = TimeZone.getTimeZone("Europe/Copenhagen");
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final long DAYS_0000_TO_1970 = 719528L;
+    private static final ThreadLocal<DatatypeFactory> DATATYPE_FACTORY = new ThreadLocal<DatatypeFactory>() {
+        @Override
+        protected DatatypeFactory initialValue() {
+            try {
+                return DatatypeFactory.newInstance();
+            } catch (DatatypeConfigurationException e) {
+                throw new IllegalStateException("No XML datatype factory", e);
+            }
+        }
+    };
+
+    private EpochDays() {
+    }
+
+    /**
+     * Get the epoch day of a date value as delivered by the index, either a {@link Date}, a timestamp with a time zone
+     * (e.g. "1969-12-31T23:00:00Z", which gives the day 1970-01-01 in {@link #ZONE}), or a string starting with
+     * yyyy-MM-dd, which gives that day.
+     *
+     * @param value The date value.
+     * @return The epoch day.
+     * @throws IllegalArgumentException if the value is not a parsable date.
+     */
+    public static long of(Object value) {
+        if (value instanceof Date) {
+            return ofMillis(((Date) value).getTime());
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("No date given");
+        }
+        String date = value.toString().trim();
+        if (date.length() > 10 && date.charAt(10) == 'T') {
+            XMLGregorianCalendar timestamp;
+            try {
+                timestamp = DATATYPE_FACTORY.get().newXMLGregorianCalendar(date);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Not a date: '" + date + "'", e);
+            }
+            if (timestamp.getTimezone() != DatatypeConstants.FIELD_UNDEFINED) {
+                return ofMillis(timestamp.toGregorianCalendar().getTimeInMillis());
+            }
+        }
+        return parse(date);
+    }
+
+    /**
+     * Get the epoch day a point in time falls on in {@link #ZONE}.
+     *
+     * @param millis Milliseconds since 1970-01-01T00:00:00Z.
+     * @return The epoch day.
+     */
+    public static long ofMillis(long millis) {
+        return floorDiv(millis + ZONE.getOffset(millis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * Parse the yyyy-MM-dd prefix of a date string into an epoch day.
+     *
+     * @param date The date string.
+     * @return The epoch day.
+     * @throws IllegalArgumentException if the string does not start with a yyyy-MM-dd date.
+     */
+    public static long parse(String date) {
+        String trimmed = date.trim();
+        if (trimmed.length() < 10 || trimmed.charAt(4) != '-' || trimmed.charAt(7) != '-') {
+            throw new IllegalArgumentException("Not a date: '" + date + "'");
+        }
+        try {
+            int year = Integer.parseInt(trimmed.substring(0, 4));
+            int month = Integer.parseInt(trimmed.substring(5, 7));
+            int day = Integer.parseInt(trimmed.substring(8, 10));
+            if (month < 1 || month > 12 || day < 1 || day > 31) {
+                throw new IllegalArgumentException("Not a date: '" + date + "'");
+            }
+            return of(year, month, day);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a date: '" + date + "'", e);
+        }
+    }
+
+    /**
+     * Get the epoch day of the given calendar date.
+     *
+     * @param year The year.
+     * @param month The month, 1-12.
+     * @param day The day of month, 1-31.
+     * @return The epoch day.
+     */
+    public static long of(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+        if (y >= 0) {
+            total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        } else {
+            total -= y / -4 - y / -100 + y / -400;
+        }
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(y)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Format an epoch day as yyyy-MM-dd.
+     *
+     * @param epochDay The epoch day.
+     * @return The formatted date.
+     */
+    public static String format(long epochDay) {
+        long zeroDay = epochDay + DAYS_0000_TO_1970 - 60;
+        long adjust = 0;
+        if (zeroDay < 0) {
+            long adjustCycles = (zeroDay + 1) / 146097 - 1;
+            adjust = adjustCycles * 400;
+            zeroDay += -adjustCycles * 146097;
+        }
+        long yearEst = (400 * zeroDay + 591) / 146097;
+        long doyEst = zeroDay - (365 * yearEst + yearEst / 4 - yearEst / 100 + yearEst / 400);
+        if (doyEst < 0) {
+            yearEst--;
+            doyEst = zeroDay - (365 * yearEst + yearEst / 4 - yearEst / 100 + yearEst / 400);
+        }
+        yearEst += adjust;
+        int marchDoy0 = (int) doyEst;
+        int marchMonth0 = (marchDoy0 * 5 + 2) / 153;
+        int month = (marchMonth0 + 2) % 12 + 1;
+        int day = marchDoy0 - (marchMonth0 * 306 + 5) / 10 + 1;
+        yearEst += marchMonth0 / 10;
+        return String.format("%04d-%02d-%02d", yearEst, month, day);
+    }
+
+    private static boolean isLeapYear(long year) {
+        return ((year & 3) == 0) && ((year % 100) != 0 || (year % 400) == 0);
+    }
+
+    private static long floorDiv(long x, long y) {
+        long r = x / y;
+        if ((x ^ y) < 0 && (r * y != x)) {
+            r--;
+        }
+        return r;
+    }
+}
@@ -0,0 +1,27 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of concurrent calls to a fixed number of permits, shared by all threads using the limiter.
+ */
+public class FixedCallLimiter implements CallLimiter {
+    private final Semaphore permits;
+
+    /**
+     * @param maxConcurrentCalls The maximal number of concurrent calls.
+     */
+    public FixedCallLimiter(int maxConcurrentCalls) {
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+    }
+
+    @Override
+    public void acquire() throws InterruptedException {
+        permits.acquire();
+    }
+
+    @Override
+    public void release(long latencyNanos, Throwable failure) {
+        permits.release();
+    }
+}
@@ -0,0 +1,239 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads editions from FOXML, as exported from DOMS, with a streaming parser. For every object with an inline EDITION
+ * datastream, the avisID and issue date are extracted from the latest version of the EDITION MODS, and the titles the
+ * edition has relations to from the latest version of RELS-EXT. Deleted objects, and deleted and inactive datastreams,
+ * are skipped. Editions whose EDITION datastream is managed or external cannot be read from the export; they are
+ * logged and counted. A stream may contain any number of objects.
+ */
+public class FoxmlEditionReader {
+
+    private static Logger log = LoggerFactory.getLogger(FoxmlEditionReader.class);
+
+    private static final String FOXML_NAMESPACE = "info:fedora/fedora-system:def/foxml#";
+    private static final String RDF_NAMESPACE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String STATE_PROPERTY = "info:fedora/fedora-system:def/model#state";
+    private static final String URI_PREFIX = "info:fedora/";
+
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            return factory;
+        }
+    };
+
+    private static final ThreadLocal<DatatypeFactory> DATATYPE_FACTORY = new ThreadLocal<DatatypeFactory>() {
+        @Override
+        protected DatatypeFactory initialValue() {
+            try {
+                return DatatypeFactory.newInstance();
+            } catch (DatatypeConfigurationException e) {
+                throw new IllegalStateException("No XML datatype factory", e);
+            }
+        }
+    };
+
+    /**
+     * Receives the editions read.
+     */
+    public interface EditionHandler {
+
+        /**
+         * Handle an edition.
+         *
+         * @param domsID The DOMS PID of the edition.
+         * @param edition The avisID and issue date of the edition.
+         * @param titlesWithRelation DOMS PIDs of the titles the edition has relations to.
+         * @throws Exception if the edition could not be handled.
+         */
+        void edition(String domsID, EditionMetadata edition, List<String> titlesWithRelation) throws Exception;
+    }
+
+    private final ModsEditionExtractor modsEditionExtractor = new ModsEditionExtractor();
+    private final String predicateNamespace;
+    private final String predicateName;
+    private final AtomicLong notInline = new AtomicLong();
+
+    /**
+     * @param editionToNewspaperRelation The predicate of the relations from edition to newspaper title.
+     */
+    public FoxmlEditionReader(String editionToNewspaperRelation) {
+        int split = editionToNewspaperRelation.lastIndexOf('#') + 1;
+        this.predicateNamespace = editionToNewspaperRelation.substring(0, split);
+        this.predicateName = editionToNewspaperRelation.substring(split);
+    }
+
+    /**
+     * @return The number of editions skipped so far, because their EDITION datastream is not inline XML.
+     */
+    public long getNotInline() {
+        return notInline.get();
+    }
+
+    /**
+     * Read the editions in FOXML.
+     *
+     * @param foxml The FOXML.
+     * @param handler Receives every edition read.
+     * @return The number of editions read.
+     * @throws Exception if the FOXML is not well-formed, or the handler failed.
+     */
+    public int read(InputStream foxml, EditionHandler handler) throws Exception {
+        XMLStreamReader reader = INPUT_FACTORY.get().createXMLStreamReader(foxml);
+        try {
+            int editions = 0;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && isFoxml(reader, "digitalObject")) {
+                    if (readObject(reader, handler)) {
+                        editions++;
+                    }
+                }
+            }
+            return editions;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read one object, and pass it to the handler if it is an edition.
+     *
+     * @param reader The reader, positioned at the start of the digitalObject element.
+     * @param handler The handler.
+     * @return true if the object was an edition.
+     */
+    private boolean readObject(XMLStreamReader reader, EditionHandler handler) throws Exception {
+        String domsID = reader.getAttributeValue(null, "PID");
+        boolean deleted = false;
+        boolean editionNotInline = false;
+        EditionMetadata edition = null;
+        long editionCreated = Long.MIN_VALUE;
+        List<String> titlesWithRelation = new ArrayList<>();
+        long relationsCreated = Long.MIN_VALUE;
+        String datastream = null;
+        long created = Long.MIN_VALUE;
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (isFoxml(reader, "property")) {
+                    deleted |= STATE_PROPERTY.equals(reader.getAttributeValue(null, "NAME"))
+                               && "Deleted".equals(reader.getAttributeValue(null, "VALUE"));
+                } else if (isFoxml(reader, "datastream")) {
+                    datastream = reader.getAttributeValue(null, "ID");
+                    String state = reader.getAttributeValue(null, "STATE");
+                    if (state != null && !"A".equals(state)) {
+                        // Deleted and inactive datastreams are not part of the object as DOMS serves it
+                        skipToEndOf(reader, "datastream");
+                        depth--;
+                    } else if ("EDITION".equals(datastream)) {
+                        editionNotInline = !"X".equals(reader.getAttributeValue(null, "CONTROL_GROUP"));
+                    }
+                } else if (isFoxml(reader, "datastreamVersion")) {
+                    created = parseCreated(reader.getAttributeValue(null, "CREATED"));
+                } else if (isFoxml(reader, "xmlContent")) {
+                    // The latest version is the current one. Versions without a creation time are taken to be in
+                    // order of creation, as exported
+                    if ("EDITION".equals(datastream) && created >= editionCreated) {
+                        edition = modsEditionExtractor.extract(reader);
+                        editionCreated = created;
+                    } else if ("RELS-EXT".equals(datastream) && created >= relationsCreated) {
+                        titlesWithRelation = readRelations(reader);
+                        relationsCreated = created;
+                    }
+                    skipToEndOf(reader, "xmlContent");
+                    depth--;
+                }
+            }
+        }
+        if (deleted) {
+            return false;
+        }
+        if (editionNotInline && edition == null) {
+            notInline.incrementAndGet();
+            log.warn("Skipped edition {}, as its EDITION datastream is not inline XML", domsID);
+            return false;
+        }
+        if (edition == null) {
+            return false;
+        }
+        handler.edition(domsID, edition, titlesWithRelation);
+        return true;
+    }
+
+    /**
+     * Parse the creation time of a datastream version.
+     *
+     * @param created The CREATED attribute of the version, in xsd:dateTime format, or null.
+     * @return The creation time in milliseconds since the epoch, or Long.MIN_VALUE if missing or malformed.
+     */
+    private static long parseCreated(String created) {
+        if (created == null) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return DATATYPE_FACTORY.get().newXMLGregorianCalendar(created).toGregorianCalendar().getTimeInMillis();
+        } catch (IllegalArgumentException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Read the objects of the relations from edition to newspaper title in RELS-EXT.
+     *
+     * @param reader The reader, positioned at the start of the xmlContent element.
+     * @return DOMS PIDs of the titles, with reader positioned at the end of the xmlContent element.
+     */
+    private List<String> readRelations(XMLStreamReader reader) throws XMLStreamException {
+        List<String> titles = new ArrayList<>();
+        while (!(reader.next() == XMLStreamConstants.END_ELEMENT && isFoxml(reader, "xmlContent"))) {
+            if (reader.getEventType() == XMLStreamConstants.START_ELEMENT
+                && predicateNamespace.equals(reader.getNamespaceURI())
+                && predicateName.equals(reader.getLocalName())) {
+                String resource = reader.getAttributeValue(RDF_NAMESPACE, "resource");
+                if (resource != null) {
+                    titles.add(resource.startsWith(URI_PREFIX) ? resource.substring(URI_PREFIX.length()) : resource);
+                }
+            }
+        }
+        return titles;
+    }
+
+    /**
+     * Skip to the end of an element, unless already there.
+     *
+     * @param reader The reader, positioned inside the element or at its end.
+     * @param localName The FOXML local name of the element.
+     */
+    private static void skipToEndOf(XMLStreamReader reader, String localName) throws XMLStreamException {
+        while (!(reader.getEventType() == XMLStreamConstants.END_ELEMENT && isFoxml(reader, localName))) {
+            reader.next();
+        }
+    }
+
+    private static boolean isFoxml(XMLStreamReader reader, String localName) {
+        return localName.equals(reader.getLocalName()) && FOXML_NAMESPACE.equals(reader.getNamespaceURI());
+    }
+}
@@ -0,0 +1,195 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.util.NamedList;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wraps SBOI endpoints so every request has a deadline, and optionally sends a second, hedged request to another
+ * endpoint when the first is slower than a percentile of the latencies seen so far, or fails. The first answer wins,
+ * and the other request is aborted, as is a request past its deadline, so neither holds a connection and a thread
+ * until the socket timeout. Aborting needs the endpoints to execute through an {@link AbortableHttpClient}; otherwise
+ * the requests are only cancelled, and run on in the background. Hedges are bounded to a fraction of the requests by a
+ * {@link RetryBudget}, so they never add more than that fraction of load, even when SBOI is slow across the board.
+ */
+public class HedgedSolrServer extends SolrServer {
+    /**
+     * Latencies to see before hedging, so the percentile means something.
+     */
+    private static final int MIN_SAMPLES = 100;
+    private final ThreadPoolExecutor executor;
+    private final List<SolrServer> endpoints;
+    private final long deadlineMillis;
+    private final double hedgeQuantile;
+    private final RetryBudget hedgeBudget;
+    private final EditionRecordsMetrics metrics;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicInteger nextHedgeEndpoint = new AtomicInteger();
+
+    /**
+     * @param endpoints The SBOI endpoints. Requests go to the first, hedges to the others in turn, or to the first if
+     * there are no others.
+     * @param deadlineMillis Milliseconds before a request without an answer fails, or 0 for no deadline.
+     * @param hedgeQuantile The quantile of the latencies seen after which a request is hedged, e.g. 0.95, or 0 to
+     * never hedge.
+     * @param hedgeBudget The budget bounding the hedges to a fraction of the requests.
+     * @param metrics The metrics to count hedges in.
+     * @param maxConcurrentRequests The most requests sent at once; more wait for a request to complete, within their
+     * deadline.
+     */
+    public HedgedSolrServer(List<SolrServer> endpoints, long deadlineMillis, double hedgeQuantile,
+                            RetryBudget hedgeBudget, EditionRecordsMetrics metrics, int maxConcurrentRequests) {
+        executor = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests, 60, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "HedgedSolrServer-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        this.endpoints = endpoints;
+        this.deadlineMillis = deadlineMillis;
+        this.hedgeQuantile = hedgeQuantile;
+        this.hedgeBudget = hedgeBudget;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException {
+        hedgeBudget.onCall();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        boolean hedgeable = hedgeQuantile > 0 && latencies.getCount() >= MIN_SAMPLES;
+        long hedgeAt = start + (long) (latencies.getPercentileMillis(hedgeQuantile) * 1e6);
+        CompletionService<NamedList<Object>> answers = new ExecutorCompletionService<>(executor);
+        List<Future<NamedList<Object>>> sent = new ArrayList<>(2);
+        List<AbortableHttpClient.Handle> handles = new ArrayList<>(2);
+        sent.add(answers.submit(call(endpoints.get(0), request, handles)));
+        int outstanding = 1;
+        Exception failure = null;
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                long waitUntil = hedgeable && deadlineMillis > 0 ? Math.min(hedgeAt, deadline)
+                                                                 : hedgeable ? hedgeAt : deadline;
+                Future<NamedList<Object>> answer = deadlineMillis > 0 || hedgeable
+                                                   ? answers.poll(Math.max(0, waitUntil - now), TimeUnit.NANOSECONDS)
+                                                   : answers.take();
+                if (answer != null) {
+                    outstanding--;
+                    try {
+                        NamedList<Object> response = answer.get();
+                        if (answer != sent.get(0)) {
+                            metrics.sboiHedgeWon();
+                        }
+                        return response;
+                    } catch (ExecutionException e) {
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                    if (outstanding > 0) {
+                        continue;
+                    }
+                    if (!hedgeable) {
+                        break;
+                    }
+                    // The only request failed, so hedge at once instead of waiting
+                    hedgeAt = System.nanoTime();
+                } else if (deadlineMillis > 0 && System.nanoTime() - deadline >= 0) {
+                    throw new SolrServerException("No answer from SBOI within " + deadlineMillis + " ms", failure);
+                }
+                if (hedgeable && System.nanoTime() - hedgeAt >= 0) {
+                    hedgeable = false;
+                    if (hedgeBudget.tryRetry()) {
+                        metrics.sboiHedged();
+                        sent.add(answers.submit(call(nextHedgeEndpoint(), request, handles)));
+                        outstanding++;
+                    } else if (outstanding == 0) {
+                        break;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolrServerException("Interrupted while waiting for SBOI", e);
+        } finally {
+            for (Future<NamedList<Object>> future : sent) {
+                future.cancel(true);
+            }
+            for (AbortableHttpClient.Handle handle : handles) {
+                handle.abort();
+            }
+        }
+        if (failure instanceof SolrServerException) {
+            throw (SolrServerException) failure;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        throw new SolrServerException(failure);
+    }
+
+    /**
+     * @return The endpoint to send the next hedge to.
+     */
+    private SolrServer nextHedgeEndpoint() {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        return endpoints.get(1 + (nextHedgeEndpoint.getAndIncrement() & Integer.MAX_VALUE) % (endpoints.size() - 1));
+    }
+
+    /**
+     * Create the task sending a request to an endpoint, recording the latency of answers.
+     *
+     * @param endpoint The endpoint.
+     * @param request The request.
+     * @param handles The handles to add the handle aborting the request to.
+     * @return The task.
+     */
+    private Callable<NamedList<Object>> call(final SolrServer endpoint, final SolrRequest request,
+                                             List<AbortableHttpClient.Handle> handles) {
+        final AbortableHttpClient.Handle handle = new AbortableHttpClient.Handle();
+        handles.add(handle);
+        return new Callable<NamedList<Object>>() {
+            @Override
+            public NamedList<Object> call() throws Exception {
+                long start = System.nanoTime();
+                AbortableHttpClient.begin(handle);
+                try {
+                    NamedList<Object> response = endpoint.request(request);
+                    latencies.record(System.nanoTime() - start);
+                    return response;
+                } finally {
+                    AbortableHttpClient.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdownNow();
+        for (SolrServer endpoint : endpoints) {
+            endpoint.shutdown();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Wraps a DOMS client so the state changes of editions are recorded in a {@link RelationsJournal}. Unpublishing an
+ * edition is made durable before the edition is unpublished, so an edition left unpublished by a crash is published
+ * again on recovery. Other calls are passed through.
+ */
+public class JournalingFedora implements InvocationHandler {
+    private static final String ACTIVE = "A";
+    private static final String INACTIVE = "I";
+    private final EnhancedFedora eFedora;
+    private final RelationsJournal journal;
+
+    private JournalingFedora(EnhancedFedora eFedora, RelationsJournal journal) {
+        this.eFedora = eFedora;
+        this.journal = journal;
+    }
+
+    /**
+     * Wrap a DOMS client in journaling of state changes
+     *
+     * @param eFedora The DOMS client.
+     * @param journal The journal to record the state changes in.
+     * @return A DOMS client that calls the given client and records the state changes.
+     */
+    public static EnhancedFedora wrap(EnhancedFedora eFedora, RelationsJournal journal) {
+        return (EnhancedFedora) Proxy.newProxyInstance(EnhancedFedora.class.getClassLoader(),
+                                                       new Class<?>[]{EnhancedFedora.class},
+                                                       new JournalingFedora(eFedora, journal));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        boolean stateChange = "modifyObjectState".equals(method.getName());
+        if (stateChange && INACTIVE.equals(args[1])) {
+            journal.unpublishing((String) args[0]);
+        }
+        Object result;
+        try {
+            result = method.invoke(eFedora, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+        if (stateChange && ACTIVE.equals(args[1])) {
+            journal.published((String) args[0]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,36 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import java.util.List;
+
+/**
+ * Writes relation changes through a {@link RelationsJournal}: the planned changes are made durable before the delegate
+ * writes them, and the edition is recorded as completed or failed afterwards. A failed edition that the delegate left
+ * unpublished stays in the journal, so recovery publishes it again.
+ */
+public class JournalingRelationsWriter implements RelationsWriter {
+    private final RelationsJournal journal;
+    private final RelationsWriter delegate;
+
+    /**
+     * @param journal The journal to record the changes in.
+     * @param delegate The writer doing the actual writes.
+     */
+    public JournalingRelationsWriter(RelationsJournal journal, RelationsWriter delegate) {
+        this.journal = journal;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void updateRelations(String editionDomsID, List<String> titlesToAdd, List<String> titlesToRemove)
+            throws Exception {
+        journal.planned(editionDomsID, titlesToAdd, titlesToRemove);
+        try {
+            delegate.updateRelations(editionDomsID, titlesToAdd, titlesToRemove);
+        } catch (Exception e) {
+            // The failure is reported by the caller, so only publishing the edition again is left to recover
+            journal.failed(editionDomsID);
+            throw e;
+        }
+        journal.completed(editionDomsID);
+    }
+}
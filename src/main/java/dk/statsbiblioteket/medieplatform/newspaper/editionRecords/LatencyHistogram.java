@@ -0,0 +1,112 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with fixed buckets whose upper bounds are powers of two microseconds, from 1 microsecond to
+ * about 16 seconds, and a last bucket for everything slower. Recording is lock-free and does not allocate, so it can
+ * stay on in production. Percentiles are estimated as the upper bound of the bucket they fall in.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+    /**
+     * Number of buckets, including the last bucket without upper bound.
+     */
+    public static final int BUCKETS = 26;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+        counts.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sumNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Get the upper bound of a bucket.
+     *
+     * @param bucket The bucket index.
+     * @return The upper bound in microseconds, or {@link Long#MAX_VALUE} for the last bucket.
+     */
+    public static long getUpperBoundMicros(int bucket) {
+        return bucket < BUCKETS - 1 ? 1L << bucket : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param bucket The bucket index.
+     * @return The number of latencies recorded in the bucket.
+     */
+    public long getBucketCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The sum of all recorded latencies, in nanoseconds.
+     */
+    public long getSumNanos() {
+        return sumNanos.get();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : sumNanos.get() / (n * 1e6);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public double getMedianMillis() {
+        return getPercentileMillis(0.5);
+    }
+
+    @Override
+    public double get99thPercentileMillis() {
+        return getPercentileMillis(0.99);
+    }
+
+    /**
+     * Estimate a percentile of the recorded latencies.
+     *
+     * @param quantile The quantile, between 0 and 1.
+     * @return The upper bound in milliseconds of the bucket containing the quantile, at most the maximal latency.
+     */
+    public double getPercentileMillis(double quantile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * n);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS - 1; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(getUpperBoundMicros(bucket) / 1e3, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+}
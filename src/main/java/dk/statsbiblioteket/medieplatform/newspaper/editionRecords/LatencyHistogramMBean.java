@@ -0,0 +1,17 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+/**
+ * JMX view of a {@link LatencyHistogram}.
+ */
+public interface LatencyHistogramMBean {
+
+    long getCount();
+
+    double getMeanMillis();
+
+    double getMedianMillis();
+
+    double get99thPercentileMillis();
+
+    double getMaxMillis();
+}
@@ -0,0 +1,116 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Wraps a DOMS client so every call goes through a {@link CallLimiter}, limiting the calls of all threads sharing the
+ * wrapped client. Optionally, calls failing with a sign of overload are retried within a {@link RetryBudget}. Writes
+ * are only retried when DOMS turned them away unprocessed, never after a timeout, as DOMS may have carried out the
+ * write, and repeating it could apply changes computed from an older read. These retries come on top of those of the
+ * wrapped client, so a client wrapped with a retry budget should be made with a single try per call. A thread
+ * interrupted while waiting for the limiter or a retry fails the call with a {@link BackendMethodFailedException},
+ * which every DOMS client method declares, and keeps its interrupt status.
+ */
+public class LimitedFedora implements InvocationHandler {
+    private static final int MAX_RETRIES = 3;
+    private final EnhancedFedora eFedora;
+    private final CallLimiter limiter;
+    private final RetryBudget retryBudget;
+
+    private LimitedFedora(EnhancedFedora eFedora, CallLimiter limiter, RetryBudget retryBudget) {
+        this.eFedora = eFedora;
+        this.limiter = limiter;
+        this.retryBudget = retryBudget;
+    }
+
+    /**
+     * Wrap a DOMS client in a limiter
+     *
+     * @param eFedora The DOMS client.
+     * @param limiter The limiter all calls must pass.
+     * @return A DOMS client that calls the given client when the limiter allows it.
+     */
+    public static EnhancedFedora wrap(EnhancedFedora eFedora, CallLimiter limiter) {
+        return wrap(eFedora, limiter, null);
+    }
+
+    /**
+     * Wrap a DOMS client in a limiter, retrying calls that fail with a sign of overload
+     *
+     * @param eFedora The DOMS client.
+     * @param limiter The limiter all calls, including retries, must pass.
+     * @param retryBudget The budget for retries, or null for no retries.
+     * @return A DOMS client that calls the given client when the limiter allows it.
+     */
+    public static EnhancedFedora wrap(EnhancedFedora eFedora, CallLimiter limiter, RetryBudget retryBudget) {
+        return (EnhancedFedora) Proxy.newProxyInstance(EnhancedFedora.class.getClassLoader(),
+                                                       new Class<?>[]{EnhancedFedora.class},
+                                                       new LimitedFedora(eFedora, limiter, retryBudget));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(eFedora, args);
+        }
+        if (retryBudget != null) {
+            retryBudget.onCall();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return invokeLimited(method, args);
+            } catch (Throwable failure) {
+                if (retryBudget == null || attempt > MAX_RETRIES || !isRetryable(method, failure)
+                    || !retryBudget.tryRetry()) {
+                    throw failure;
+                }
+                try {
+                    Thread.sleep(retryBudget.delayMillis(attempt));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new BackendMethodFailedException("Interrupted while waiting to retry a DOMS call", failure);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decide whether a failed call may be retried: a read failing with a sign of overload, or a write DOMS turned
+     * away unprocessed.
+     *
+     * @param method The method called.
+     * @param failure The failure.
+     * @return true if the call may be retried.
+     */
+    private static boolean isRetryable(Method method, Throwable failure) {
+        String name = method.getName();
+        boolean read = name.startsWith("get") || name.startsWith("list") || name.startsWith("find")
+                       || name.startsWith("search");
+        return read ? AdaptiveCallLimiter.isOverload(failure) : AdaptiveCallLimiter.isRejected(failure);
+    }
+
+    private Object invokeLimited(Method method, Object[] args) throws Throwable {
+        try {
+            limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackendMethodFailedException("Interrupted while waiting to call DOMS", e);
+        }
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            return method.invoke(eFedora, args);
+        } catch (InvocationTargetException e) {
+            failure = e.getCause();
+            throw failure;
+        } finally {
+            limiter.release(System.nanoTime() - start, failure);
+        }
+    }
+}
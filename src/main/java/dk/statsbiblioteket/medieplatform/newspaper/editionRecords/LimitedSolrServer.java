@@ -0,0 +1,82 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.util.NamedList;
+
+import java.io.IOException;
+
+/**
+ * Wraps a solr server so every request goes through a {@link CallLimiter}, limiting the requests of all threads
+ * sharing the wrapped server. Optionally, requests failing with a sign of overload are retried within a
+ * {@link RetryBudget}.
+ */
+public class LimitedSolrServer extends SolrServer {
+    private static final int MAX_RETRIES = 3;
+    private final SolrServer solrServer;
+    private final CallLimiter limiter;
+    private final RetryBudget retryBudget;
+
+    /**
+     * @param solrServer The solr server.
+     * @param limiter The limiter all requests, including retries, must pass.
+     * @param retryBudget The budget for retries, or null for no retries.
+     */
+    public LimitedSolrServer(SolrServer solrServer, CallLimiter limiter, RetryBudget retryBudget) {
+        this.solrServer = solrServer;
+        this.limiter = limiter;
+        this.retryBudget = retryBudget;
+    }
+
+    @Override
+    public NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException {
+        if (retryBudget != null) {
+            retryBudget.onCall();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return requestLimited(request);
+            } catch (SolrServerException | IOException | RuntimeException failure) {
+                if (retryBudget == null || attempt > MAX_RETRIES || !AdaptiveCallLimiter.isOverload(failure)
+                    || !retryBudget.tryRetry()) {
+                    throw failure;
+                }
+                sleep(retryBudget.delayMillis(attempt), failure);
+            }
+        }
+    }
+
+    private NamedList<Object> requestLimited(SolrRequest request) throws SolrServerException, IOException {
+        try {
+            limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolrServerException("Interrupted while waiting to query", e);
+        }
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            return solrServer.request(request);
+        } catch (SolrServerException | IOException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            limiter.release(System.nanoTime() - start, failure);
+        }
+    }
+
+    private void sleep(long millis, Exception failure) throws SolrServerException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SolrServerException("Interrupted while waiting to retry", failure);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        solrServer.shutdown();
+    }
+}
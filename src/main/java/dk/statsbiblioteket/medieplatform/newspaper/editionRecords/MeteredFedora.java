@@ -0,0 +1,80 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Wraps a DOMS client so the latency of the calls made when reconciling editions is recorded in
+ * {@link EditionRecordsMetrics}, by phase, whether they succeed or fail, along with the state changes of editions
+ * that succeed. Other calls are passed through unrecorded.
+ */
+public class MeteredFedora implements InvocationHandler {
+    private final EnhancedFedora eFedora;
+    private final EditionRecordsMetrics metrics;
+
+    private MeteredFedora(EnhancedFedora eFedora, EditionRecordsMetrics metrics) {
+        this.eFedora = eFedora;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Wrap a DOMS client in metering
+     *
+     * @param eFedora The DOMS client.
+     * @param metrics The metrics to record in.
+     * @return A DOMS client that calls the given client and records the latency of the calls.
+     */
+    public static EnhancedFedora wrap(EnhancedFedora eFedora, EditionRecordsMetrics metrics) {
+        return (EnhancedFedora) Proxy.newProxyInstance(EnhancedFedora.class.getClassLoader(),
+                                                       new Class<?>[]{EnhancedFedora.class},
+                                                       new MeteredFedora(eFedora, metrics));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        EditionRecordsMetrics.Phase phase = getPhase(method.getName(), args);
+        long start = System.nanoTime();
+        try {
+            Object result = method.invoke(eFedora, args);
+            if (phase == EditionRecordsMetrics.Phase.STATE_CHANGE) {
+                metrics.stateChanged((String) args[1]);
+            }
+            return result;
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            if (phase != null) {
+                metrics.record(phase, start);
+            }
+        }
+    }
+
+    /**
+     * Get the phase of a DOMS call
+     *
+     * @param name The name of the called method.
+     * @param args The arguments of the call.
+     * @return The phase, or null if the call is not part of reconciling editions.
+     */
+    private static EditionRecordsMetrics.Phase getPhase(String name, Object[] args) {
+        switch (name) {
+            case "getXMLDatastreamContents":
+                return "EDITION".equals(args[1]) ? EditionRecordsMetrics.Phase.EDITION_READ
+                                                 : EditionRecordsMetrics.Phase.RELATIONS_READ;
+            case "getNamedRelations":
+                return EditionRecordsMetrics.Phase.RELATIONS_READ;
+            case "addRelation":
+            case "deleteRelation":
+            case "modifyDatastreamByValue":
+                return EditionRecordsMetrics.Phase.RELATIONS_WRITE;
+            case "modifyObjectState":
+                return EditionRecordsMetrics.Phase.STATE_CHANGE;
+            default:
+                return null;
+        }
+    }
+}
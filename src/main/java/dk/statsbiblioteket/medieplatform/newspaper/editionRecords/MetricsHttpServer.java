@@ -0,0 +1,69 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal HTTP server serving {@link EditionRecordsMetrics} in the Prometheus text format on {@code /metrics}, for
+ * scraping. The server has no access control, so it should only listen on interfaces reachable by the scraper.
+ */
+public class MetricsHttpServer {
+
+    private static Logger log = LoggerFactory.getLogger(MetricsHttpServer.class);
+
+    private final HttpServer server;
+
+    /**
+     * Start serving metrics
+     *
+     * @param host The host name or address of the interface to listen on, "0.0.0.0" for all interfaces.
+     * @param port The port to listen on.
+     * @param metrics The metrics to serve.
+     * @throws IOException if the address could not be bound.
+     */
+    public MetricsHttpServer(String host, int port, final EditionRecordsMetrics metrics) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) {
+            throw new IOException("Unknown metrics host " + host);
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StringWriter text = new StringWriter();
+                metrics.writePrometheus(text);
+                byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+        log.info("Serving metrics on {}", server.getAddress());
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop serving metrics.
+     */
+    public void stop() {
+        server.stop(0);
+    }
+}
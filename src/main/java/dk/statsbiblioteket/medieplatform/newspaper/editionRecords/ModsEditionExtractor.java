@@ -0,0 +1,131 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+
+/**
+ * Extracts the avisID and issue date from edition MODS with a streaming parser. Equivalent to evaluating the XPaths
+ * {@code /mods/titleInfo[@type='uniform']/title/text()} and {@code /mods/originInfo/dateIssued/text()}, but stops
+ * reading as soon as both values are found, and never builds a DOM.
+ */
+public class ModsEditionExtractor {
+
+    private static final String MODS_NAMESPACE = "http://www.loc.gov/mods/v3";
+
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+            return factory;
+        }
+    };
+
+    /**
+     * Extract the avisID and issue date from edition MODS.
+     *
+     * @param mods The MODS xml.
+     * @return The avisID and issue date. A value that is not present in the MODS is given as the empty string.
+     * @throws XMLStreamException if the MODS is not well-formed xml.
+     */
+    public EditionMetadata extract(String mods) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.get().createXMLStreamReader(new StringReader(mods));
+        try {
+            return extract(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Extract the avisID and issue date from a reader positioned before the MODS root element. Stops reading when
+     * both values are found, at the end of the MODS, or at the end of an enclosing element without MODS.
+     *
+     * @param reader The reader.
+     * @return The avisID and issue date. A value that is not present in the MODS is given as the empty string.
+     * @throws XMLStreamException if the MODS is not well-formed xml.
+     */
+    public EditionMetadata extract(XMLStreamReader reader) throws XMLStreamException {
+        String avisID = null;
+        String dateIssued = null;
+        // The names of the elements on the path from the root to the current element, as far as they matter
+        String[] path = new String[3];
+        boolean uniformTitleInfo = false;
+        int depth = 0;
+        while (reader.hasNext() && (avisID == null || dateIssued == null)) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = MODS_NAMESPACE.equals(reader.getNamespaceURI()) ? reader.getLocalName() : null;
+                if (depth <= path.length) {
+                    path[depth - 1] = name;
+                }
+                if (depth == 1 && !"mods".equals(name)) {
+                    break;
+                } else if (depth == 2 && "titleInfo".equals(name)) {
+                    uniformTitleInfo = "uniform".equals(reader.getAttributeValue(null, "type"));
+                } else if (depth == 3 && avisID == null && uniformTitleInfo && "titleInfo".equals(path[1])
+                           && "title".equals(name)) {
+                    avisID = firstText(reader);
+                    depth--;
+                } else if (depth == 3 && dateIssued == null && "originInfo".equals(path[1])
+                           && "dateIssued".equals(name)) {
+                    dateIssued = firstText(reader);
+                    depth--;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                if (depth <= 0) {
+                    // End of the MODS root, or of the enclosing element if there was no MODS
+                    break;
+                }
+            }
+        }
+        return new EditionMetadata(avisID == null ? "" : avisID, dateIssued == null ? "" : dateIssued);
+    }
+
+    /**
+     * Read the first text node of the current element, and skip to the end of the element.
+     *
+     * @param reader The reader, positioned at the start of an element.
+     * @return The first text node, or the empty string if the element has no text before its first child element.
+     * @throws XMLStreamException if the xml is not well-formed.
+     */
+    private String firstText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = null;
+        boolean textDone = false;
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    textDone = textDone || text != null;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    textDone = textDone || text != null;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (depth == 1 && !textDone) {
+                        if (text == null) {
+                            text = new StringBuilder();
+                        }
+                        text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+                default:
+                    textDone = textDone || text != null;
+            }
+        }
+        return text == null ? "" : text.toString();
+    }
+}
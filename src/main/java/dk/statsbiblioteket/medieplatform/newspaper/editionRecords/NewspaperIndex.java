@@ -1,31 +1,139 @@
 package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
 
-import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServer;
-import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
-import org.apache.solr.common.SolrDocumentList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import dk.statsbiblioteket.medieplatform.autonomous.Item;
 import dk.statsbiblioteket.medieplatform.autonomous.ItemFactory;
 import dk.statsbiblioteket.medieplatform.autonomous.SBOIEventIndex;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class NewspaperIndex {
 
+    private static Logger log = LoggerFactory.getLogger(NewspaperIndex.class);
+
     private static final String ITEM_MODEL_FIELD_NAME = "item_model";
     private static final String ITEM_MODEL_FIELD_VALUE = "\"doms:ContentModel_Newspaper\"";
     private static final String AVIS_ID_FIELD_NAME = "newspapr_title_avisID";
     private static final String START_DATE_FIELD_NAME = "newspapr_title_startDate";
     private static final String END_DATE_FIELD_NAME = "newspapr_title_endDate";
+    private static final int LOAD_PAGE_SIZE = 1000;
+    private static final int LOOKUP_PAGE_SIZE = 100;
     private final SolrServer solrServer;
     private final ItemFactory itemFactory;
+    private final ScheduledExecutorService refresher;
+    private final ExecutorService notifier;
+    private final File snapshotFile;
+    private volatile TitleIntervalIndex titleIntervalIndex;
+    private volatile List<TitleRecord> titles;
+    private volatile TitleIndexSnapshot snapshot;
+    private final List<TitleChangeListener> titleChangeListeners = new CopyOnWriteArrayList<>();
+    private final Object pendingChangeLock = new Object();
+    private Set<EditionWindow> pendingWindows;
+    private List<TitleRecord> pendingTitles;
 
+    /**
+     * Create an index that queries SBOI for every lookup.
+     *
+     * @param solrServer The SBOI solr server.
+     * @param itemFactory Factory for the returned items.
+     */
     public NewspaperIndex(SolrServer solrServer, ItemFactory itemFactory) {
         this.solrServer = solrServer;
         this.itemFactory = itemFactory;
+        this.refresher = null;
+        this.notifier = null;
+        this.snapshotFile = null;
+    }
+
+    /**
+     * Create an index that loads all newspaper titles from SBOI into memory once, answers lookups from memory, and
+     * reloads the titles in the background with the given interval.
+     *
+     * @param solrServer The SBOI solr server.
+     * @param itemFactory Factory for the returned items.
+     * @param refreshIntervalMillis Milliseconds between reloads of the titles.
+     */
+    public NewspaperIndex(SolrServer solrServer, ItemFactory itemFactory, long refreshIntervalMillis) {
+        this(solrServer, itemFactory, refreshIntervalMillis, null);
+    }
+
+    /**
+     * Create an index that answers lookups from memory, and reloads the titles in the background with the given
+     * interval. If a title snapshot file is given, the titles are mapped from it rather than kept on the heap whenever
+     * it holds the current titles. The snapshot is written by the {@link TitleChangeReconciler} after each
+     * reconciliation of the editions affected by changed titles, and its header tells when its titles were last
+     * verified to be current. At startup, an existing snapshot is memory-mapped and used at once, and the titles
+     * changed since are picked up by a reload started right away in the background, whose changes the reconciler then
+     * reconciles, including for editions looked up in the meantime. Without a snapshot, all titles are loaded from
+     * SBOI before the index is ready.
+     *
+     * @param solrServer The SBOI solr server.
+     * @param itemFactory Factory for the returned items.
+     * @param refreshIntervalMillis Milliseconds between reloads of the titles.
+     * @param snapshotFile The title snapshot file, or null to keep the titles on the heap.
+     */
+    public NewspaperIndex(SolrServer solrServer, ItemFactory itemFactory, long refreshIntervalMillis,
+                          File snapshotFile) {
+        this.solrServer = solrServer;
+        this.itemFactory = itemFactory;
+        this.snapshotFile = snapshotFile;
+        long firstRefreshMillis = refreshIntervalMillis;
+        if (snapshotFile != null && snapshotFile.exists()) {
+            try {
+                long start = System.currentTimeMillis();
+                snapshot = TitleIndexSnapshot.map(snapshotFile);
+                titleIntervalIndex = new TitleIntervalIndex(snapshot);
+                firstRefreshMillis = 0;
+                String verified = snapshot.getVerifiedAt() > 0 ? (start - snapshot.getVerifiedAt()) + " ms ago"
+                                                               : "at an unknown time";
+                log.info("Mapped {} newspaper titles from {} in {} ms, last verified to be current {}{}",
+                         snapshot.size(), snapshotFile, System.currentTimeMillis() - start, verified,
+                         snapshot.isPending() ? ", with changes pending reconciliation" : "");
+            } catch (IOException e) {
+                log.warn("Failed to map newspaper title snapshot {}, loading the titles from SBOI", snapshotFile, e);
+            }
+        }
+        if (titleIntervalIndex == null) {
+            install(loadAllTitles());
+        }
+        this.refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "NewspaperIndex-refresher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.notifier = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "NewspaperIndex-notifier");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, firstRefreshMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -36,34 +144,310 @@ public class NewspaperIndex {
      * @return List of matching newspaper titles.
      */
     public List<Item> getNewspapers(String avisID, String date) {
-        try {
-            SolrQuery query = new SolrQuery();
-            query.setQuery(String.format(ITEM_MODEL_FIELD_NAME + ":" + ITEM_MODEL_FIELD_VALUE
-                                                 + " AND "
-                                                 + AVIS_ID_FIELD_NAME + ":\"%s\""
-                                                 + " AND "
-                                                 + START_DATE_FIELD_NAME + ":[* TO %s]"
-                                                 + " AND "
-                                                 +  END_DATE_FIELD_NAME + ":[%s TO *]", avisID, date, date));
-            query.setRows(Integer.MAX_VALUE); //Fetch size. Do not go over 1000 unless you specify fields to fetch which does not include content_text
-            query.setStart(0);
-            //IMPORTANT!Only use facets if needed.
-            query.set("facet", "false"); //very important. Must overwrite to false. Facets are very slow and expensive.
-            query.setFields(SBOIEventIndex.UUID);
-            QueryResponse response = solrServer.query(query);
-            SolrDocumentList results = response.getResults();
+        TitleIntervalIndex titles = titleIntervalIndex;
+        if (titles != null) {
             List<Item> hits = new ArrayList<>();
-            for (SolrDocument result : results) {
-                String uuid = result.getFirstValue(SBOIEventIndex.UUID).toString();
-                Item hit = itemFactory.create(uuid);
-                hits.add(hit);
+            for (String uuid : titles.lookup(avisID, EpochDays.parse(date))) {
+                hits.add(itemFactory.create(uuid));
             }
             return hits;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
         }
+        List<Item> hits = new ArrayList<>();
+        for (Item hit : iterateNewspapers(avisID, date)) {
+            hits.add(hit);
+        }
+        return hits;
+    }
+
+    /**
+     * Get all newspaper titles matching the given avisID and date from SBOI, read a page at a time as they are
+     * iterated
+     *
+     * @param avisID The avisID the title should match.
+     * @param date The date the title should match.
+     * @return The matching newspaper titles.
+     */
+    public Iterable<Item> iterateNewspapers(String avisID, String date) {
+        String query = String.format(ITEM_MODEL_FIELD_NAME + ":" + ITEM_MODEL_FIELD_VALUE
+                                             + " AND "
+                                             + AVIS_ID_FIELD_NAME + ":\"%s\""
+                                             + " AND "
+                                             + START_DATE_FIELD_NAME + ":[* TO %s]"
+                                             + " AND "
+                                             +  END_DATE_FIELD_NAME + ":[%s TO *]", avisID, date, date);
+        // Fetch only the UUID, so pages can be large
+        return new SolrCursor(solrServer, query, LOOKUP_PAGE_SIZE, SBOIEventIndex.UUID).convert(
+                new SolrCursor.Converter<Item>() {
+                    @Override
+                    public Item convert(SolrDocument document) {
+                        return itemFactory.create(document.getFirstValue(SBOIEventIndex.UUID).toString());
+                    }
+                });
+    }
+
+    /**
+     * Get the newspaper title records from SBOI, read a page at a time as they are iterated
+     *
+     * @param avisID The avisID of the titles, or null for all titles.
+     * @return The title records. Titles indexed without avisID or dates are left out.
+     */
+    public Iterable<TitleRecord> iterateTitles(String avisID) {
+        String query = ITEM_MODEL_FIELD_NAME + ":" + ITEM_MODEL_FIELD_VALUE;
+        if (avisID != null) {
+            query += String.format(" AND " + AVIS_ID_FIELD_NAME + ":\"%s\"", avisID);
+        }
+        return new SolrCursor(solrServer, query, LOAD_PAGE_SIZE, SBOIEventIndex.UUID, AVIS_ID_FIELD_NAME,
+                              START_DATE_FIELD_NAME, END_DATE_FIELD_NAME).convert(
+                new SolrCursor.Converter<TitleRecord>() {
+                    @Override
+                    public TitleRecord convert(SolrDocument document) {
+                        return toTitleRecord(document);
+                    }
+                });
     }
 
+    /**
+     * Get all newspaper titles with the given avisID, for matching many editions of the same newspaper against the
+     * titles with one lookup.
+     *
+     * @param avisID The avisID the titles should match.
+     * @return Index containing at least all titles with the given avisID.
+     */
+    public TitleIntervalIndex getTitleIntervals(String avisID) {
+        TitleIntervalIndex titles = titleIntervalIndex;
+        if (titles != null) {
+            return titles;
+        }
+        return new TitleIntervalIndex(loadTitles(avisID));
+    }
 
+    /**
+     * Get all newspaper title records.
+     *
+     * @return The title records in memory, or all title records read from SBOI if this index does not keep them in
+     * memory.
+     */
+    public List<TitleRecord> getTitles() {
+        List<TitleRecord> loaded = titles;
+        if (loaded != null) {
+            return loaded;
+        }
+        TitleIndexSnapshot mapped = snapshot;
+        return mapped != null ? mapped.getTitles() : loadAllTitles();
+    }
+
+    /**
+     * Tell a listener about changes to the title records found when reloading them. Only an index that keeps the
+     * titles in memory reloads them. Listeners are told on a thread of their own, one change at a time, so a slow
+     * listener does not hold up the reloads. Changes found while the listeners are busy are merged into one.
+     *
+     * @param listener The listener.
+     */
+    public void addTitleChangeListener(TitleChangeListener listener) {
+        titleChangeListeners.add(listener);
+    }
 
+    /**
+     * Reload all newspaper titles from SBOI. Does nothing unless this index keeps the titles in memory. If the reload
+     * fails, the previously loaded titles are kept. If the titles are mapped from the snapshot and are unchanged, the
+     * snapshot is kept and marked as verified. If any titles changed, the listeners are told which editions are
+     * affected, without waiting for them.
+     */
+    public void refresh() {
+        if (titleIntervalIndex == null) {
+            return;
+        }
+        List<TitleRecord> newTitles;
+        try {
+            newTitles = loadAllTitles();
+        } catch (RuntimeException e) {
+            log.warn("Failed to reload newspaper titles, keeping the {} previously loaded",
+                     titleIntervalIndex.size(), e);
+            return;
+        }
+        TitleIndexSnapshot mapped = snapshot;
+        if (mapped != null && titles == null && TitleIndexSnapshot.versionOf(newTitles) == mapped.getVersion()) {
+            log.debug("Newspaper titles unchanged since the snapshot");
+            markVerified(mapped.getVersion());
+            return;
+        }
+        List<TitleRecord> oldTitles = getTitles();
+        install(newTitles);
+        if (!titleChangeListeners.isEmpty()) {
+            List<EditionWindow> affectedWindows = TitleChanges.affectedWindows(oldTitles, newTitles);
+            if (!affectedWindows.isEmpty()) {
+                log.info("Newspaper titles changed, affecting editions in {}", affectedWindows);
+                titlesChanged(affectedWindows, newTitles);
+            }
+        }
+    }
+
+    /**
+     * Hand a change of the titles to the notifier thread, merged with the changes it has not yet told the listeners
+     * about, if any.
+     *
+     * @param affectedWindows The windows of editions affected by the change.
+     * @param newTitles All title records after the change.
+     */
+    private void titlesChanged(List<EditionWindow> affectedWindows, List<TitleRecord> newTitles) {
+        synchronized (pendingChangeLock) {
+            boolean idle = pendingTitles == null;
+            if (idle) {
+                pendingWindows = new LinkedHashSet<>();
+            }
+            pendingWindows.addAll(affectedWindows);
+            pendingTitles = newTitles;
+            if (!idle) {
+                log.debug("Listeners busy, merging the change of newspaper titles with the pending one");
+                return;
+            }
+        }
+        notifier.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<EditionWindow> windows;
+                List<TitleRecord> titles;
+                synchronized (pendingChangeLock) {
+                    windows = new ArrayList<>(pendingWindows);
+                    titles = pendingTitles;
+                    pendingWindows = null;
+                    pendingTitles = null;
+                }
+                for (TitleChangeListener listener : titleChangeListeners) {
+                    try {
+                        listener.titlesChanged(windows, titles);
+                    } catch (RuntimeException e) {
+                        log.error("Title change listener {} failed for editions in {}", listener, windows, e);
+                    }
+                }
+                if (snapshotFile != null) {
+                    remapSnapshot();
+                }
+            }
+        });
+    }
+
+    /**
+     * Map the titles kept on the heap from the snapshot, if it holds them by now, on the refresher thread. Used after
+     * the listeners have been told about a change, as the {@link TitleChangeReconciler} has then written the titles to
+     * the snapshot, so they need not stay on the heap until the next reload.
+     */
+    private void remapSnapshot() {
+        try {
+            refresher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    List<TitleRecord> loaded = titles;
+                    if (loaded != null) {
+                        install(loaded);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Newspaper index closed, not mapping the title snapshot");
+        }
+    }
+
+    /**
+     * Stop the background reloading of titles, and the telling of listeners about changes, if any.
+     */
+    public void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            notifier.shutdownNow();
+        }
+    }
+
+    /**
+     * Answer lookups from the given titles. If this index has a snapshot file holding the same titles, they are mapped
+     * from it, and otherwise kept on the heap. The index never writes the snapshot, as that would hide changes the
+     * {@link TitleChangeReconciler} has yet to reconcile.
+     *
+     * @param newTitles The title records.
+     */
+    private void install(List<TitleRecord> newTitles) {
+        if (snapshotFile != null && snapshotFile.exists()) {
+            try {
+                TitleIndexSnapshot mapped = TitleIndexSnapshot.map(snapshotFile);
+                if (mapped.getVersion() == TitleIndexSnapshot.versionOf(newTitles)) {
+                    titleIntervalIndex = new TitleIntervalIndex(mapped);
+                    snapshot = mapped;
+                    titles = null;
+                    markVerified(mapped.getVersion());
+                    return;
+                }
+            } catch (IOException e) {
+                log.warn("Failed to map newspaper title snapshot {}, keeping the titles on the heap", snapshotFile, e);
+            }
+        }
+        titleIntervalIndex = new TitleIntervalIndex(newTitles);
+        titles = newTitles;
+        snapshot = null;
+    }
+
+    /**
+     * Record in the header of the snapshot that its titles were just verified to be the current ones.
+     *
+     * @param version The version of the titles verified.
+     */
+    private void markVerified(long version) {
+        try {
+            if (!TitleIndexSnapshot.markVerified(snapshotFile, version, System.currentTimeMillis())) {
+                log.debug("Newspaper title snapshot {} replaced since it was mapped, not marking it", snapshotFile);
+            }
+        } catch (IOException e) {
+            log.debug("Failed to mark newspaper title snapshot {} as verified", snapshotFile, e);
+        }
+    }
+
+    /**
+     * Read all newspaper title records from SBOI.
+     *
+     * @return All title records.
+     */
+    private List<TitleRecord> loadAllTitles() {
+        long start = System.currentTimeMillis();
+        List<TitleRecord> titles = loadTitles(null);
+        log.info("Loaded {} newspaper titles in {} ms", titles.size(), System.currentTimeMillis() - start);
+        return titles;
+    }
+
+    /**
+     * Read newspaper title records from SBOI.
+     *
+     * @param avisID The avisID of the titles, or null for all titles.
+     * @return The title records.
+     */
+    private List<TitleRecord> loadTitles(String avisID) {
+        List<TitleRecord> titles = new ArrayList<>();
+        for (TitleRecord title : iterateTitles(avisID)) {
+            titles.add(title);
+        }
+        return titles;
+    }
+
+    /**
+     * Convert a title document to a title record.
+     *
+     * @param document The solr document.
+     * @return The title record, or null if the document lacks avisID or dates, in which case it would never match a
+     * lookup query either.
+     */
+    private TitleRecord toTitleRecord(SolrDocument document) {
+        Object uuid = document.getFirstValue(SBOIEventIndex.UUID);
+        Object avisID = document.getFirstValue(AVIS_ID_FIELD_NAME);
+        Object startDate = document.getFirstValue(START_DATE_FIELD_NAME);
+        Object endDate = document.getFirstValue(END_DATE_FIELD_NAME);
+        if (uuid == null || avisID == null || startDate == null || endDate == null) {
+            log.debug("Ignoring incomplete newspaper title {}", uuid);
+            return null;
+        }
+        try {
+            return new TitleRecord(uuid.toString(), avisID.toString(), EpochDays.of(startDate),
+                                   EpochDays.of(endDate));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring newspaper title {} with unparsable dates", uuid, e);
+            return null;
+        }
+    }
 }
@@ -0,0 +1,93 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidCredsException;
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidResourceException;
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+
+import java.util.List;
+
+/**
+ * Writes relation changes with one DOMS call per added or removed relation.
+ */
+public class PerRelationWriter implements RelationsWriter {
+    private static final String URI_PREFIX = "info:fedora/";
+    private final EnhancedFedora eFedora;
+    private final String editionToNewspaperRelation;
+
+    /**
+     * @param eFedora The DOMS client.
+     * @param editionToNewspaperRelation The predicate of the relations from edition to newspaper title.
+     */
+    public PerRelationWriter(EnhancedFedora eFedora, String editionToNewspaperRelation) {
+        this.eFedora = eFedora;
+        this.editionToNewspaperRelation = editionToNewspaperRelation;
+    }
+
+    @Override
+    public void updateRelations(String editionDomsID, List<String> titlesToAdd, List<String> titlesToRemove) throws
+            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+        for (String toAdd : titlesToAdd) {
+            addRelationFromEditionToNewspaper(toAdd, editionDomsID);
+        }
+        for (String toRemove : titlesToRemove) {
+            removeRelationFromEditionToNewspaper(toRemove, editionDomsID);
+        }
+    }
+
+    /**
+     * Add relation to given title from edition with given PID (editionDomsID) in DOMS
+     *
+     * @param titleDomsID The DOMS PID of the title which should be at the "target" end of the wanted relation
+     * @param editionDomsID The DOMS PID of the edition object which should be the "source" of wanted relation
+     * @throws BackendMethodFailedException
+     * @throws BackendInvalidResourceException
+     * @throws BackendInvalidCredsException
+     */
+    private void addRelationFromEditionToNewspaper(String titleDomsID, String editionDomsID) throws
+            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+
+        // Add relation from edition to newspaper object ("titelpost")
+        try {
+            eFedora.addRelation(editionDomsID, URI_PREFIX + editionDomsID, editionToNewspaperRelation,
+                                URI_PREFIX + titleDomsID, false, "linking to");
+        } catch (BackendInvalidCredsException objectIsPublished) {
+            // Edition was already published, so unpublish (set to "I" (inactive)) before adding
+            eFedora.modifyObjectState(editionDomsID, "I", "comment");
+            try {
+                eFedora.addRelation(editionDomsID, URI_PREFIX + editionDomsID, editionToNewspaperRelation,
+                                    URI_PREFIX + titleDomsID, false, "linking to");
+            } finally {
+                // Re-publish (set to "A" (active))
+                eFedora.modifyObjectState(editionDomsID, "A", "comment");
+            }
+        }
+    }
+
+    /**
+     * Remove relation to given title from edition object with given PID (editionDomsID) in DOMS, if it exists
+     *
+     * @param titleDomsID The DOMS PID of the title to which the possible relation from editionDomsID should be removed
+     * @param editionDomsID The source of the relations to title that should be removed
+     * @throws BackendMethodFailedException
+     * @throws BackendInvalidResourceException
+     * @throws BackendInvalidCredsException
+     */
+    private void removeRelationFromEditionToNewspaper(String titleDomsID, String editionDomsID) throws
+            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+        try {
+            eFedora.deleteRelation(editionDomsID, URI_PREFIX + editionDomsID, editionToNewspaperRelation,
+                                   URI_PREFIX + titleDomsID, false, "linking to");
+        } catch (BackendInvalidCredsException objectIsPublished) {
+            // Edition was already published, so unpublish (set to "I" (inactive)) before removing
+            eFedora.modifyObjectState(editionDomsID, "I", "comment");
+            try {
+                eFedora.deleteRelation(editionDomsID, URI_PREFIX + editionDomsID, editionToNewspaperRelation,
+                                       URI_PREFIX + titleDomsID, false, "linking to");
+            } finally {
+                // Re-publish (set to "A" (active))
+                eFedora.modifyObjectState(editionDomsID, "A", "comment");
+            }
+        }
+    }
+}
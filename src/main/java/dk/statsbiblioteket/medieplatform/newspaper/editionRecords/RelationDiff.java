@@ -0,0 +1,104 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+/**
+ * Computes which relations to add and remove to get from the existing relations of an object to the wanted ones.
+ * Objects are kept as UUIDs in primitive sets, so a diff allocates nothing per element, and one instance can be
+ * reused for any number of diffs, from a single edition to a whole repository of edges. The PIDs are kept as given,
+ * so relations are added and removed with the PIDs they were wanted or exist with, whatever their case, and PIDs that
+ * are not UUID PIDs work too. Not thread safe.
+ */
+public class RelationDiff {
+
+    private final UuidSet wanted;
+    private final UuidSet existing;
+    private final UuidSet toAdd;
+    private final UuidSet toRemove;
+
+    /**
+     * Create a diff for a few relations.
+     */
+    public RelationDiff() {
+        this(16);
+    }
+
+    /**
+     * Create a diff with room for the given number of relations on each side before it grows.
+     *
+     * @param expectedSize The expected number of wanted and of existing relations.
+     */
+    public RelationDiff(int expectedSize) {
+        wanted = new UuidSet(expectedSize, true);
+        existing = new UuidSet(expectedSize, true);
+        toAdd = new UuidSet(expectedSize, true);
+        toRemove = new UuidSet(expectedSize, true);
+    }
+
+    /**
+     * Clear the diff for reuse.
+     *
+     * @return This diff.
+     */
+    public RelationDiff clear() {
+        wanted.clear();
+        existing.clear();
+        toAdd.clear();
+        toRemove.clear();
+        return this;
+    }
+
+    /**
+     * @return The set of wanted relation targets. Fill it before calling {@link #compute()}.
+     */
+    public UuidSet getWanted() {
+        return wanted;
+    }
+
+    /**
+     * @return The set of existing relation targets. Fill it before calling {@link #compute()}.
+     */
+    public UuidSet getExisting() {
+        return existing;
+    }
+
+    /**
+     * Compute the targets to add relations to, and the targets to remove relations to.
+     *
+     * @return This diff.
+     */
+    public RelationDiff compute() {
+        toAdd.clear();
+        toRemove.clear();
+        for (int i = 0; i < wanted.size(); i++) {
+            if (!existing.contains(wanted.mostSignificantBits(i), wanted.leastSignificantBits(i))) {
+                toAdd.add(wanted, i);
+            }
+        }
+        for (int i = 0; i < existing.size(); i++) {
+            if (!wanted.contains(existing.mostSignificantBits(i), existing.leastSignificantBits(i))) {
+                toRemove.add(existing, i);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return Targets that are wanted but have no relation, in the order they were wanted.
+     */
+    public UuidSet getToAdd() {
+        return toAdd;
+    }
+
+    /**
+     * @return Targets that have a relation but are not wanted, in the order of the existing relations.
+     */
+    public UuidSet getToRemove() {
+        return toRemove;
+    }
+
+    /**
+     * @return true if the existing relations are exactly the wanted ones.
+     */
+    public boolean isEmpty() {
+        return toAdd.isEmpty() && toRemove.isEmpty();
+    }
+}
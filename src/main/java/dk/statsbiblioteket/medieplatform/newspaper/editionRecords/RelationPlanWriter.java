@@ -0,0 +1,83 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes relation changes to a plan file instead of to DOMS, for review before applying them with
+ * {@link EditionRecordRelationsPlanApplier}. The plan is appended to, with one line per edition: the edition PID, the
+ * titles to add relations to and the titles to remove relations to, separated by tabs, with the titles separated by
+ * commas. When closed, a comment line with the number of editions and relations planned is appended.
+ */
+public class RelationPlanWriter implements RelationsWriter, Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(RelationPlanWriter.class);
+
+    /**
+     * Starts comment lines in the plan.
+     */
+    public static final String COMMENT = "#";
+
+    private final File file;
+    private final Writer writer;
+    private long editions;
+    private long added;
+    private long removed;
+
+    /**
+     * @param file The plan file. Created if it does not exist, otherwise appended to.
+     * @throws IOException if the file could not be opened.
+     */
+    public RelationPlanWriter(File file) throws IOException {
+        this.file = file;
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+                                                                StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public synchronized void updateRelations(String editionDomsID, List<String> titlesToAdd,
+                                             List<String> titlesToRemove) throws IOException {
+        writer.write(editionDomsID);
+        writer.write('\t');
+        writeTitles(titlesToAdd);
+        writer.write('\t');
+        writeTitles(titlesToRemove);
+        writer.write('\n');
+        editions++;
+        added += titlesToAdd.size();
+        removed += titlesToRemove.size();
+    }
+
+    private void writeTitles(List<String> titles) throws IOException {
+        for (int i = 0; i < titles.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(titles.get(i));
+        }
+    }
+
+    /**
+     * Append the summary and close the plan file.
+     *
+     * @throws IOException if the file could not be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        String summary = String.format("%d editions to change, %d relations to add, %d relations to remove",
+                                       editions, added, removed);
+        writer.write(COMMENT + " " + summary + "\n");
+        writer.close();
+        log.info("Planned {} in {}", summary, file);
+    }
+}
@@ -0,0 +1,413 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local append-only write-ahead journal of the relation changes and state changes of editions, so the work of a run
+ * survives a crash. Before any relation of an edition is changed, the planned changes are made durable, and before a
+ * published edition is unpublished, that is made durable too. When the changes are done, the edition is recorded as
+ * completed. After a crash, {@link #recover} rolls the incomplete editions forward: their planned changes are written
+ * again, which is harmless for changes that were already made, and editions left unpublished are published again.
+ * An edition whose changes failed is not recovered, unless it was left unpublished, in which case it is still
+ * published again.
+ * <p>
+ * Records that must be durable are synced with group commit: a thread needing a sync flushes and syncs everything
+ * appended so far by all threads, so concurrent writers share one fsync. Other records are only synced along with
+ * them, or on close. Each record is a line: a type letter and the edition PID, and for planned changes the titles to
+ * add and remove, separated by tabs.
+ */
+public class RelationsJournal implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(RelationsJournal.class);
+
+    private static final String PLANNED = "P";
+    private static final String UNPUBLISHING = "U";
+    private static final String PUBLISHED = "A";
+    private static final String COMPLETED = "C";
+    private static final String FAILED = "F";
+
+    private final File file;
+    private final Map<String, Entry> incomplete = new LinkedHashMap<>();
+    private final UuidSet completed = new UuidSet();
+    private final Object syncLock = new Object();
+    private FileChannel channel;
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appended;
+    private volatile long synced;
+
+    /**
+     * An edition whose changes were planned but not completed.
+     */
+    private static class Entry {
+        private final List<String> titlesToAdd;
+        private final List<String> titlesToRemove;
+        private boolean unpublished;
+
+        private Entry(List<String> titlesToAdd, List<String> titlesToRemove) {
+            this.titlesToAdd = titlesToAdd;
+            this.titlesToRemove = titlesToRemove;
+        }
+    }
+
+    /**
+     * Open a journal, reading the records left by an earlier run, if any. A last record cut short by a crash is
+     * removed.
+     *
+     * @param file The journal file. Created if it does not exist.
+     * @throws IOException if the journal could not be read or opened.
+     */
+    public RelationsJournal(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                               StandardOpenOption.WRITE);
+        // Cut off a last line torn by a crash. It was never synced, so nothing was done relying on it
+        channel.truncate(completeLength(channel));
+        channel.position(channel.size());
+        read();
+    }
+
+    /**
+     * Find the length of the complete lines of the journal.
+     *
+     * @param channel The journal.
+     * @return The position after the last newline, or 0 if there is none.
+     */
+    private static long completeLength(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long end = channel.size();
+        while (end > 0) {
+            long start = Math.max(0, end - buffer.capacity());
+            buffer.clear();
+            buffer.limit((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+                // Fill the buffer
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /**
+     * Read the records of an earlier run.
+     */
+    private void read() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                                                                              StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length < 2) {
+                    continue;
+                }
+                String domsID = fields[1];
+                switch (fields[0]) {
+                    case PLANNED:
+                        if (fields.length == 4) {
+                            Entry planned = new Entry(toTitles(fields[2]), toTitles(fields[3]));
+                            Entry previous = incomplete.put(domsID, planned);
+                            planned.unpublished = previous != null && previous.unpublished;
+                        }
+                        break;
+                    case UNPUBLISHING:
+                    case PUBLISHED:
+                        Entry entry = incomplete.get(domsID);
+                        if (entry == null) {
+                            // Unpublished outside of planned changes, so only publishing again is left to recover
+                            entry = new Entry(Collections.<String>emptyList(), Collections.<String>emptyList());
+                            incomplete.put(domsID, entry);
+                        }
+                        entry.unpublished = UNPUBLISHING.equals(fields[0]);
+                        break;
+                    case COMPLETED:
+                        incomplete.remove(domsID);
+                        completed.add(domsID);
+                        break;
+                    case FAILED:
+                        Entry failed = incomplete.remove(domsID);
+                        if (failed != null && failed.unpublished) {
+                            // The failure was reported, but the edition must still be published again
+                            Entry publish = new Entry(Collections.<String>emptyList(),
+                                                      Collections.<String>emptyList());
+                            publish.unpublished = true;
+                            incomplete.put(domsID, publish);
+                        }
+                        break;
+                    default:
+                        log.warn("Ignoring unknown journal record {}", line);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The number of editions left incomplete by an earlier run.
+     */
+    public synchronized int getIncompleteCount() {
+        return incomplete.size();
+    }
+
+    /**
+     * Whether the changes of an edition were completed by an earlier run, or the edition was found to need none.
+     *
+     * @param domsID The DOMS PID of the edition.
+     * @return true if the edition was completed.
+     */
+    public synchronized boolean isCompleted(String domsID) {
+        return completed.contains(domsID);
+    }
+
+    /**
+     * Roll forward the editions left incomplete by an earlier run: write their planned changes again, and publish
+     * those left unpublished, also when their changes failed, in the earlier run or now.
+     *
+     * @param relationsWriter The writer of relation changes.
+     * @param eFedora The DOMS client to publish editions with.
+     * @return The number of editions that could not be recovered. They are logged, and only tried again if they are
+     * still left unpublished.
+     * @throws IOException if the journal could not be written.
+     */
+    public int recover(RelationsWriter relationsWriter, EnhancedFedora eFedora) throws IOException {
+        Map<String, Entry> toRecover;
+        synchronized (this) {
+            toRecover = new LinkedHashMap<>(incomplete);
+            incomplete.clear();
+        }
+        int failed = 0;
+        for (Map.Entry<String, Entry> entry : toRecover.entrySet()) {
+            String domsID = entry.getKey();
+            Entry changes = entry.getValue();
+            boolean recovered = true;
+            try {
+                if (!changes.titlesToAdd.isEmpty() || !changes.titlesToRemove.isEmpty()) {
+                    relationsWriter.updateRelations(domsID, changes.titlesToAdd, changes.titlesToRemove);
+                }
+            } catch (Exception e) {
+                log.error("Failed to recover relations of edition {}, add {}, remove {}", domsID,
+                          changes.titlesToAdd, changes.titlesToRemove, e);
+                recovered = false;
+            } finally {
+                if (changes.unpublished) {
+                    try {
+                        eFedora.modifyObjectState(domsID, "A", "comment");
+                        published(domsID);
+                    } catch (Exception e) {
+                        log.error("Failed to publish edition {} again", domsID, e);
+                        recovered = false;
+                    }
+                }
+            }
+            if (recovered) {
+                completed(domsID);
+            } else {
+                failed(domsID);
+                failed++;
+            }
+        }
+        sync(append(null));
+        log.info("Recovered {} incomplete editions from {}, {} failed", toRecover.size(), file, failed);
+        return failed;
+    }
+
+    /**
+     * Record the planned relation changes of an edition, durably, before any of them is made.
+     *
+     * @param domsID The DOMS PID of the edition.
+     * @param titlesToAdd DOMS PIDs of the titles to add relations to.
+     * @param titlesToRemove DOMS PIDs of the titles to remove relations to.
+     * @throws IOException if the journal could not be written.
+     */
+    public void planned(String domsID, List<String> titlesToAdd, List<String> titlesToRemove) throws IOException {
+        sync(append(PLANNED + "\t" + domsID + "\t" + join(titlesToAdd) + "\t" + join(titlesToRemove)));
+    }
+
+    /**
+     * Record, durably, that a published edition is about to be unpublished.
+     *
+     * @param domsID The DOMS PID of the edition.
+     * @throws IOException if the journal could not be written.
+     */
+    public void unpublishing(String domsID) throws IOException {
+        sync(append(UNPUBLISHING + "\t" + domsID));
+    }
+
+    /**
+     * Record that an edition was published again.
+     *
+     * @param domsID The DOMS PID of the edition.
+     * @throws IOException if the journal could not be written.
+     */
+    public void published(String domsID) throws IOException {
+        append(PUBLISHED + "\t" + domsID);
+    }
+
+    /**
+     * Record that the changes of an edition are done, or that the edition needed none.
+     *
+     * @param domsID The DOMS PID of the edition.
+     * @throws IOException if the journal could not be written.
+     */
+    public void completed(String domsID) throws IOException {
+        append(COMPLETED + "\t" + domsID);
+    }
+
+    /**
+     * Record that the changes of an edition failed, and have been reported. If the edition was left unpublished, it
+     * is still published again on recovery.
+     *
+     * @param domsID The DOMS PID of the edition.
+     * @throws IOException if the journal could not be written.
+     */
+    public void failed(String domsID) throws IOException {
+        append(FAILED + "\t" + domsID);
+    }
+
+    /**
+     * Empty the journal, when the run it covers has ended, except for the editions still left unpublished, as no
+     * event tells that they must be published again. They are kept as editions to publish again, both for
+     * {@link #recover} and for the next run reading the journal.
+     *
+     * @throws IOException if the journal could not be read or truncated.
+     */
+    public void clear() throws IOException {
+        synchronized (syncLock) {
+            StringBuilder kept = new StringBuilder();
+            synchronized (this) {
+                write(pending.toByteArray());
+                pending.reset();
+                synced = appended;
+                completed.clear();
+                incomplete.clear();
+                read();
+                for (Iterator<Map.Entry<String, Entry>> entries = incomplete.entrySet().iterator();
+                     entries.hasNext(); ) {
+                    Map.Entry<String, Entry> entry = entries.next();
+                    if (entry.getValue().unpublished) {
+                        Entry publish = new Entry(Collections.<String>emptyList(), Collections.<String>emptyList());
+                        publish.unpublished = true;
+                        entry.setValue(publish);
+                        kept.append(UNPUBLISHING).append('\t').append(entry.getKey()).append('\n');
+                    } else {
+                        entries.remove();
+                    }
+                }
+                completed.clear();
+            }
+            channel.truncate(0);
+            channel.position(0);
+            write(kept.toString().getBytes(StandardCharsets.UTF_8));
+            channel.force(true);
+            if (kept.length() > 0) {
+                log.warn("Kept {} editions left unpublished in {}", getIncompleteCount(), file);
+            }
+        }
+    }
+
+    /**
+     * Sync all records and close the journal.
+     *
+     * @throws IOException if the journal could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        sync(append(null));
+        channel.close();
+    }
+
+    /**
+     * Append a record to the pending records.
+     *
+     * @param record The record, or null to append nothing.
+     * @return The sequence number to sync to for the record to be durable.
+     */
+    private synchronized long append(String record) throws IOException {
+        if (record != null) {
+            pending.write((record + "\n").getBytes(StandardCharsets.UTF_8));
+            appended++;
+        }
+        return appended;
+    }
+
+    /**
+     * Make the records up to a sequence number durable. If another thread is syncing, wait for it, as it may have
+     * synced the records already.
+     *
+     * @param sequence The sequence number.
+     */
+    private void sync(long sequence) throws IOException {
+        if (synced >= sequence) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= sequence) {
+                return;
+            }
+            byte[] records;
+            long upTo;
+            synchronized (this) {
+                records = pending.toByteArray();
+                pending.reset();
+                upTo = appended;
+            }
+            write(records);
+            channel.force(false);
+            synced = upTo;
+        }
+    }
+
+    /**
+     * Write records at the end of the journal, without syncing them.
+     *
+     * @param records The records.
+     */
+    private void write(byte[] records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(records);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String join(List<String> titles) {
+        StringBuilder joined = new StringBuilder();
+        for (String title : titles) {
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(title);
+        }
+        return joined.toString();
+    }
+
+    private static List<String> toTitles(String field) {
+        if (field.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(Arrays.asList(field.split(",")));
+    }
+}
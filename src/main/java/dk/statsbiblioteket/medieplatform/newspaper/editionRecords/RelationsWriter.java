@@ -0,0 +1,20 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import java.util.List;
+
+/**
+ * Writes changes to the relations from an edition to newspaper titles.
+ */
+public interface RelationsWriter {
+
+    /**
+     * Add and remove relations from an edition to newspaper titles
+     *
+     * @param editionDomsID The DOMS PID of the edition.
+     * @param titlesToAdd DOMS PIDs of the titles to add relations to.
+     * @param titlesToRemove DOMS PIDs of the titles to remove relations to.
+     * @throws Exception if the relations could not be written.
+     */
+    void updateRelations(String editionDomsID, List<String> titlesToAdd, List<String> titlesToRemove)
+            throws Exception;
+}
@@ -0,0 +1,159 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendInvalidCredsException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.util.xml.DOM;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes all relation changes of an edition as one update of its RELS-EXT datastream, so an edition costs one write
+ * and at most one unpublish/republish cycle, and gets one new RELS-EXT version, no matter how many relations change.
+ * As the whole datastream is written back, the last modified date of the edition is read before RELS-EXT is read and
+ * again before it is written, and the update starts over if another client changed the edition in between, so its
+ * changes are not lost. The DOMS client takes no last modified date to check on write, so a change in the moment
+ * between the second read and the write is still not noticed.
+ */
+public class RelsExtRelationsWriter implements RelationsWriter {
+    /**
+     * Updates to start before giving up on an edition that keeps changing.
+     */
+    private static final int MAX_ATTEMPTS = 5;
+    private static final String URI_PREFIX = "info:fedora/";
+    private static final String RELS_EXT = "RELS-EXT";
+    private static final String RDF_NAMESPACE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private final EnhancedFedora eFedora;
+    private final String predicateNamespace;
+    private final String predicateName;
+
+    /**
+     * @param eFedora The DOMS client.
+     * @param editionToNewspaperRelation The predicate of the relations from edition to newspaper title.
+     */
+    public RelsExtRelationsWriter(EnhancedFedora eFedora, String editionToNewspaperRelation) {
+        this.eFedora = eFedora;
+        int split = editionToNewspaperRelation.lastIndexOf('#') + 1;
+        this.predicateNamespace = editionToNewspaperRelation.substring(0, split);
+        this.predicateName = editionToNewspaperRelation.substring(split);
+    }
+
+    @Override
+    public void updateRelations(String editionDomsID, List<String> titlesToAdd, List<String> titlesToRemove)
+            throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            long lastModified = eFedora.getObjectProfile(editionDomsID, null).getObjectLastModifiedDate();
+            String relsExt = eFedora.getXMLDatastreamContents(editionDomsID, RELS_EXT);
+            String updatedRelsExt = updateRelsExt(relsExt, editionDomsID, titlesToAdd, titlesToRemove);
+            if (eFedora.getObjectProfile(editionDomsID, null).getObjectLastModifiedDate() == lastModified) {
+                writeRelsExt(editionDomsID, updatedRelsExt);
+                return;
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IllegalStateException("Edition " + editionDomsID + " changed during " + MAX_ATTEMPTS
+                                                + " attempts to update its RELS-EXT");
+            }
+        }
+    }
+
+    /**
+     * Write the RELS-EXT of an edition, unpublishing and republishing it if it is published.
+     *
+     * @param editionDomsID The DOMS PID of the edition.
+     * @param updatedRelsExt The RELS-EXT xml.
+     * @throws Exception if the RELS-EXT could not be written.
+     */
+    private void writeRelsExt(String editionDomsID, String updatedRelsExt) throws Exception {
+        try {
+            eFedora.modifyDatastreamByValue(editionDomsID, RELS_EXT, updatedRelsExt, null, "linking to");
+        } catch (BackendInvalidCredsException objectIsPublished) {
+            // Edition was already published, so unpublish (set to "I" (inactive)) before updating
+            eFedora.modifyObjectState(editionDomsID, "I", "comment");
+            try {
+                eFedora.modifyDatastreamByValue(editionDomsID, RELS_EXT, updatedRelsExt, null, "linking to");
+            } finally {
+                // Re-publish (set to "A" (active))
+                eFedora.modifyObjectState(editionDomsID, "A", "comment");
+            }
+        }
+    }
+
+    /**
+     * Add and remove relations to newspaper titles in the RELS-EXT of an edition. Relations that are already present
+     * are not added again. All other content of the RELS-EXT is kept.
+     *
+     * @param relsExt The RELS-EXT xml of the edition.
+     * @param editionDomsID The DOMS PID of the edition.
+     * @param titlesToAdd DOMS PIDs of the titles to add relations to.
+     * @param titlesToRemove DOMS PIDs of the titles to remove relations to.
+     * @return The updated RELS-EXT xml.
+     * @throws Exception if the RELS-EXT could not be parsed or serialized.
+     */
+    String updateRelsExt(String relsExt, String editionDomsID, List<String> titlesToAdd,
+                         List<String> titlesToRemove) throws Exception {
+        Document document = DOM.stringToDOM(relsExt, true);
+        if (document == null) {
+            throw new IllegalArgumentException("Unparsable RELS-EXT of " + editionDomsID);
+        }
+        Element description = getDescription(document, URI_PREFIX + editionDomsID);
+
+        Set<String> toRemove = new HashSet<>();
+        for (String title : titlesToRemove) {
+            toRemove.add(URI_PREFIX + title);
+        }
+        Set<String> present = new HashSet<>();
+        List<Element> removed = new ArrayList<>();
+        for (Node child = description.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && predicateNamespace.equals(child.getNamespaceURI())
+                && predicateName.equals(child.getLocalName())) {
+                String object = ((Element) child).getAttributeNS(RDF_NAMESPACE, "resource");
+                if (toRemove.contains(object)) {
+                    removed.add((Element) child);
+                } else {
+                    present.add(object);
+                }
+            }
+        }
+        for (Element element : removed) {
+            description.removeChild(element);
+        }
+
+        String prefix = description.lookupPrefix(predicateNamespace);
+        String qualifiedName = prefix == null ? predicateName : prefix + ":" + predicateName;
+        String rdfPrefix = description.lookupPrefix(RDF_NAMESPACE);
+        String resourceName = rdfPrefix == null ? "rdf:resource" : rdfPrefix + ":resource";
+        for (String title : titlesToAdd) {
+            if (present.add(URI_PREFIX + title)) {
+                Element relation = document.createElementNS(predicateNamespace, qualifiedName);
+                relation.setAttributeNS(RDF_NAMESPACE, resourceName, URI_PREFIX + title);
+                description.appendChild(relation);
+            }
+        }
+        return DOM.domToString(document);
+    }
+
+    /**
+     * Find the RDF description of the given subject
+     *
+     * @param document The RELS-EXT.
+     * @param subject The uri of the subject.
+     * @return The description element.
+     */
+    private Element getDescription(Document document, String subject) {
+        NodeList descriptions = document.getElementsByTagNameNS(RDF_NAMESPACE, "Description");
+        for (int i = 0; i < descriptions.getLength(); i++) {
+            Element description = (Element) descriptions.item(i);
+            if (subject.equals(description.getAttributeNS(RDF_NAMESPACE, "about"))) {
+                return description;
+            }
+        }
+        throw new IllegalArgumentException("No description of " + subject + " in RELS-EXT");
+    }
+}
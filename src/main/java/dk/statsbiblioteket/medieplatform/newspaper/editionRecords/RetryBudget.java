@@ -0,0 +1,71 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds retries to a fraction of the calls made, so retries can never multiply the load on an overloaded backend.
+ * Every call deposits a fraction of a token, every retry withdraws a whole token. Also computes the jittered
+ * exponential delay before a retry.
+ */
+public class RetryBudget {
+    private final double ratio;
+    private final double maxTokens;
+    private final long baseDelayMillis;
+    private final Random random = new Random();
+    private final AtomicLong retries = new AtomicLong();
+    private double tokens;
+
+    /**
+     * @param ratio Number of retries allowed per call, e.g. 0.1 for at most 10% extra calls.
+     * @param maxTokens The maximal number of retries that can be saved up.
+     * @param baseDelayMillis The delay before the first retry. Later retries wait exponentially longer.
+     */
+    public RetryBudget(double ratio, double maxTokens, long baseDelayMillis) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.baseDelayMillis = baseDelayMillis;
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * Report that a call is made.
+     */
+    public synchronized void onCall() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    /**
+     * Withdraw a retry from the budget.
+     *
+     * @return true if the retry may be made.
+     */
+    public synchronized boolean tryRetry() {
+        if (tokens >= 1) {
+            tokens -= 1;
+            retries.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of retries granted.
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Get the delay before a retry, with full jitter.
+     *
+     * @param attempt The number of the retry, starting at 1.
+     * @return Milliseconds to wait, uniformly random between zero and the exponential delay for the attempt.
+     */
+    public long delayMillis(int attempt) {
+        long ceiling = baseDelayMillis << Math.min(attempt - 1, 10);
+        synchronized (random) {
+            return (long) (random.nextDouble() * ceiling);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
 
-import org.w3c.dom.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import dk.statsbiblioteket.doms.central.connectors.BackendInvalidCredsException;
 import dk.statsbiblioteket.doms.central.connectors.BackendInvalidResourceException;
@@ -11,19 +12,42 @@ import dk.statsbiblioteket.medieplatform.autonomous.AbstractRunnableComponent;
 import dk.statsbiblioteket.medieplatform.autonomous.Item;
 import dk.statsbiblioteket.medieplatform.autonomous.ItemFactory;
 import dk.statsbiblioteket.medieplatform.autonomous.ResultCollector;
-import dk.statsbiblioteket.util.xml.DOM;
-import dk.statsbiblioteket.util.xml.XPathSelector;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class RunnableEditionRecordRelationsMaintainer extends AbstractRunnableComponent<Item> {
+    private static Logger log = LoggerFactory.getLogger(RunnableEditionRecordRelationsMaintainer.class);
     private static final String URI_PREFIX = "info:fedora/";
     private final EnhancedFedora eFedora;
-    private String editionToNewspaperRelation = "http://doms.statsbiblioteket.dk/relations/default/0/1/#isPartOfNewspaper";
+    /**
+     * The predicate of the relations from edition to newspaper title.
+     */
+    public static final String EDITION_TO_NEWSPAPER_RELATION
+            = "http://doms.statsbiblioteket.dk/relations/default/0/1/#isPartOfNewspaper";
+    private String editionToNewspaperRelation = EDITION_TO_NEWSPAPER_RELATION;
     private ItemFactory<Item> itemFactory;
     private NewspaperIndex newspaperIndex;
+    private final ModsEditionExtractor modsEditionExtractor = new ModsEditionExtractor();
+    private EditionIndex editionIndex;
+    private RelationsWriter relationsWriter;
+    private EditionRecordsMetrics metrics = new EditionRecordsMetrics();
+    private EditionFingerprints fingerprints;
+    private final ThreadLocal<RelationDiff> relationDiffs = new ThreadLocal<RelationDiff>() {
+        @Override
+        protected RelationDiff initialValue() {
+            return new RelationDiff();
+        }
+    };
 
     public RunnableEditionRecordRelationsMaintainer(Properties properties, EnhancedFedora eFedora,
                                                     ItemFactory<Item> itemFactory, NewspaperIndex newspaperIndex) {
@@ -31,6 +55,76 @@ public class RunnableEditionRecordRelationsMaintainer extends AbstractRunnableCo
         this.eFedora = eFedora;
         this.itemFactory = itemFactory;
         this.newspaperIndex = newspaperIndex;
+        this.relationsWriter = new PerRelationWriter(eFedora, editionToNewspaperRelation);
+    }
+
+    /**
+     * Read avisID and issue date of editions from SBOI instead of from the EDITION datastream in DOMS. Editions
+     * that are not indexed with both fields are still read from DOMS.
+     *
+     * @param editionIndex The index to read edition fields from, or null to always read from DOMS.
+     */
+    public void setEditionIndex(EditionIndex editionIndex) {
+        this.editionIndex = editionIndex;
+    }
+
+    /**
+     * Set how relation changes are written to DOMS. The default is one DOMS call per changed relation.
+     *
+     * @param relationsWriter The writer of relation changes.
+     */
+    public void setRelationsWriter(RelationsWriter relationsWriter) {
+        this.relationsWriter = relationsWriter;
+    }
+
+    /**
+     * Record the fingerprints of editions reconciled, and skip editions whose avisID, issue date and titles are
+     * unchanged since their relations were last reconciled when reconciling in pages, as sweeps and title-change
+     * reconciliation do. The fingerprint does not cover the relations themselves, so an edition handed to
+     * {@link #doWorkOnItem} because it changed in DOMS, e.g. by an edit of its RELS-EXT, is always reconciled.
+     *
+     * @param fingerprints The fingerprints of reconciled editions, or null to always reconcile.
+     */
+    public void setFingerprints(EditionFingerprints fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * @return The fingerprints of reconciled editions, or null if editions are always reconciled.
+     */
+    public EditionFingerprints getFingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * @return The writer of relation changes.
+     */
+    public RelationsWriter getRelationsWriter() {
+        return relationsWriter;
+    }
+
+    /**
+     * Set the metrics to record latencies and counts in. By default, they are recorded in metrics of this
+     * maintainer only.
+     *
+     * @param metrics The metrics.
+     */
+    public void setMetrics(EditionRecordsMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The metrics latencies and counts are recorded in.
+     */
+    public EditionRecordsMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The predicate of the relations from edition to newspaper title.
+     */
+    public String getEditionToNewspaperRelation() {
+        return editionToNewspaperRelation;
     }
 
     @Override
@@ -43,148 +137,406 @@ public class RunnableEditionRecordRelationsMaintainer extends AbstractRunnableCo
         // We assume that the received item is an edition object
         // This method is called whenever an edition object has changed
 
-        // Get PID for the edition object
-        String domsID = item.getDomsID();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            // Get PID for the edition object
+            String domsID = item.getDomsID();
 
-        String newspaperMods = eFedora.getXMLDatastreamContents(domsID, "EDITION");
-        Document newspaperDOM = DOM.stringToDOM(newspaperMods, true);
-        XPathSelector xpath = DOM.createXPathSelector("v3", "http://www.loc.gov/mods/v3");
-        String avisID = xpath.selectString(newspaperDOM, "/v3:mods/v3:titleInfo[@type='uniform']/v3:title/text()");
-        String date = xpath.selectString(newspaperDOM, "/v3:mods/v3:originInfo/v3:dateIssued/text()");
+            EditionMetadata edition = getEditionMetadata(domsID);
+            String avisID = edition.getAvisID();
+            String date = edition.getDateIssued();
 
-        // Get all newspapers that match given edition and date, i.e. titles that SHOULD have the
-        // relation
-        List<Item> wantedNewspapers =  newspaperIndex.getNewspapers(avisID, date);
+            if (fingerprints != null) {
+                doWorkOnFingerprintedItem(domsID, avisID, date);
+                success = true;
+                return;
+            }
 
-        // Get all titles that already HAVE the relation
-        List<Item> titlesWithRelation = getTitlesWithRelation(domsID);
+            // Get all newspapers that match given edition and date, i.e. titles that SHOULD have the
+            // relation
+            long lookupStart = System.nanoTime();
+            List<Item> wantedNewspapers =  newspaperIndex.getNewspapers(avisID, date);
+            metrics.record(EditionRecordsMetrics.Phase.TITLE_LOOKUP, lookupStart);
 
-        // Now we want wantedTitles to = titlesWithRelation
+            // Get all titles that already HAVE the relation
+            List<String> titlesWithRelation = getTitlesWithRelation(domsID);
 
-        // Add relations to titles that are wanted but aren't in titlesWithRelation
-        List<Item> titlesToAdd = getTitlesWantedButWithoutRelation(wantedNewspapers, titlesWithRelation);
-        for (Item toAdd : titlesToAdd) {
-            addRelationFromEditionToNewspaper(toAdd, domsID);
+            updateRelations(domsID, toDomsIDs(wantedNewspapers), titlesWithRelation);
+            success = true;
+        } finally {
+            metrics.record(EditionRecordsMetrics.Phase.ITEM, start);
+            metrics.itemsDone(success ? 1 : 0, success ? 0 : 1);
         }
+    }
 
-        // Remove relations that are in titlesWithRelation but aren't in wantedTiles
-        List<Item> titlesToRemove = getTitlesWithRelationButUnwanted(wantedNewspapers, titlesWithRelation);
-        for (Item toRemove : titlesToRemove) {
-            removeRelationFromEditionToNewspaper(toRemove, domsID);
-        }
+    /**
+     * Reconcile the relations of an edition and record its fingerprint. The edition changed in DOMS to be handed to
+     * the component, so it is reconciled whatever its fingerprint is.
+     *
+     * @param domsID The DOMS PID of the edition.
+     * @param avisID The avisID of the edition.
+     * @param date The issue date of the edition.
+     */
+    private void doWorkOnFingerprintedItem(String domsID, String avisID, String date) throws Exception {
+        long lookupStart = System.nanoTime();
+        TitleIntervalIndex titles = newspaperIndex.getTitleIntervals(avisID);
+        metrics.record(EditionRecordsMetrics.Phase.TITLE_LOOKUP, lookupStart);
+        long fingerprint = EditionFingerprints.fingerprint(avisID, date, titles.getVersion(avisID));
+        List<String> wantedNewspapers = titles.lookup(avisID, EpochDays.parse(date));
+        updateRelations(domsID, wantedNewspapers, getTitlesWithRelation(domsID));
+        fingerprints.put(domsID, fingerprint);
     }
 
     /**
-     * Get titles to which relations are wanted but that aren't in titlesWithRelation
+     * Reconcile the relations of a page of editions. The editions are grouped by avisID, so the titles of each
+     * newspaper are looked up once for the whole group, and the current relations of all editions are read in
+     * parallel. The changes of each edition are then written in order, with editions written in parallel. The
+     * latency of each edition is recorded from the start of the page until its changes are written, or until it failed
+     * or was skipped.
      *
-     * @param wantedTitles Titles that we want
-     * @param titlesWithRelation Titles with a relation from edition that we already have
-     * @return titles to which relations are wanted but that aren't in titlesWithRelation
+     * @param items The edition objects.
+     * @param executor Executor used for reading the current relations and writing changes in parallel.
+     * @return The failures, as map from DOMS PID of the failed edition to the cause. Editions not in the map were
+     * reconciled successfully.
      */
-    private List<Item> getTitlesWantedButWithoutRelation(List<Item> wantedTitles, List<Item> titlesWithRelation) {
-        List<Item> result = new ArrayList<>();
-        for (Item wantedTitle : wantedTitles) {
-            if (!titlesWithRelation.contains(wantedTitle)) {
-                result.add(wantedTitle);
+    public Map<String, Exception> doWorkOnItems(List<Item> items, ExecutorService executor) {
+        final long start = System.nanoTime();
+        Map<String, Exception> failures = new LinkedHashMap<>();
+        List<String> domsIDs = new ArrayList<>(items.size());
+        for (Item item : items) {
+            domsIDs.add(item.getDomsID());
+        }
+
+        // Get avisID and date of all editions, grouped by avisID
+        Map<String, EditionMetadata> editions = getEditionMetadata(domsIDs, failures);
+        Map<String, List<String>> editionsByAvisID = new LinkedHashMap<>();
+        for (Map.Entry<String, EditionMetadata> edition : editions.entrySet()) {
+            List<String> group = editionsByAvisID.get(edition.getValue().getAvisID());
+            if (group == null) {
+                group = new ArrayList<>();
+                editionsByAvisID.put(edition.getValue().getAvisID(), group);
             }
+            group.add(edition.getKey());
         }
-        return result;
+
+        // Look up the titles of each group up front if editions unchanged since they were last reconciled are to be
+        // skipped, so their relations are not read
+        Map<String, TitleIntervalIndex> titlesByAvisID = new LinkedHashMap<>();
+        Map<String, Long> editionFingerprints = new LinkedHashMap<>();
+        if (fingerprints != null) {
+            skipUnchanged(editions, editionsByAvisID, titlesByAvisID, editionFingerprints);
+        }
+
+        // Start reading all current relations
+        Map<String, Future<List<String>>> titlesWithRelation = new LinkedHashMap<>();
+        for (final String domsID : editions.keySet()) {
+            titlesWithRelation.put(domsID, executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    return getTitlesWithRelation(domsID);
+                }
+            }));
+        }
+
+        // Start the writes of each edition as soon as its current relations are known. The changes of one edition
+        // are written in order by one task, while editions are written in parallel
+        Map<String, Future<Void>> writes = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> group : editionsByAvisID.entrySet()) {
+            final String avisID = group.getKey();
+            TitleIntervalIndex titles = titlesByAvisID.get(avisID);
+            long lookupStart = System.nanoTime();
+            try {
+                if (titles == null) {
+                    titles = newspaperIndex.getTitleIntervals(avisID);
+                    metrics.record(EditionRecordsMetrics.Phase.TITLE_LOOKUP, lookupStart);
+                }
+            } catch (Exception e) {
+                for (String domsID : group.getValue()) {
+                    titlesWithRelation.get(domsID).cancel(false);
+                    failures.put(domsID, e);
+                }
+                continue;
+            }
+            for (final String domsID : group.getValue()) {
+                try {
+                    long day = EpochDays.parse(editions.get(domsID).getDateIssued());
+                    final List<String> wantedNewspapers = titles.lookup(avisID, day);
+                    final List<String> existing = getResult(titlesWithRelation.get(domsID));
+                    final Long fingerprint = editionFingerprints.get(domsID);
+                    writes.put(domsID, executor.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            try {
+                                updateRelations(domsID, wantedNewspapers, existing);
+                                if (fingerprint != null) {
+                                    fingerprints.put(domsID, fingerprint);
+                                }
+                                return null;
+                            } finally {
+                                metrics.record(EditionRecordsMetrics.Phase.ITEM, start);
+                            }
+                        }
+                    }));
+                } catch (Exception e) {
+                    failures.put(domsID, e);
+                }
+            }
+        }
+        for (Map.Entry<String, Future<Void>> write : writes.entrySet()) {
+            try {
+                getResult(write.getValue());
+            } catch (Exception e) {
+                failures.put(write.getKey(), e);
+            }
+        }
+        // Editions that failed or were skipped before their writes are done now
+        for (int i = writes.size(); i < items.size(); i++) {
+            metrics.record(EditionRecordsMetrics.Phase.ITEM, start);
+        }
+        metrics.itemsDone(items.size() - failures.size(), failures.size());
+        return failures;
     }
 
     /**
-     * Get titles that are in titlesWithRelation but aren't in wantedTitles
+     * Remove the editions whose fingerprint shows nothing they depend on changed since they were last reconciled, and
+     * compute the fingerprints of the rest. Groups whose titles cannot be looked up are left for the caller to fail.
      *
-     * @param wantedTitles Titles that we want
-     * @param titlesWithRelation Titles with a relation from edition that we already have
-     * @return titles that are in titlesWithRelation but aren't in wantedTitles
+     * @param editions The editions, to remove the unchanged ones from.
+     * @param editionsByAvisID The editions grouped by avisID, to remove the unchanged ones from.
+     * @param titlesByAvisID Map to add the titles looked up for each avisID to.
+     * @param editionFingerprints Map to add the fingerprints of the remaining editions to.
      */
-    private List<Item> getTitlesWithRelationButUnwanted(List<Item> wantedTitles, List<Item> titlesWithRelation) {
-        List<Item> result = new ArrayList<>();
-        for (Item titleWithRelation : titlesWithRelation) {
-            if (!wantedTitles.contains(titleWithRelation)) {
-                result.add(titleWithRelation);
+    private void skipUnchanged(Map<String, EditionMetadata> editions, Map<String, List<String>> editionsByAvisID,
+                               Map<String, TitleIntervalIndex> titlesByAvisID, Map<String, Long> editionFingerprints) {
+        int unchanged = 0;
+        for (Map.Entry<String, List<String>> group : editionsByAvisID.entrySet()) {
+            String avisID = group.getKey();
+            long lookupStart = System.nanoTime();
+            TitleIntervalIndex titles;
+            try {
+                titles = newspaperIndex.getTitleIntervals(avisID);
+                metrics.record(EditionRecordsMetrics.Phase.TITLE_LOOKUP, lookupStart);
+            } catch (Exception e) {
+                continue;
+            }
+            titlesByAvisID.put(avisID, titles);
+            long titleVersion = titles.getVersion(avisID);
+            for (Iterator<String> domsIDs = group.getValue().iterator(); domsIDs.hasNext(); ) {
+                String domsID = domsIDs.next();
+                long fingerprint = EditionFingerprints.fingerprint(avisID, editions.get(domsID).getDateIssued(),
+                                                                   titleVersion);
+                if (fingerprints.isUnchanged(domsID, fingerprint)) {
+                    domsIDs.remove();
+                    editions.remove(domsID);
+                    unchanged++;
+                } else {
+                    editionFingerprints.put(domsID, fingerprint);
+                }
             }
         }
-        return result;
+        metrics.itemsUnchanged(unchanged);
     }
 
     /**
-     * Get all titles that have the wanted relation from edition object with given DOMS PID
+     * Add and remove relations from an edition, so it ends up with relations to exactly the wanted newspaper titles
      *
-     * @param editionDomsID Edition object from which relation should go
-     * @return All titles that have the wanted relation from edition object with given DOMS PID
+     * @param domsID The DOMS PID of the edition.
+     * @param wantedNewspapers The titles the edition should have relations to.
+     * @param titlesWithRelation The titles the edition has relations to now.
      */
-    private List<Item> getTitlesWithRelation(String editionDomsID) throws
-            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
-
-        List<Item> titles = new ArrayList<>();
+    void updateRelations(String domsID, List<String> wantedNewspapers, List<String> titlesWithRelation)
+            throws Exception {
+        // Now we want wantedTitles to = titlesWithRelation
+        RelationDiff diff = relationDiffs.get().clear();
+        for (String wanted : wantedNewspapers) {
+            diff.getWanted().add(wanted);
+        }
+        for (String existing : titlesWithRelation) {
+            diff.getExisting().add(existing);
+        }
 
-        // Get all relations that go to a title from a given edition object
-        List<FedoraRelation> relations = eFedora.getNamedRelations(editionDomsID, editionToNewspaperRelation, null);
+        // Add relations to titles that are wanted but aren't in titlesWithRelation, and remove relations that are
+        // in titlesWithRelation but aren't in wantedTitles
+        if (!diff.compute().isEmpty()) {
+            relationsWriter.updateRelations(domsID, toDomsIDs(diff.getToAdd()), toDomsIDs(diff.getToRemove()));
+            metrics.relationsChanged(diff.getToAdd().size(), diff.getToRemove().size());
+        }
+    }
 
-        // Collect the titles that these relations point to. (Relations point from Edition to Newspaper)
-        for (FedoraRelation relation : relations) {
-            titles.add(itemFactory.create(uriToDomsID(relation.getObject())));
+    /**
+     * Get the DOMS PIDs of a list of items
+     *
+     * @param items The items.
+     * @return The DOMS PIDs of the items, in the same order.
+     */
+    private static List<String> toDomsIDs(List<Item> items) {
+        List<String> domsIDs = new ArrayList<>(items.size());
+        for (Item item : items) {
+            domsIDs.add(item.getDomsID());
         }
+        return domsIDs;
+    }
 
-        return titles;
+    /**
+     * Get the DOMS PIDs of a set of UUIDs
+     *
+     * @param uuids The UUIDs.
+     * @return The DOMS PIDs of the UUIDs, in the same order.
+     */
+    private static List<String> toDomsIDs(UuidSet uuids) {
+        List<String> domsIDs = new ArrayList<>(uuids.size());
+        for (int i = 0; i < uuids.size(); i++) {
+            domsIDs.add(uuids.getDomsID(i));
+        }
+        return domsIDs;
     }
 
     /**
-     * Add relation to given title from edition with given PID (editionDomsID) in DOMS
+     * Get avisID and issue date of an edition, from SBOI if available, otherwise from the EDITION datastream
      *
-     * @param title The title which should be at the "target" end of the wanted relation
-     * @param editionDomsID The DOMS PID of the edition object which should be the "source" of wanted relation
-     * @throws BackendMethodFailedException
-     * @throws BackendInvalidResourceException
-     * @throws BackendInvalidCredsException
+     * @param editionDomsID The DOMS PID of the edition.
+     * @return The avisID and issue date of the edition.
      */
-    private void addRelationFromEditionToNewspaper(Item title, String editionDomsID) throws
-            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+    private EditionMetadata getEditionMetadata(String editionDomsID) throws Exception {
+        EditionMetadata edition = getIndexedEditionMetadata(editionDomsID);
+        return edition != null ? edition : readEditionMetadata(editionDomsID);
+    }
 
-        // Add relation from edition to newspaper object ("titelpost")
-        try {
-            eFedora.addRelation(editionDomsID, URI_PREFIX + editionDomsID, editionToNewspaperRelation,
-                                URI_PREFIX + title.getDomsID(), false, "linking to");
-        } catch (BackendInvalidCredsException objectIsPublished) {
-            // Edition was already published, so unpublish (set to "I" (inactive)) before adding
-            eFedora.modifyObjectState(editionDomsID, "I", "comment");
+    /**
+     * Get avisID and issue date of a number of editions, from SBOI in one query if available, otherwise from the
+     * EDITION datastreams
+     *
+     * @param editionDomsIDs The DOMS PIDs of the editions.
+     * @param failures Map to add editions to whose avisID and issue date could not be read.
+     * @return Map from DOMS PID to avisID and issue date, in the order of the given PIDs.
+     */
+    private Map<String, EditionMetadata> getEditionMetadata(List<String> editionDomsIDs,
+                                                            Map<String, Exception> failures) {
+        Map<String, EditionMetadata> indexed = Collections.emptyMap();
+        if (editionIndex != null) {
+            long start = System.nanoTime();
             try {
-                eFedora.addRelation(editionDomsID, URI_PREFIX + editionDomsID, editionToNewspaperRelation,
-                                    URI_PREFIX + title.getDomsID(), false, "linking to");
-            } finally {
-                // Re-publish (set to "A" (active))
-                eFedora.modifyObjectState(editionDomsID, "A", "comment");
+                indexed = editionIndex.getEditionMetadata(editionDomsIDs);
+                metrics.record(EditionRecordsMetrics.Phase.EDITION_QUERY, start);
+            } catch (Exception e) {
+                log.warn("Failed to read editions from SBOI, reading them from DOMS instead", e);
             }
         }
+        Map<String, EditionMetadata> result = new LinkedHashMap<>();
+        for (String domsID : editionDomsIDs) {
+            EditionMetadata edition = indexed.get(domsID);
+            try {
+                result.put(domsID, edition != null ? edition : readEditionMetadata(domsID));
+            } catch (Exception e) {
+                failures.put(domsID, e);
+            }
+        }
+        return result;
     }
 
     /**
-     * Remove relation to given title from edition object with given PID (editionDomsID) in DOMS, if it exists
+     * Get the result of a task, unwrapping the exception it failed with, if any.
      *
-     * @param title The title to which the possible relation from editionDomsID should be removed
-     * @param editionDomsID The source of the relations to title that should be removed
-     * @throws BackendMethodFailedException
-     * @throws BackendInvalidResourceException
-     * @throws BackendInvalidCredsException
+     * @param future The task.
+     * @param <T> The result type.
+     * @return The result.
+     * @throws Exception the exception the task failed with.
      */
-    private void removeRelationFromEditionToNewspaper(Item title, String editionDomsID) throws
-            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
-        // Add relation from edition to newspaper object ("titelpost")
+    private static <T> T getResult(Future<T> future) throws Exception {
         try {
-            eFedora.deleteRelation(editionDomsID, URI_PREFIX + editionDomsID, editionToNewspaperRelation,
-                                   URI_PREFIX + title.getDomsID(), false, "linking to");
-        } catch (BackendInvalidCredsException objectIsPublished) {
-            // Edition was already published, so unpublish (set to "I" (inactive)) before adding
-            eFedora.modifyObjectState(editionDomsID, "I", "comment");
-            try {
-                eFedora.deleteRelation(editionDomsID, URI_PREFIX + editionDomsID, editionToNewspaperRelation,
-                                       URI_PREFIX + title.getDomsID(), false, "linking to");
-            } finally {
-                // Re-publish (set to "A" (active))
-                eFedora.modifyObjectState(editionDomsID, "A", "comment");
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
             }
+            throw e;
+        }
+    }
+
+    /**
+     * Read avisID and issue date of an edition from the EDITION datastream in DOMS
+     *
+     * @param editionDomsID The DOMS PID of the edition.
+     * @return The avisID and issue date of the edition.
+     */
+    private EditionMetadata readEditionMetadata(String editionDomsID) throws Exception {
+        return parseEditionMods(readEditionMods(editionDomsID));
+    }
+
+    /**
+     * Get avisID and issue date of an edition from SBOI, if edition fields are read from SBOI
+     *
+     * @param editionDomsID The DOMS PID of the edition.
+     * @return The avisID and issue date of the edition, or null if not read from SBOI or not indexed.
+     */
+    EditionMetadata getIndexedEditionMetadata(String editionDomsID) throws Exception {
+        if (editionIndex == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        EditionMetadata edition = editionIndex.getEditionMetadata(Collections.singletonList(editionDomsID))
+                                              .get(editionDomsID);
+        metrics.record(EditionRecordsMetrics.Phase.EDITION_QUERY, start);
+        return edition;
+    }
+
+    /**
+     * Read the EDITION datastream of an edition from DOMS
+     *
+     * @param editionDomsID The DOMS PID of the edition.
+     * @return The edition MODS.
+     */
+    String readEditionMods(String editionDomsID) throws Exception {
+        return eFedora.getXMLDatastreamContents(editionDomsID, "EDITION");
+    }
+
+    /**
+     * Parse avisID and issue date from edition MODS
+     *
+     * @param mods The edition MODS.
+     * @return The avisID and issue date of the edition.
+     */
+    EditionMetadata parseEditionMods(String mods) throws Exception {
+        long start = System.nanoTime();
+        EditionMetadata edition = modsEditionExtractor.extract(mods);
+        metrics.record(EditionRecordsMetrics.Phase.MODS_PARSE, start);
+        return edition;
+    }
+
+    /**
+     * Look up the newspaper titles of an avisID
+     *
+     * @param avisID The avisID.
+     * @return Index containing at least all titles with the given avisID.
+     */
+    TitleIntervalIndex getTitleIntervals(String avisID) {
+        long start = System.nanoTime();
+        TitleIntervalIndex titles = newspaperIndex.getTitleIntervals(avisID);
+        metrics.record(EditionRecordsMetrics.Phase.TITLE_LOOKUP, start);
+        return titles;
+    }
+
+    /**
+     * Get all titles that have the wanted relation from edition object with given DOMS PID
+     *
+     * @param editionDomsID Edition object from which relation should go
+     * @return DOMS PIDs of all titles that have the wanted relation from edition object with given DOMS PID
+     */
+    List<String> getTitlesWithRelation(String editionDomsID) throws
+            BackendMethodFailedException, BackendInvalidResourceException, BackendInvalidCredsException {
+
+        List<String> titles = new ArrayList<>();
+
+        // Get all relations that go to a title from a given edition object
+        List<FedoraRelation> relations = eFedora.getNamedRelations(editionDomsID, editionToNewspaperRelation, null);
+
+        // Collect the titles that these relations point to. (Relations point from Edition to Newspaper)
+        for (FedoraRelation relation : relations) {
+            titles.add(uriToDomsID(relation.getObject()));
         }
+
+        return titles;
     }
 
     /**
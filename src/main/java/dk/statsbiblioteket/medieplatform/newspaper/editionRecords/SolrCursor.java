@@ -0,0 +1,159 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+
+import dk.statsbiblioteket.medieplatform.autonomous.SBOIEventIndex;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The documents matching a query, read from SBOI page by page with a cursor (cursorMark) as they are iterated. Only
+ * one page is held in memory at a time, the first documents are available as soon as the first page is read, and
+ * unlike start/rows paging, deep pages cost no more than the first. Only the requested fields are fetched. Each call
+ * to {@link #iterator()} runs the query again.
+ */
+public class SolrCursor implements Iterable<SolrDocument> {
+    private static final String CURSOR_MARK = "cursorMark";
+    private static final String NEXT_CURSOR_MARK = "nextCursorMark";
+    private static final String CURSOR_MARK_START = "*";
+
+    private final SolrServer solrServer;
+    private final String query;
+    private final int pageSize;
+    private final String[] fields;
+
+    /**
+     * @param solrServer The SBOI solr server.
+     * @param query The solr query.
+     * @param pageSize The number of documents to read per request.
+     * @param fields The fields to fetch.
+     */
+    public SolrCursor(SolrServer solrServer, String query, int pageSize, String... fields) {
+        this.solrServer = solrServer;
+        this.query = query;
+        this.pageSize = pageSize;
+        this.fields = fields;
+    }
+
+    /**
+     * Converts a document to another type.
+     *
+     * @param <T> The type converted to.
+     */
+    public interface Converter<T> {
+
+        /**
+         * Convert a document.
+         *
+         * @param document The document.
+         * @return The converted document, or null to skip the document.
+         */
+        T convert(SolrDocument document);
+    }
+
+    /**
+     * Convert the documents as they are iterated.
+     *
+     * @param converter The converter of each document.
+     * @param <T> The type converted to.
+     * @return The converted documents, without those converted to null.
+     */
+    public <T> Iterable<T> convert(final Converter<T> converter) {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                final Iterator<SolrDocument> documents = SolrCursor.this.iterator();
+                return new Iterator<T>() {
+                    private T next;
+
+                    @Override
+                    public boolean hasNext() {
+                        while (next == null && documents.hasNext()) {
+                            next = converter.convert(documents.next());
+                        }
+                        return next != null;
+                    }
+
+                    @Override
+                    public T next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        T result = next;
+                        next = null;
+                        return result;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @return An iterator over the matching documents, in order of UUID.
+     * @throws RuntimeException wrapping the exception from solr if a page could not be read.
+     */
+    @Override
+    public Iterator<SolrDocument> iterator() {
+        final SolrQuery solrQuery = new SolrQuery();
+        solrQuery.setQuery(query);
+        solrQuery.setRows(pageSize);
+        //IMPORTANT!Only use facets if needed.
+        solrQuery.set("facet", "false"); //very important. Must overwrite to false. Facets are very slow and expensive.
+        solrQuery.setFields(fields);
+        // A cursor requires a sort on the unique key
+        solrQuery.addSort(SBOIEventIndex.UUID, SolrQuery.ORDER.asc);
+        return new Iterator<SolrDocument>() {
+            private String cursorMark = CURSOR_MARK_START;
+            private Iterator<SolrDocument> page = Collections.<SolrDocument>emptyList().iterator();
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !done) {
+                    readPage();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public SolrDocument next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private void readPage() {
+                solrQuery.set(CURSOR_MARK, cursorMark);
+                QueryResponse response;
+                try {
+                    response = solrServer.query(solrQuery);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                SolrDocumentList results = response.getResults();
+                Object nextCursorMark = response.getResponse().get(NEXT_CURSOR_MARK);
+                // The cursor is exhausted when it no longer moves
+                done = results.size() < pageSize || nextCursorMark == null || cursorMark.equals(nextCursorMark);
+                cursorMark = nextCursorMark == null ? cursorMark : nextCursorMark.toString();
+                page = results.iterator();
+            }
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+
+import java.util.List;
+
+/**
+ * Writes relation changes with knowledge of the object state of the edition. The state is read before writing, and a
+ * published edition is unpublished once around all its changes and then republished, instead of discovering that it
+ * is published from a rejected write for every changed relation.
+ */
+public class StateAwareRelationsWriter implements RelationsWriter {
+    private static final String ACTIVE = "A";
+    private static final String INACTIVE = "I";
+    private final EnhancedFedora eFedora;
+    private final RelationsWriter delegate;
+
+    /**
+     * @param eFedora The DOMS client.
+     * @param delegate The writer doing the actual writes.
+     */
+    public StateAwareRelationsWriter(EnhancedFedora eFedora, RelationsWriter delegate) {
+        this.eFedora = eFedora;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void updateRelations(String editionDomsID, List<String> titlesToAdd, List<String> titlesToRemove)
+            throws Exception {
+        String state = eFedora.getObjectProfile(editionDomsID, null).getState();
+        if (!ACTIVE.equals(state)) {
+            delegate.updateRelations(editionDomsID, titlesToAdd, titlesToRemove);
+            return;
+        }
+        // Edition is published, so unpublish (set to "I" (inactive)) once before all changes
+        eFedora.modifyObjectState(editionDomsID, INACTIVE, "comment");
+        try {
+            delegate.updateRelations(editionDomsID, titlesToAdd, titlesToRemove);
+        } finally {
+            // Re-publish (set to "A" (active))
+            eFedora.modifyObjectState(editionDomsID, ACTIVE, "comment");
+        }
+    }
+}
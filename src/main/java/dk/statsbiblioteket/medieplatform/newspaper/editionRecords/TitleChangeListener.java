@@ -0,0 +1,18 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import java.util.List;
+
+/**
+ * Is told when the newspaper title records in a {@link NewspaperIndex} change. The index tells its listeners on a
+ * thread of its own, one change at a time.
+ */
+public interface TitleChangeListener {
+
+    /**
+     * The title records have changed.
+     *
+     * @param affectedWindows The windows of editions whose relations may have to change.
+     * @param titles All title records after the change.
+     */
+    void titlesChanged(List<EditionWindow> affectedWindows, List<TitleRecord> titles);
+}
@@ -0,0 +1,130 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reconciles only the editions affected by changes to newspaper title records, instead of all editions. Changes are
+ * found against a snapshot of the titles as they were when last reconciled, both at startup and whenever the
+ * {@link NewspaperIndex} reloads the titles. The snapshot is a {@link TitleIndexSnapshot}, which the index also maps
+ * its titles from while they are the current ones. After each reconciliation the snapshot is replaced with the current
+ * titles, so the index can map them however it went. The windows that failed, and with the avisIDs divided between
+ * nodes the windows of the avisIDs left to other nodes, are recorded in the snapshot as pending, and are tried again
+ * next time, the latter if this node has become the owner of the avisID by then.
+ */
+public class TitleChangeReconciler implements TitleChangeListener, AvisIDShards.MembershipListener {
+
+    private static Logger log = LoggerFactory.getLogger(TitleChangeReconciler.class);
+
+    private final EditionRecordRelationsBatchReconciler batchReconciler;
+    private final File snapshotFile;
+    private AvisIDShards shards;
+    private List<TitleRecord> latestTitles;
+
+    /**
+     * @param batchReconciler The reconciler of the editions in a window.
+     * @param snapshotFile The file with the snapshot of the titles as they were when last reconciled.
+     */
+    public TitleChangeReconciler(EditionRecordRelationsBatchReconciler batchReconciler, File snapshotFile) {
+        this.batchReconciler = batchReconciler;
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Only reconcile the editions of the avisIDs belonging to this node, leaving the rest to the other nodes until
+     * this node owns them.
+     *
+     * @param shards The division of avisIDs between nodes, or null to reconcile the editions of all avisIDs.
+     */
+    public void setShards(AvisIDShards shards) {
+        this.shards = shards;
+        if (shards != null) {
+            shards.addMembershipListener(this);
+        }
+    }
+
+    /**
+     * Reconcile the editions affected by changes to the titles since the snapshot, and those still pending in the
+     * snapshot. If there is no snapshot yet, the titles are only recorded in a new snapshot.
+     *
+     * @param titles The current title records.
+     * @return The number of editions that failed.
+     * @throws IOException if the snapshot could not be read or written.
+     */
+    public synchronized int reconcileSinceSnapshot(List<TitleRecord> titles) throws IOException {
+        latestTitles = titles;
+        if (!snapshotFile.exists()) {
+            log.info("No title snapshot, recording the {} current titles", titles.size());
+            TitleIndexSnapshot.write(snapshotFile, titles);
+            return 0;
+        }
+        TitleIndexSnapshot snapshot = TitleIndexSnapshot.map(snapshotFile);
+        List<EditionWindow> windows = new ArrayList<>(TitleChanges.affectedWindows(snapshot.getTitles(), titles));
+        if (windows.isEmpty() && !snapshot.isPending()) {
+            return 0;
+        }
+        windows.addAll(snapshot.getPendingWindows());
+        return reconcile(TitleChanges.merge(windows), titles);
+    }
+
+    @Override
+    public synchronized void titlesChanged(List<EditionWindow> affectedWindows, List<TitleRecord> titles) {
+        try {
+            // The snapshot may be older than the titles the index had, so compare against the snapshot
+            reconcileSinceSnapshot(titles);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to reconcile editions affected by changed titles {}", affectedWindows, e);
+        }
+    }
+
+    @Override
+    public synchronized void membersChanged(Set<String> members) {
+        if (latestTitles == null) {
+            return;
+        }
+        try {
+            // Changes left to other nodes are pending in the snapshot, and some of their avisIDs may be ours now
+            reconcileSinceSnapshot(latestTitles);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to reconcile editions affected by changed titles after the members changed to {}",
+                      members, e);
+        }
+    }
+
+    /**
+     * Reconcile the editions in the given windows, and record the titles in the snapshot, with the windows that failed
+     * or were left to other nodes as pending.
+     *
+     * @param windows The windows.
+     * @param titles The current title records.
+     * @return The number of editions that failed.
+     */
+    private int reconcile(List<EditionWindow> windows, List<TitleRecord> titles) throws IOException {
+        int failed = 0;
+        List<EditionWindow> pending = new ArrayList<>();
+        for (EditionWindow window : windows) {
+            if (shards != null && !shards.owns(window.getAvisID())) {
+                log.info("Leaving editions of {} affected by changed titles to another node", window);
+                pending.add(window);
+                continue;
+            }
+            log.info("Reconciling editions of {} affected by changed titles", window);
+            int windowFailed = batchReconciler.reconcile(window.getAvisID(), window.getFromDate(), window.getToDate());
+            if (windowFailed > 0) {
+                pending.add(window);
+                failed += windowFailed;
+            }
+        }
+        TitleIndexSnapshot.write(snapshotFile, titles, pending);
+        if (failed > 0) {
+            log.warn("{} editions affected by changed titles failed, keeping their windows pending to retry", failed);
+        }
+        return failed;
+    }
+}
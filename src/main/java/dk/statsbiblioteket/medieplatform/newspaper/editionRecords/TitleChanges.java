@@ -0,0 +1,96 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes the editions affected by changes to newspaper title records. An edition can only change its relations if
+ * it is in the old or the new period of a changed title, so for every added, removed or changed title the affected
+ * windows are the old and the new period for the old and the new avisID. Overlapping and adjacent windows of the same
+ * avisID are merged.
+ */
+public final class TitleChanges {
+
+    private TitleChanges() {
+    }
+
+    /**
+     * Get the windows of editions whose relations may change between two versions of the title records
+     *
+     * @param oldTitles The title records before.
+     * @param newTitles The title records after.
+     * @return The affected windows, sorted by avisID and start, not overlapping. Empty if no title changed.
+     */
+    public static List<EditionWindow> affectedWindows(Collection<TitleRecord> oldTitles,
+                                                      Collection<TitleRecord> newTitles) {
+        Map<String, TitleRecord> oldByID = byDomsID(oldTitles);
+        Map<String, TitleRecord> newByID = byDomsID(newTitles);
+        Set<String> domsIDs = new HashSet<>(oldByID.keySet());
+        domsIDs.addAll(newByID.keySet());
+        List<EditionWindow> windows = new ArrayList<>();
+        for (String domsID : domsIDs) {
+            TitleRecord oldTitle = oldByID.get(domsID);
+            TitleRecord newTitle = newByID.get(domsID);
+            if (oldTitle != null && oldTitle.equals(newTitle)) {
+                continue;
+            }
+            if (oldTitle != null) {
+                windows.add(new EditionWindow(oldTitle.getAvisID(), oldTitle.getStartDay(), oldTitle.getEndDay()));
+            }
+            if (newTitle != null) {
+                windows.add(new EditionWindow(newTitle.getAvisID(), newTitle.getStartDay(), newTitle.getEndDay()));
+            }
+        }
+        return merge(windows);
+    }
+
+    private static Map<String, TitleRecord> byDomsID(Collection<TitleRecord> titles) {
+        Map<String, TitleRecord> byID = new HashMap<>(titles.size() * 2);
+        for (TitleRecord title : titles) {
+            byID.put(title.getDomsID(), title);
+        }
+        return byID;
+    }
+
+    /**
+     * Merge overlapping and adjacent windows of the same avisID
+     *
+     * @param windows The windows.
+     * @return The merged windows, sorted by avisID and start.
+     */
+    static List<EditionWindow> merge(List<EditionWindow> windows) {
+        List<EditionWindow> sorted = new ArrayList<>(windows);
+        Collections.sort(sorted, new Comparator<EditionWindow>() {
+            @Override
+            public int compare(EditionWindow o1, EditionWindow o2) {
+                int byAvisID = o1.getAvisID().compareTo(o2.getAvisID());
+                return byAvisID != 0 ? byAvisID : Long.compare(o1.getFromDay(), o2.getFromDay());
+            }
+        });
+        List<EditionWindow> merged = new ArrayList<>();
+        EditionWindow current = null;
+        for (EditionWindow window : sorted) {
+            if (current != null && current.getAvisID().equals(window.getAvisID())
+                && window.getFromDay() <= current.getToDay() + 1) {
+                current = new EditionWindow(current.getAvisID(), current.getFromDay(),
+                                            Math.max(current.getToDay(), window.getToDay()));
+            } else {
+                if (current != null) {
+                    merged.add(current);
+                }
+                current = window;
+            }
+        }
+        if (current != null) {
+            merged.add(current);
+        }
+        return merged;
+    }
+}
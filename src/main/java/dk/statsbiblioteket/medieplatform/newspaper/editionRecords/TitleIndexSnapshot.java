@@ -0,0 +1,430 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of the newspaper title records as last reconciled by the {@link TitleChangeReconciler}, memory-mapped
+ * by the {@link NewspaperIndex} while they are the current titles, so the titles are available the moment the file is
+ * opened and take no heap however many there are. The file holds a header with the version of the titles, the time
+ * they were last verified to be the current titles and the number of pending windows, a table of the avisIDs sorted by
+ * their UTF-8 bytes, each with the range of its titles and their version, the titles as (UUID, first day, last day)
+ * records of primitive longs sorted by avisID and first day, the windows of editions affected by changes to the titles
+ * that are not yet reconciled, and the UTF-8 bytes of the avisIDs. A lookup is a binary search of the avisID table
+ * followed by a scan of the titles of the avisID. Snapshots of the first format, without verification time and pending
+ * windows, are still read.
+ */
+public class TitleIndexSnapshot {
+
+    private static final int MAGIC = 0x54495831;
+    private static final int FORMAT = 2;
+    private static final int FIRST_FORMAT = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int FIRST_FORMAT_HEADER_SIZE = 24;
+    private static final int VERIFIED_AT_OFFSET = 24;
+    private static final int AVIS_ID_ENTRY_SIZE = 24;
+    private static final int TITLE_RECORD_SIZE = 32;
+    private static final int PENDING_WINDOW_SIZE = 24;
+    private static final Comparator<byte[]> UTF8_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] o1, byte[] o2) {
+            for (int i = 0; i < o1.length && i < o2.length; i++) {
+                int difference = (o1[i] & 0xFF) - (o2[i] & 0xFF);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return o1.length - o2.length;
+        }
+    };
+    private final ByteBuffer buffer;
+    private final long version;
+    private final int titleCount;
+    private final int avisIDCount;
+    private final long verifiedAt;
+    private final int pendingCount;
+    private final int headerSize;
+    private final int titlesOffset;
+    private final int pendingOffset;
+
+    private TitleIndexSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        boolean firstFormat = buffer.getInt(4) == FIRST_FORMAT;
+        this.version = buffer.getLong(8);
+        this.titleCount = buffer.getInt(16);
+        this.avisIDCount = buffer.getInt(20);
+        this.verifiedAt = firstFormat ? 0 : buffer.getLong(VERIFIED_AT_OFFSET);
+        this.pendingCount = firstFormat ? 0 : buffer.getInt(32);
+        this.headerSize = firstFormat ? FIRST_FORMAT_HEADER_SIZE : HEADER_SIZE;
+        this.titlesOffset = headerSize + avisIDCount * AVIS_ID_ENTRY_SIZE;
+        this.pendingOffset = titlesOffset + titleCount * TITLE_RECORD_SIZE;
+    }
+
+    /**
+     * Memory-map a snapshot.
+     *
+     * @param file The snapshot file.
+     * @return The snapshot.
+     * @throws IOException if the file could not be read or is not a title snapshot.
+     */
+    public static TitleIndexSnapshot map(File file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < FIRST_FORMAT_HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a title snapshot: " + file);
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int format = buffer.getInt(4);
+        if (buffer.getInt(0) != MAGIC || (format != FORMAT && format != FIRST_FORMAT)) {
+            throw new IOException("Not a title snapshot: " + file);
+        }
+        if (format == FORMAT && buffer.capacity() < HEADER_SIZE) {
+            throw new IOException("Truncated title snapshot: " + file);
+        }
+        int headerSize = format == FORMAT ? HEADER_SIZE : FIRST_FORMAT_HEADER_SIZE;
+        int titleCount = buffer.getInt(16);
+        int avisIDCount = buffer.getInt(20);
+        int pendingCount = format == FORMAT ? buffer.getInt(32) : 0;
+        long namesOffset = headerSize + (long) avisIDCount * AVIS_ID_ENTRY_SIZE
+                           + (long) titleCount * TITLE_RECORD_SIZE + (long) pendingCount * PENDING_WINDOW_SIZE;
+        if (titleCount < 0 || avisIDCount < 0 || pendingCount < 0 || namesOffset > buffer.capacity()) {
+            throw new IOException("Truncated title snapshot: " + file);
+        }
+        TitleIndexSnapshot snapshot = new TitleIndexSnapshot(buffer);
+        for (int i = 0; i < avisIDCount; i++) {
+            int entry = headerSize + i * AVIS_ID_ENTRY_SIZE;
+            if ((long) buffer.getInt(entry) + buffer.getInt(entry + 4) > buffer.capacity()
+                || (long) buffer.getInt(entry + 8) + buffer.getInt(entry + 12) > titleCount) {
+                throw new IOException("Truncated title snapshot: " + file);
+            }
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            int entry = snapshot.pendingOffset + i * PENDING_WINDOW_SIZE;
+            if ((long) buffer.getInt(entry) + buffer.getInt(entry + 4) > buffer.capacity()) {
+                throw new IOException("Truncated title snapshot: " + file);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Replace the snapshot in a file with the given title records, verified to be the current titles now, with no
+     * pending windows.
+     *
+     * @param file The snapshot file.
+     * @param titles The title records.
+     * @throws IOException if the snapshot could not be written, or a title PID is not a UUID PID.
+     */
+    public static void write(File file, Collection<TitleRecord> titles) throws IOException {
+        write(file, titles, Collections.<EditionWindow>emptyList());
+    }
+
+    /**
+     * Replace the snapshot in a file with the given title records, verified to be the current titles now. The file is
+     * replaced atomically, so a crash leaves either the old or the new snapshot, and snapshots already mapped from the
+     * file are unaffected.
+     *
+     * @param file The snapshot file.
+     * @param titles The title records.
+     * @param pendingWindows The windows of editions affected by changes to the titles that are not yet reconciled.
+     * @throws IOException if the snapshot could not be written, or a title PID is not a UUID PID.
+     */
+    public static void write(File file, Collection<TitleRecord> titles, Collection<EditionWindow> pendingWindows)
+            throws IOException {
+        Map<String, List<TitleRecord>> grouped = new LinkedHashMap<>();
+        for (TitleRecord title : titles) {
+            List<TitleRecord> group = grouped.get(title.getAvisID());
+            if (group == null) {
+                group = new ArrayList<>();
+                grouped.put(title.getAvisID(), group);
+            }
+            group.add(title);
+        }
+        List<byte[]> avisIDs = new ArrayList<>(grouped.size());
+        for (String avisID : grouped.keySet()) {
+            avisIDs.add(avisID.getBytes(StandardCharsets.UTF_8));
+        }
+        Collections.sort(avisIDs, UTF8_ORDER);
+        TitleIntervalIndex index = new TitleIntervalIndex(titles);
+
+        Path path = file.toPath();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(versionOf(grouped.keySet(), index));
+            out.writeInt(titles.size());
+            out.writeInt(avisIDs.size());
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(pendingWindows.size());
+            out.writeInt(0);
+            int nameOffset = HEADER_SIZE + avisIDs.size() * AVIS_ID_ENTRY_SIZE + titles.size() * TITLE_RECORD_SIZE
+                             + pendingWindows.size() * PENDING_WINDOW_SIZE;
+            int firstTitle = 0;
+            for (byte[] avisID : avisIDs) {
+                String name = new String(avisID, StandardCharsets.UTF_8);
+                int count = grouped.get(name).size();
+                out.writeInt(nameOffset);
+                out.writeInt(avisID.length);
+                out.writeInt(firstTitle);
+                out.writeInt(count);
+                out.writeLong(index.getVersion(name));
+                nameOffset += avisID.length;
+                firstTitle += count;
+            }
+            for (byte[] avisID : avisIDs) {
+                List<TitleRecord> group = new ArrayList<>(grouped.get(new String(avisID, StandardCharsets.UTF_8)));
+                Collections.sort(group, new Comparator<TitleRecord>() {
+                    @Override
+                    public int compare(TitleRecord o1, TitleRecord o2) {
+                        return Long.compare(o1.getStartDay(), o2.getStartDay());
+                    }
+                });
+                for (TitleRecord title : group) {
+                    if (!Uuids.isUuid(title.getDomsID())) {
+                        throw new IOException("Cannot write title " + title.getDomsID() + " to a title snapshot");
+                    }
+                    out.writeLong(Uuids.mostSignificantBits(title.getDomsID()));
+                    out.writeLong(Uuids.leastSignificantBits(title.getDomsID()));
+                    out.writeLong(title.getStartDay());
+                    out.writeLong(title.getEndDay());
+                }
+            }
+            List<byte[]> pendingAvisIDs = new ArrayList<>(pendingWindows.size());
+            for (EditionWindow window : pendingWindows) {
+                byte[] avisID = window.getAvisID().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(nameOffset);
+                out.writeInt(avisID.length);
+                out.writeLong(window.getFromDay());
+                out.writeLong(window.getToDay());
+                pendingAvisIDs.add(avisID);
+                nameOffset += avisID.length;
+            }
+            for (byte[] avisID : avisIDs) {
+                out.write(avisID);
+            }
+            for (byte[] avisID : pendingAvisIDs) {
+                out.write(avisID);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Record in the header of a snapshot file that its titles were verified to be the current titles at the given
+     * time. Does nothing if the file no longer holds titles of the given version, as when it was replaced since it was
+     * mapped, or is of the first format, which has no verification time.
+     *
+     * @param file The snapshot file.
+     * @param version The version of the titles verified, see {@link #versionOf}.
+     * @param verifiedAt The time of the verification, in milliseconds since the epoch.
+     * @return true if the verification time was recorded.
+     * @throws IOException if the file could not be read or written.
+     */
+    public static boolean markVerified(File file, long version, long verifiedAt) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != FORMAT
+                || header.getLong(8) != version) {
+                return false;
+            }
+            channel.write(ByteBuffer.allocate(8).putLong(0, verifiedAt), VERIFIED_AT_OFFSET);
+            return true;
+        }
+    }
+
+    /**
+     * Get the version of a set of title records, as the version of a snapshot of them would be.
+     *
+     * @param titles The title records.
+     * @return The version, which changes when and only when a title is added, removed or has its period changed,
+     * barring hash collisions.
+     */
+    public static long versionOf(Collection<TitleRecord> titles) {
+        Map<String, Boolean> avisIDs = new LinkedHashMap<>();
+        for (TitleRecord title : titles) {
+            avisIDs.put(title.getAvisID(), Boolean.TRUE);
+        }
+        return versionOf(avisIDs.keySet(), new TitleIntervalIndex(titles));
+    }
+
+    private static long versionOf(Collection<String> avisIDs, TitleIntervalIndex index) {
+        long version = 0;
+        for (String avisID : avisIDs) {
+            long hash = (avisID.hashCode() * 0x9E3779B97F4A7C15L ^ index.getVersion(avisID)) * 0xC2B2AE3D27D4EB4FL;
+            version += hash ^ (hash >>> 31);
+        }
+        return version;
+    }
+
+    /**
+     * Get the DOMS PIDs of all titles with the given avisID whose period contains the given day
+     *
+     * @param avisID The avisID the title should match.
+     * @param epochDay The day the title should match.
+     * @return DOMS PIDs of matching titles, in order of start day.
+     */
+    public List<String> lookup(String avisID, long epochDay) {
+        int entry = find(avisID);
+        if (entry < 0) {
+            return Collections.emptyList();
+        }
+        int first = buffer.getInt(entry + 8);
+        int count = buffer.getInt(entry + 12);
+        List<String> result = new ArrayList<>(2);
+        for (int i = first; i < first + count; i++) {
+            int record = titlesOffset + i * TITLE_RECORD_SIZE;
+            if (buffer.getLong(record + 16) > epochDay) {
+                break;
+            }
+            if (buffer.getLong(record + 24) >= epochDay) {
+                result.add(Uuids.toDomsID(buffer.getLong(record), buffer.getLong(record + 8)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the version of the titles with the given avisID, as {@link TitleIntervalIndex#getVersion} computes it.
+     *
+     * @param avisID The avisID.
+     * @return The version of the titles, 0 if there are none.
+     */
+    public long getVersion(String avisID) {
+        int entry = find(avisID);
+        return entry < 0 ? 0 : buffer.getLong(entry + 16);
+    }
+
+    /**
+     * @return The version of all the titles in the snapshot, see {@link #versionOf}.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The time the titles were last verified to be the current titles, in milliseconds since the epoch, or 0
+     * if not known.
+     */
+    public long getVerifiedAt() {
+        return verifiedAt;
+    }
+
+    /**
+     * @return true if some editions affected by changes to the titles are not yet reconciled.
+     */
+    public boolean isPending() {
+        return pendingCount > 0;
+    }
+
+    /**
+     * Read the windows of editions affected by changes to the titles that are not yet reconciled.
+     *
+     * @return The pending windows.
+     */
+    public List<EditionWindow> getPendingWindows() {
+        List<EditionWindow> windows = new ArrayList<>(pendingCount);
+        for (int i = 0; i < pendingCount; i++) {
+            int entry = pendingOffset + i * PENDING_WINDOW_SIZE;
+            windows.add(new EditionWindow(new String(name(entry), StandardCharsets.UTF_8), buffer.getLong(entry + 8),
+                                          buffer.getLong(entry + 16)));
+        }
+        return windows;
+    }
+
+    /**
+     * @return The number of title records in the snapshot.
+     */
+    public int size() {
+        return titleCount;
+    }
+
+    /**
+     * Read all title records of the snapshot onto the heap.
+     *
+     * @return The title records, sorted by avisID and first day.
+     */
+    public List<TitleRecord> getTitles() {
+        List<TitleRecord> titles = new ArrayList<>(titleCount);
+        for (int i = 0; i < avisIDCount; i++) {
+            int entry = headerSize + i * AVIS_ID_ENTRY_SIZE;
+            String avisID = new String(name(entry), StandardCharsets.UTF_8);
+            int first = buffer.getInt(entry + 8);
+            int count = buffer.getInt(entry + 12);
+            for (int j = first; j < first + count; j++) {
+                int record = titlesOffset + j * TITLE_RECORD_SIZE;
+                titles.add(new TitleRecord(Uuids.toDomsID(buffer.getLong(record), buffer.getLong(record + 8)),
+                                           avisID, buffer.getLong(record + 16), buffer.getLong(record + 24)));
+            }
+        }
+        return titles;
+    }
+
+    /**
+     * Binary search the avisID table.
+     *
+     * @param avisID The avisID.
+     * @return The offset of the entry of the avisID, or -1 if the snapshot has no titles with the avisID.
+     */
+    private int find(String avisID) {
+        byte[] key = avisID.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = avisIDCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = headerSize + middle * AVIS_ID_ENTRY_SIZE;
+            int comparison = compareName(entry, key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compare the avisID of an entry to a key, in the order of {@link #UTF8_ORDER}, without copying the avisID.
+     */
+    private int compareName(int entry, byte[] key) {
+        int offset = buffer.getInt(entry);
+        int length = buffer.getInt(entry + 4);
+        for (int i = 0; i < length && i < key.length; i++) {
+            int difference = (buffer.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    private byte[] name(int entry) {
+        int offset = buffer.getInt(entry);
+        byte[] name = new byte[buffer.getInt(entry + 4)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = buffer.get(offset + i);
+        }
+        return name;
+    }
+}
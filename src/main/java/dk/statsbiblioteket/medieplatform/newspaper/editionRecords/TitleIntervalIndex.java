@@ -0,0 +1,143 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable in-memory index of newspaper title records. Title periods are kept per avisID as parallel arrays of
+ * epoch days, sorted by start day, so a lookup is a hash lookup on the avisID followed by a scan of a few primitive
+ * longs. An index can also answer lookups from a memory-mapped {@link TitleIndexSnapshot}, keeping no titles on the
+ * heap.
+ */
+public class TitleIntervalIndex {
+
+    private final Map<String, Intervals> intervalsByAvisID;
+    private final TitleIndexSnapshot snapshot;
+    private final int size;
+
+    /**
+     * Build an index of the given title records
+     *
+     * @param titles The title records to index.
+     */
+    public TitleIntervalIndex(Collection<TitleRecord> titles) {
+        Map<String, List<TitleRecord>> grouped = new HashMap<>();
+        for (TitleRecord title : titles) {
+            List<TitleRecord> group = grouped.get(title.getAvisID());
+            if (group == null) {
+                group = new ArrayList<>();
+                grouped.put(title.getAvisID(), group);
+            }
+            group.add(title);
+        }
+        intervalsByAvisID = new HashMap<>(grouped.size() * 2);
+        for (Map.Entry<String, List<TitleRecord>> entry : grouped.entrySet()) {
+            intervalsByAvisID.put(entry.getKey(), new Intervals(entry.getValue()));
+        }
+        size = titles.size();
+        snapshot = null;
+    }
+
+    /**
+     * Create an index answering lookups from a title snapshot
+     *
+     * @param snapshot The memory-mapped title snapshot.
+     */
+    public TitleIntervalIndex(TitleIndexSnapshot snapshot) {
+        this.intervalsByAvisID = Collections.emptyMap();
+        this.snapshot = snapshot;
+        this.size = snapshot.size();
+    }
+
+    /**
+     * Get the DOMS PIDs of all titles with the given avisID whose period contains the given day
+     *
+     * @param avisID The avisID the title should match.
+     * @param epochDay The day the title should match.
+     * @return DOMS PIDs of matching titles, in order of start day.
+     */
+    public List<String> lookup(String avisID, long epochDay) {
+        if (snapshot != null) {
+            return snapshot.lookup(avisID, epochDay);
+        }
+        Intervals intervals = intervalsByAvisID.get(avisID);
+        if (intervals == null) {
+            return Collections.emptyList();
+        }
+        return intervals.lookup(epochDay);
+    }
+
+    /**
+     * Get the version of the titles with the given avisID. The version is a hash of the DOMS PIDs and periods of the
+     * titles, independent of their order, so it changes when and only when a title with the avisID is added, removed
+     * or has its period changed, barring hash collisions.
+     *
+     * @param avisID The avisID.
+     * @return The version of the titles, 0 if there are none.
+     */
+    public long getVersion(String avisID) {
+        if (snapshot != null) {
+            return snapshot.getVersion(avisID);
+        }
+        Intervals intervals = intervalsByAvisID.get(avisID);
+        return intervals == null ? 0 : intervals.version;
+    }
+
+    /**
+     * @return The number of title records in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Title periods for one avisID, sorted by start day.
+     */
+    private static class Intervals {
+        private final long[] startDays;
+        private final long[] endDays;
+        private final String[] domsIDs;
+        private final long version;
+
+        Intervals(List<TitleRecord> titles) {
+            List<TitleRecord> sorted = new ArrayList<>(titles);
+            Collections.sort(sorted, new Comparator<TitleRecord>() {
+                @Override
+                public int compare(TitleRecord o1, TitleRecord o2) {
+                    return Long.compare(o1.getStartDay(), o2.getStartDay());
+                }
+            });
+            startDays = new long[sorted.size()];
+            endDays = new long[sorted.size()];
+            domsIDs = new String[sorted.size()];
+            for (int i = 0; i < sorted.size(); i++) {
+                startDays[i] = sorted.get(i).getStartDay();
+                endDays[i] = sorted.get(i).getEndDay();
+                domsIDs[i] = sorted.get(i).getDomsID();
+            }
+            long sum = 0;
+            for (TitleRecord title : titles) {
+                long hash = title.getDomsID().hashCode() * 0x9E3779B97F4A7C15L;
+                hash = (hash ^ title.getStartDay()) * 0xC2B2AE3D27D4EB4FL;
+                hash = (hash ^ title.getEndDay()) * 0x165667B19E3779F9L;
+                sum += hash ^ (hash >>> 29);
+            }
+            version = sum == 0 ? 1 : sum;
+        }
+
+        List<String> lookup(long epochDay) {
+            List<String> result = new ArrayList<>(2);
+            for (int i = 0; i < startDays.length && startDays[i] <= epochDay; i++) {
+                if (endDays[i] >= epochDay) {
+                    result.add(domsIDs[i]);
+                }
+            }
+            return result;
+        }
+    }
+}
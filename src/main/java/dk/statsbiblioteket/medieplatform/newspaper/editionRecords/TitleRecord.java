@@ -0,0 +1,63 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+/**
+ * A newspaper title record ("titelpost") as read from the index: the DOMS PID of the title object, the avisID it
+ * covers and the period it is valid in, as inclusive epoch days.
+ */
+public class TitleRecord {
+    private final String domsID;
+    private final String avisID;
+    private final long startDay;
+    private final long endDay;
+
+    public TitleRecord(String domsID, String avisID, long startDay, long endDay) {
+        this.domsID = domsID;
+        this.avisID = avisID;
+        this.startDay = startDay;
+        this.endDay = endDay;
+    }
+
+    public String getDomsID() {
+        return domsID;
+    }
+
+    public String getAvisID() {
+        return avisID;
+    }
+
+    public long getStartDay() {
+        return startDay;
+    }
+
+    public long getEndDay() {
+        return endDay;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TitleRecord)) {
+            return false;
+        }
+        TitleRecord that = (TitleRecord) o;
+        return startDay == that.startDay && endDay == that.endDay && domsID.equals(that.domsID) && avisID.equals(
+                that.avisID);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = domsID.hashCode();
+        result = 31 * result + avisID.hashCode();
+        result = 31 * result + (int) (startDay ^ (startDay >>> 32));
+        result = 31 * result + (int) (endDay ^ (endDay >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "TitleRecord{" + "domsID='" + domsID + '\'' + ", avisID='" + avisID + '\'' + ", startDay=" + startDay
+               + ", endDay=" + endDay + '}';
+    }
+}
@@ -0,0 +1,229 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import java.util.Arrays;
+
+/**
+ * Set of UUIDs stored as pairs of primitive longs, with open addressing and no per-element objects. Elements are
+ * kept in insertion order, and can be read back by their position in that order. The set can be cleared and reused
+ * without reallocation. PIDs are added by their key, see {@link Uuids#mostSignificantKeyBits}, so any PID can be
+ * added, and the same UUID in another case is the same element. A set can keep the PIDs as added, so they can be read
+ * back exactly, which a PID that is not a UUID PID, or is in upper case, needs.
+ */
+public class UuidSet {
+
+    private static final int FREE = -1;
+    private long[] mostSignificantBits;
+    private long[] leastSignificantBits;
+    private int[] table;
+    private String[] domsIDs;
+    private int size;
+
+    /**
+     * Create an empty set.
+     */
+    public UuidSet() {
+        this(16);
+    }
+
+    /**
+     * Create an empty set with room for the given number of elements before it grows.
+     *
+     * @param expectedSize The expected number of elements.
+     */
+    public UuidSet(int expectedSize) {
+        this(expectedSize, false);
+    }
+
+    /**
+     * Create an empty set with room for the given number of elements before it grows.
+     *
+     * @param expectedSize The expected number of elements.
+     * @param keepDomsIDs Whether to keep the PIDs added, for {@link #getDomsID}.
+     */
+    public UuidSet(int expectedSize, boolean keepDomsIDs) {
+        int capacity = Math.max(4, expectedSize);
+        mostSignificantBits = new long[capacity];
+        leastSignificantBits = new long[capacity];
+        table = new int[tableSize(capacity)];
+        Arrays.fill(table, FREE);
+        domsIDs = keepDomsIDs ? new String[capacity] : null;
+    }
+
+    /**
+     * Add the key of a DOMS PID to the set.
+     *
+     * @param domsID A DOMS PID.
+     * @return true if the key was not already in the set.
+     */
+    public boolean add(String domsID) {
+        return add(Uuids.mostSignificantKeyBits(domsID), Uuids.leastSignificantKeyBits(domsID), domsID);
+    }
+
+    /**
+     * Add the element at a position of another set to this set, with its PID if both sets keep PIDs.
+     *
+     * @param set The other set.
+     * @param index Position in insertion order in the other set.
+     * @return true if the element was not already in this set.
+     */
+    public boolean add(UuidSet set, int index) {
+        return add(set.mostSignificantBits[index], set.leastSignificantBits[index],
+                   set.domsIDs != null ? set.domsIDs[index] : null);
+    }
+
+    /**
+     * Add a UUID to the set.
+     *
+     * @param msb The most significant 64 bits of the UUID.
+     * @param lsb The least significant 64 bits of the UUID.
+     * @return true if the UUID was not already in the set.
+     */
+    public boolean add(long msb, long lsb) {
+        return add(msb, lsb, null);
+    }
+
+    private boolean add(long msb, long lsb, String domsID) {
+        int slot = find(msb, lsb);
+        if (table[slot] != FREE) {
+            return false;
+        }
+        if (size == mostSignificantBits.length) {
+            grow();
+            slot = find(msb, lsb);
+        }
+        mostSignificantBits[size] = msb;
+        leastSignificantBits[size] = lsb;
+        if (domsIDs != null) {
+            domsIDs[size] = domsID;
+        }
+        table[slot] = size;
+        size++;
+        return true;
+    }
+
+    /**
+     * @param msb The most significant 64 bits of a UUID.
+     * @param lsb The least significant 64 bits of a UUID.
+     * @return The position of the UUID in insertion order, or -1 if it is not in the set.
+     */
+    public int indexOf(long msb, long lsb) {
+        return table[find(msb, lsb)];
+    }
+
+    /**
+     * @param msb The most significant 64 bits of a UUID.
+     * @param lsb The least significant 64 bits of a UUID.
+     * @return true if the UUID is in the set.
+     */
+    public boolean contains(long msb, long lsb) {
+        return table[find(msb, lsb)] != FREE;
+    }
+
+    /**
+     * @param domsID A DOMS PID.
+     * @return true if the key of the PID is in the set.
+     */
+    public boolean contains(String domsID) {
+        return contains(Uuids.mostSignificantKeyBits(domsID), Uuids.leastSignificantKeyBits(domsID));
+    }
+
+    /**
+     * @return The number of UUIDs in the set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the set is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param index Position in insertion order, from 0 to size - 1.
+     * @return The most significant 64 bits of the UUID at the position.
+     */
+    public long mostSignificantBits(int index) {
+        return mostSignificantBits[index];
+    }
+
+    /**
+     * @param index Position in insertion order, from 0 to size - 1.
+     * @return The least significant 64 bits of the UUID at the position.
+     */
+    public long leastSignificantBits(int index) {
+        return leastSignificantBits[index];
+    }
+
+    /**
+     * @param index Position in insertion order, from 0 to size - 1.
+     * @return The DOMS PID at the position, as added if this set keeps PIDs, otherwise the PID of the UUID.
+     */
+    public String getDomsID(int index) {
+        if (domsIDs != null && domsIDs[index] != null) {
+            return domsIDs[index];
+        }
+        return Uuids.toDomsID(mostSignificantBits[index], leastSignificantBits[index]);
+    }
+
+    /**
+     * Remove all UUIDs, keeping the allocated capacity.
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(table, FREE);
+            if (domsIDs != null) {
+                Arrays.fill(domsIDs, 0, size, null);
+            }
+            size = 0;
+        }
+    }
+
+    /**
+     * Find the slot of a UUID in the hash table, or the free slot where it belongs.
+     */
+    private int find(long msb, long lsb) {
+        int mask = table.length - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            int index = table[slot];
+            if (index == FREE || (mostSignificantBits[index] == msb && leastSignificantBits[index] == lsb)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        int capacity = mostSignificantBits.length * 2;
+        mostSignificantBits = Arrays.copyOf(mostSignificantBits, capacity);
+        leastSignificantBits = Arrays.copyOf(leastSignificantBits, capacity);
+        if (domsIDs != null) {
+            domsIDs = Arrays.copyOf(domsIDs, capacity);
+        }
+        table = new int[tableSize(capacity)];
+        Arrays.fill(table, FREE);
+        int mask = table.length - 1;
+        for (int index = 0; index < size; index++) {
+            int slot = hash(mostSignificantBits[index], leastSignificantBits[index]) & mask;
+            while (table[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index;
+        }
+    }
+
+    /**
+     * @return A power of two at least twice the capacity, keeping the load factor at most 0.5.
+     */
+    private static int tableSize(int capacity) {
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ (lsb * 0x9E3779B97F4A7C15L)) * 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,136 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+/**
+ * Conversion between DOMS PIDs of the form "uuid:xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx" and the 128 bit UUID as two
+ * primitive longs, the most and the least significant half. The hex digits are read in any case, and written in lower
+ * case. For sets of PIDs that may hold other PIDs too, the key of a PID is its UUID, or a 128 bit hash of any other
+ * PID.
+ */
+public final class Uuids {
+
+    private static final String PREFIX = "uuid:";
+    private static final int LENGTH = PREFIX.length() + 36;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Uuids() {
+    }
+
+    /**
+     * @param domsID A DOMS PID.
+     * @return The most significant 64 bits of the UUID of the PID.
+     * @throws IllegalArgumentException if the PID is not a UUID PID.
+     */
+    public static long mostSignificantBits(String domsID) {
+        checkFormat(domsID);
+        return parseHex(domsID, PREFIX.length(), 8) << 32
+               | parseHex(domsID, PREFIX.length() + 9, 4) << 16
+               | parseHex(domsID, PREFIX.length() + 14, 4);
+    }
+
+    /**
+     * @param domsID A DOMS PID.
+     * @return The least significant 64 bits of the UUID of the PID.
+     * @throws IllegalArgumentException if the PID is not a UUID PID.
+     */
+    public static long leastSignificantBits(String domsID) {
+        checkFormat(domsID);
+        return parseHex(domsID, PREFIX.length() + 19, 4) << 48
+               | parseHex(domsID, PREFIX.length() + 24, 12);
+    }
+
+    /**
+     * @param domsID A DOMS PID.
+     * @return true if the PID is a UUID PID.
+     */
+    public static boolean isUuid(String domsID) {
+        if (domsID.length() != LENGTH || !domsID.regionMatches(true, 0, PREFIX, 0, PREFIX.length())) {
+            return false;
+        }
+        for (int i = PREFIX.length(); i < LENGTH; i++) {
+            int offset = i - PREFIX.length();
+            boolean dash = offset == 8 || offset == 13 || offset == 18 || offset == 23;
+            if (dash ? domsID.charAt(i) != '-' : Character.digit(domsID.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param domsID Any DOMS PID.
+     * @return The most significant 64 bits of the key of the PID: its UUID if it is a UUID PID, otherwise a hash of the
+     * PID.
+     */
+    public static long mostSignificantKeyBits(String domsID) {
+        return isUuid(domsID) ? mostSignificantBits(domsID) : hash(domsID, 0xCBF29CE484222325L);
+    }
+
+    /**
+     * @param domsID Any DOMS PID.
+     * @return The least significant 64 bits of the key of the PID: its UUID if it is a UUID PID, otherwise a hash of
+     * the PID.
+     */
+    public static long leastSignificantKeyBits(String domsID) {
+        return isUuid(domsID) ? leastSignificantBits(domsID) : hash(domsID, 0x84222325CBF29CE4L);
+    }
+
+    /**
+     * @param mostSignificantBits The most significant 64 bits of a UUID.
+     * @param leastSignificantBits The least significant 64 bits of a UUID.
+     * @return The DOMS PID of the UUID.
+     */
+    public static String toDomsID(long mostSignificantBits, long leastSignificantBits) {
+        char[] chars = new char[LENGTH];
+        PREFIX.getChars(0, PREFIX.length(), chars, 0);
+        int pos = PREFIX.length();
+        pos = appendHex(chars, pos, mostSignificantBits >>> 32, 8);
+        chars[pos++] = '-';
+        pos = appendHex(chars, pos, mostSignificantBits >>> 16, 4);
+        chars[pos++] = '-';
+        pos = appendHex(chars, pos, mostSignificantBits, 4);
+        chars[pos++] = '-';
+        pos = appendHex(chars, pos, leastSignificantBits >>> 48, 4);
+        chars[pos++] = '-';
+        appendHex(chars, pos, leastSignificantBits, 12);
+        return new String(chars);
+    }
+
+    private static void checkFormat(String domsID) {
+        if (!isUuid(domsID)) {
+            throw new IllegalArgumentException("Not a UUID PID: '" + domsID + "'");
+        }
+    }
+
+    private static long parseHex(String s, int start, int digits) {
+        long result = 0;
+        for (int i = start; i < start + digits; i++) {
+            int digit = Character.digit(s.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Not a UUID PID: '" + s + "'");
+            }
+            result = result << 4 | digit;
+        }
+        return result;
+    }
+
+    /**
+     * FNV-1a from the given offset basis, finished with the murmur3 fmix64 mixer.
+     */
+    private static long hash(String domsID, long offsetBasis) {
+        long hash = offsetBasis;
+        for (int i = 0; i < domsID.length(); i++) {
+            hash = (hash ^ domsID.charAt(i)) * 0x100000001B3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static int appendHex(char[] chars, int pos, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[pos + i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+        return pos + digits;
+    }
+}
@@ -0,0 +1,9 @@
+#!/bin/sh
+
+SCRIPT_DIR=$(dirname $(readlink -f $0))
+
+# Usage: daemon.sh
+# Polls SBOI until stopped with SIGTERM or SIGINT, which completes the run in progress first
+
+java -classpath "$SCRIPT_DIR/../conf:$SCRIPT_DIR/../lib/*" \
+   dk.statsbiblioteket.medieplatform.newspaper.editionRecords.EditionRecordRelationsDaemon $SCRIPT_DIR/../conf/config.properties
\ No newline at end of file
@@ -0,0 +1,7 @@
+#!/bin/sh
+
+SCRIPT_DIR=$(dirname $(readlink -f $0))
+
+# Usage: reconcileExport.sh export plan-file
+java -classpath "$SCRIPT_DIR/../conf:$SCRIPT_DIR/../lib/*" \
+   dk.statsbiblioteket.medieplatform.newspaper.editionRecords.EditionRecordRelationsExportReconciler $SCRIPT_DIR/../conf/config.properties "$@"
@@ -0,0 +1,41 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class AbortableHttpClientTest {
+
+    /**
+     * Test that aborting a handle aborts the request executed with it, and any request executed with it later, but
+     * not requests executed without it.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testAbort() throws Exception {
+        AbortableHttpClient httpClient = new AbortableHttpClient(mock(HttpClient.class));
+        HttpUriRequest executed = mock(HttpUriRequest.class);
+        HttpUriRequest executedAfterAbort = mock(HttpUriRequest.class);
+        HttpUriRequest executedWithoutHandle = mock(HttpUriRequest.class);
+        AbortableHttpClient.Handle handle = new AbortableHttpClient.Handle();
+
+        AbortableHttpClient.begin(handle);
+        try {
+            httpClient.execute(executed);
+            verify(executed, never()).abort();
+            handle.abort();
+            verify(executed).abort();
+            httpClient.execute(executedAfterAbort);
+            verify(executedAfterAbort).abort();
+        } finally {
+            AbortableHttpClient.end();
+        }
+        httpClient.execute(executedWithoutHandle);
+        verify(executedWithoutHandle, never()).abort();
+    }
+}
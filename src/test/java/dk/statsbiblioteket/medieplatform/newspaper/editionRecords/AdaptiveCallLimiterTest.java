@@ -0,0 +1,107 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.solr.common.SolrException;
+import org.testng.annotations.Test;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class AdaptiveCallLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Test that the limit grows while calls are fast and successful, and stays within the maximum.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIncrease() throws Exception {
+        AdaptiveCallLimiter limiter = new AdaptiveCallLimiter("test", 2, 10, 2, 1000);
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire();
+            limiter.release(FAST, null);
+        }
+        assertEquals(10, limiter.getLimit());
+    }
+
+    /**
+     * Test that the limit is cut on an overload failure, and never below the minimum.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDecrease() throws Exception {
+        AdaptiveCallLimiter limiter = new AdaptiveCallLimiter("test", 2, 10, 10, 1000);
+        limiter.acquire();
+        limiter.release(FAST, new BackendMethodFailedException("Conflict", new HttpFailure(409)));
+        assertEquals(7, limiter.getLimit());
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire();
+            limiter.release(TimeUnit.SECONDS.toNanos(2), null);
+        }
+        assertEquals(2, limiter.getLimit());
+    }
+
+    /**
+     * Test the classification of failures.
+     */
+    @Test
+    public void testIsOverload() {
+        assertTrue(AdaptiveCallLimiter.isOverload(new RuntimeException(new SocketTimeoutException("Read timed out"))));
+        assertTrue(AdaptiveCallLimiter.isOverload(new BackendMethodFailedException("Failed", new HttpFailure(503))));
+        assertTrue(AdaptiveCallLimiter.isOverload(new BackendMethodFailedException("Failed", new HttpFailure(429))));
+        assertTrue(AdaptiveCallLimiter.isOverload(new SolrException(SolrException.ErrorCode.CONFLICT, "Conflict")));
+        assertFalse(AdaptiveCallLimiter.isOverload(new BackendMethodFailedException("Not found",
+                                                                                    new HttpFailure(404))));
+        // Status codes in messages, e.g. in PIDs, are not statuses
+        assertFalse(AdaptiveCallLimiter.isOverload(new BackendMethodFailedException(
+                "Object uuid:50340912-4091-4503-a429-000000000503 not found")));
+        assertFalse(AdaptiveCallLimiter.isOverload(new SolrException(SolrException.ErrorCode.NOT_FOUND, "503")));
+        assertFalse(AdaptiveCallLimiter.isOverload(null));
+
+        // Timeouts and conflicts are overload, but not rejections, as the call may have been carried out or raced
+        assertFalse(AdaptiveCallLimiter.isRejected(new RuntimeException(new SocketTimeoutException("Read timed out"))));
+        assertFalse(AdaptiveCallLimiter.isRejected(new BackendMethodFailedException("Failed", new HttpFailure(409))));
+        assertTrue(AdaptiveCallLimiter.isRejected(new BackendMethodFailedException("Failed", new HttpFailure(503))));
+        assertTrue(AdaptiveCallLimiter.isRejected(new BackendMethodFailedException("Failed", new HttpFailure(429))));
+        assertFalse(AdaptiveCallLimiter.isRejected(null));
+    }
+
+    /**
+     * Failure of an HTTP client carrying the response, like those of the Jersey client.
+     */
+    public static class HttpFailure extends RuntimeException {
+        private final Response response;
+
+        HttpFailure(int status) {
+            super("Client response status: " + status);
+            this.response = new Response(status);
+        }
+
+        public Response getResponse() {
+            return response;
+        }
+    }
+
+    /**
+     * Response of an HTTP client.
+     */
+    public static class Response {
+        private final int status;
+
+        private Response(int status) {
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 10000;
+
+    /**
+     * Test that keys are spread about evenly, that every node computes the same assignment regardless of the order
+     * it learned about the nodes in, and that an empty ring assigns no node.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetNode() throws Exception {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c", "d"), 64);
+        ConsistentHashRing reordered = new ConsistentHashRing(Arrays.asList("d", "b", "a", "c"), 64);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            String node = ring.getNode("avis" + i);
+            assertEquals(node, reordered.getNode("avis" + i));
+            counts.put(node, counts.containsKey(node) ? counts.get(node) + 1 : 1);
+        }
+        assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            assertTrue("Uneven spread " + counts, count > KEYS / 4 / 2 && count < KEYS / 4 * 2);
+        }
+        assertNull(new ConsistentHashRing(Collections.<String>emptyList(), 64).getNode("avis"));
+    }
+
+    /**
+     * Test that when a node joins, keys only move to the new node, and about 1/n of them.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testNodeJoins() throws Exception {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 64);
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("a", "b", "c", "d"), 64);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String from = before.getNode("avis" + i);
+            String to = after.getNode("avis" + i);
+            if (!from.equals(to)) {
+                assertEquals("d", to);
+                moved++;
+            }
+        }
+        assertTrue("Moved " + moved, moved > KEYS / 4 / 2 && moved < KEYS / 4 * 2);
+    }
+}
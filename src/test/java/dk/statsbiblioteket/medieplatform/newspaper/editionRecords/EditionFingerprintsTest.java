@@ -0,0 +1,49 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class EditionFingerprintsTest {
+
+    private static final String DOMS_EDITION_ID1 = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+    private static final String DOMS_EDITION_ID2 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+
+    /**
+     * Test that an edition is unchanged only with the fingerprint it was recorded with, and that the fingerprints
+     * survive saving and reading the store, also beyond the initial capacity.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSaveAndRead() throws Exception {
+        File file = File.createTempFile("editions", ".fingerprints");
+        file.delete();
+        file.deleteOnExit();
+        long fingerprint = EditionFingerprints.fingerprint("avis", "1900-01-01", 42);
+        assertFalse(fingerprint == EditionFingerprints.fingerprint("avis", "1900-01-02", 42));
+        assertFalse(fingerprint == EditionFingerprints.fingerprint("avis", "1900-01-01", 43));
+        assertFalse(EditionFingerprints.fingerprint("ab", "c", 0) == EditionFingerprints.fingerprint("a", "bc", 0));
+
+        EditionFingerprints fingerprints = new EditionFingerprints(file);
+        assertFalse(fingerprints.isUnchanged(DOMS_EDITION_ID1, fingerprint));
+        fingerprints.put(DOMS_EDITION_ID1, fingerprint);
+        fingerprints.put(DOMS_EDITION_ID2, 1);
+        fingerprints.put(DOMS_EDITION_ID2, 2);
+        for (int i = 0; i < 5000; i++) {
+            fingerprints.put(Uuids.toDomsID(i, i), i);
+        }
+        fingerprints.save();
+
+        EditionFingerprints read = new EditionFingerprints(file);
+        assertEquals(5002, read.size());
+        assertTrue(read.isUnchanged(DOMS_EDITION_ID1, fingerprint));
+        assertFalse(read.isUnchanged(DOMS_EDITION_ID2, 1));
+        assertTrue(read.isUnchanged(DOMS_EDITION_ID2, 2));
+        assertTrue(read.isUnchanged(Uuids.toDomsID(4999, 4999), 4999));
+    }
+}
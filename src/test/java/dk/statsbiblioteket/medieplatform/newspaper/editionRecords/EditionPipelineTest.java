@@ -0,0 +1,192 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.FedoraRelation;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+import dk.statsbiblioteket.medieplatform.autonomous.ItemFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class EditionPipelineTest {
+
+    private static final String URI_PREFIX = "info:fedora/";
+    private static final String PREDICATE = "http://doms.statsbiblioteket.dk/relations/default/0/1/#isPartOfNewspaper";
+    private static final String DOMS_EDITION_ID1 = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+    private static final String DOMS_EDITION_ID2 = "uuid:5b5e3c2e-8d1f-4d43-9f0e-2a4c7d8b9e10";
+    private static final String DOMS_EDITION_ID3 = "uuid:c2f1a0d4-6b7e-4f3a-8c9d-1e2f3a4b5c6d";
+    private static final String DOMS_TITLE_ID1 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String DOMS_TITLE_ID2 = "uuid:781732b1-ca9a-46d4-94cd-ae1c0b7f1ebf";
+    private static final String MESSAGE = "linking to";
+    private static final String NEWSPAPERID = "avis";
+    private static final String EDITION_DATASTREAM_NAME = "EDITION";
+
+    /**
+     * Test that editions streamed through the pipeline each get their relations reconciled, with one thread per
+     * stage and room for one edition in each queue, so stages wait for each other.
+     *
+     * Edition 1 lacks a relation, edition 2 has a superfluous one, edition 3 is reconciled already.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSubmit() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        mockEdition(enhancedFedoraMock, DOMS_EDITION_ID1, "1970-01-01");
+        mockEdition(enhancedFedoraMock, DOMS_EDITION_ID2, "1970-01-05", DOMS_TITLE_ID1, DOMS_TITLE_ID2);
+        mockEdition(enhancedFedoraMock, DOMS_EDITION_ID3, "1970-01-01", DOMS_TITLE_ID1);
+        EditionPipeline pipeline = new EditionPipeline(createMaintainer(enhancedFedoraMock), threads(1), 1);
+        RecordingListener listener = new RecordingListener();
+        try {
+            for (String domsID : Arrays.asList(DOMS_EDITION_ID1, DOMS_EDITION_ID2, DOMS_EDITION_ID3)) {
+                pipeline.submit(domsID, listener);
+            }
+            pipeline.awaitCompletion();
+        } finally {
+            pipeline.close();
+        }
+
+        assertEquals(3, listener.completed.size());
+        assertTrue(listener.failed.isEmpty());
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID1, URI_PREFIX + DOMS_EDITION_ID1, PREDICATE,
+                                               URI_PREFIX + DOMS_TITLE_ID1, false, MESSAGE);
+        verify(enhancedFedoraMock).deleteRelation(DOMS_EDITION_ID2, URI_PREFIX + DOMS_EDITION_ID2, PREDICATE,
+                                                  URI_PREFIX + DOMS_TITLE_ID1, false, MESSAGE);
+        verify(enhancedFedoraMock, never()).addRelation(DOMS_EDITION_ID3, URI_PREFIX + DOMS_EDITION_ID3, PREDICATE,
+                                                        URI_PREFIX + DOMS_TITLE_ID1, false, MESSAGE);
+    }
+
+    /**
+     * Test that an edition failing in one stage is reported to the listener, while the others are still reconciled.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSubmitFailure() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        mockEdition(enhancedFedoraMock, DOMS_EDITION_ID1, "1970-01-01");
+        mockEdition(enhancedFedoraMock, DOMS_EDITION_ID2, "1970-01-01");
+        BackendMethodFailedException failure = new BackendMethodFailedException("Failed");
+        when(enhancedFedoraMock.getNamedRelations(DOMS_EDITION_ID2, PREDICATE, null)).thenThrow(failure);
+        RunnableEditionRecordRelationsMaintainer maintainer = createMaintainer(enhancedFedoraMock);
+        EditionPipeline pipeline = new EditionPipeline(maintainer, threads(2), 10);
+        RecordingListener listener = new RecordingListener();
+        try {
+            pipeline.submit(DOMS_EDITION_ID1, listener);
+            pipeline.submit(DOMS_EDITION_ID2, listener);
+            pipeline.awaitCompletion();
+        } finally {
+            pipeline.close();
+        }
+
+        assertEquals(Collections.singletonList(DOMS_EDITION_ID1), listener.completed);
+        assertEquals(failure, listener.failed.get(DOMS_EDITION_ID2));
+        assertEquals(1, maintainer.getMetrics().getItemsProcessed());
+        assertEquals(1, maintainer.getMetrics().getItemsFailed());
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID1, URI_PREFIX + DOMS_EDITION_ID1, PREDICATE,
+                                               URI_PREFIX + DOMS_TITLE_ID1, false, MESSAGE);
+    }
+
+    /**
+     * Test that an edition submitted to a closed pipeline is told failed and is not left pending.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSubmitClosed() throws Exception {
+        EditionPipeline pipeline = new EditionPipeline(createMaintainer(mock(EnhancedFedora.class)), threads(1), 1);
+        RecordingListener listener = new RecordingListener();
+        pipeline.close();
+        pipeline.submit(DOMS_EDITION_ID1, listener);
+        pipeline.awaitCompletion();
+
+        assertTrue(listener.completed.isEmpty());
+        assertTrue(listener.failed.get(DOMS_EDITION_ID1) instanceof RejectedExecutionException);
+    }
+
+    /**
+     * Create a maintainer with title 1 of the newspaper covering day 0 to 10, and title 2 covering day 5 onwards.
+     *
+     * @param enhancedFedoraMock The DOMS to reconcile the editions of.
+     * @return The maintainer.
+     */
+    private RunnableEditionRecordRelationsMaintainer createMaintainer(EnhancedFedora enhancedFedoraMock) {
+        NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
+        when(newspaperIndexMock.getTitleIntervals(NEWSPAPERID)).thenReturn(new TitleIntervalIndex(Arrays.asList(
+                new TitleRecord(DOMS_TITLE_ID1, NEWSPAPERID, 0, 3),
+                new TitleRecord(DOMS_TITLE_ID2, NEWSPAPERID, 4, 100))));
+        @SuppressWarnings("unchecked")
+        ItemFactory<Item> itemFactoryMock = mock(ItemFactory.class);
+        return new RunnableEditionRecordRelationsMaintainer(new Properties(), enhancedFedoraMock, itemFactoryMock,
+                                                            newspaperIndexMock);
+    }
+
+    /**
+     * @param threads The number of threads.
+     * @return The same number of threads for every stage.
+     */
+    private Map<EditionPipeline.Stage, Integer> threads(int threads) {
+        Map<EditionPipeline.Stage, Integer> result = new EnumMap<>(EditionPipeline.Stage.class);
+        for (EditionPipeline.Stage stage : EditionPipeline.Stage.values()) {
+            result.put(stage, threads);
+        }
+        return result;
+    }
+
+    /**
+     * Mock the MODS and relations of an edition.
+     *
+     * @param enhancedFedoraMock The mock Fedora.
+     * @param domsID The DOMS PID of the edition.
+     * @param date The issue date of the edition.
+     * @param uuids The titles the edition has relations to.
+     * @throws Exception never.
+     */
+    private void mockEdition(EnhancedFedora enhancedFedoraMock, String domsID, String date, String... uuids)
+            throws Exception {
+        when(enhancedFedoraMock.getXMLDatastreamContents(domsID, EDITION_DATASTREAM_NAME)).thenReturn(
+                String.format("<mods xmlns=\"http://www.loc.gov/mods/v3\">"
+                              + "<titleInfo type=\"uniform\"><title>%s</title></titleInfo>"
+                              + "<originInfo><dateIssued>%s</dateIssued></originInfo></mods>", NEWSPAPERID, date));
+        List<FedoraRelation> relations = new ArrayList<>();
+        for (String uuid : uuids) {
+            relations.add(new FedoraRelation(URI_PREFIX + domsID, PREDICATE, URI_PREFIX + uuid));
+        }
+        when(enhancedFedoraMock.getNamedRelations(domsID, PREDICATE, null)).thenReturn(relations);
+    }
+
+    /**
+     * Listener recording the editions completed and failed.
+     */
+    private static class RecordingListener implements EditionPipeline.Listener {
+        private final List<String> completed = Collections.synchronizedList(new ArrayList<String>());
+        private final Map<String, Exception> failed = new ConcurrentHashMap<>();
+
+        @Override
+        public void completed(String domsID) {
+            completed.add(domsID);
+        }
+
+        @Override
+        public void failed(String domsID, Exception cause) {
+            failed.put(domsID, cause);
+        }
+    }
+}
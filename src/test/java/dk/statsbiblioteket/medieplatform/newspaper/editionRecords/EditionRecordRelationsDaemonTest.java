@@ -0,0 +1,97 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import dk.statsbiblioteket.medieplatform.autonomous.CallResult;
+import dk.statsbiblioteket.medieplatform.autonomous.Item;
+
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class EditionRecordRelationsDaemonTest {
+
+    /**
+     * Test that the daemon keeps running the component after a failed run, and that shutdown waits for the run in
+     * progress and stops further runs.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRunUntilShutdown() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch threeRuns = new CountDownLatch(3);
+        final EditionRecordRelationsDaemon daemon = new EditionRecordRelationsDaemon(new Properties(), null, null, 1) {
+            @Override
+            protected CallResult<Item> runComponent() throws Exception {
+                runs.incrementAndGet();
+                threeRuns.countDown();
+                if (runs.get() == 2) {
+                    throw new RuntimeException("SBOI unavailable");
+                }
+                return null;
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> result = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    try {
+                        return daemon.run();
+                    } finally {
+                        daemon.stopped();
+                    }
+                }
+            });
+            assertTrue(threeRuns.await(10, TimeUnit.SECONDS));
+            daemon.shutdown();
+            assertEquals(1, (int) result.get(1, TimeUnit.SECONDS));
+            int runsAtShutdown = runs.get();
+            Thread.sleep(20);
+            assertEquals(runsAtShutdown, runs.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test that shutdown waits for the daemon to be stopped, after the run has returned.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testShutdownWaitsForStopped() throws Exception {
+        final EditionRecordRelationsDaemon daemon = new EditionRecordRelationsDaemon(new Properties(), null, null, 1) {
+            @Override
+            protected CallResult<Item> runComponent() throws Exception {
+                return null;
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> shutdown = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    daemon.shutdown();
+                }
+            });
+            assertEquals(0, daemon.run());
+            Thread.sleep(20);
+            assertFalse(shutdown.isDone());
+            daemon.stopped();
+            shutdown.get(1, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
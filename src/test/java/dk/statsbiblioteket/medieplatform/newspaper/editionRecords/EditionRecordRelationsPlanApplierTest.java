@@ -0,0 +1,68 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.testng.AssertJUnit.assertEquals;
+
+public class EditionRecordRelationsPlanApplierTest {
+
+    /**
+     * Test that changes written to a plan are applied as planned, and that failed editions are counted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPlanAndApply() throws Exception {
+        File file = File.createTempFile("relations", ".plan");
+        file.deleteOnExit();
+        RelationPlanWriter planWriter = new RelationPlanWriter(file);
+        planWriter.updateRelations("uuid:edition1", Arrays.asList("uuid:title1", "uuid:title2"),
+                                   Collections.singletonList("uuid:title3"));
+        planWriter.updateRelations("uuid:edition2", Collections.<String>emptyList(),
+                                   Collections.singletonList("uuid:title4"));
+        planWriter.updateRelations("uuid:edition3", Collections.singletonList("uuid:title5"),
+                                   Collections.<String>emptyList());
+        planWriter.close();
+
+        RelationsWriter relationsWriter = mock(RelationsWriter.class);
+        doThrow(new RuntimeException("Failed")).when(relationsWriter)
+                .updateRelations("uuid:edition3", Collections.singletonList("uuid:title5"),
+                                 Collections.<String>emptyList());
+        EditionRecordsMetrics metrics = new EditionRecordsMetrics();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        int failures;
+        try (BufferedReader plan = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                                                                            StandardCharsets.UTF_8))) {
+            failures = new EditionRecordRelationsPlanApplier(relationsWriter, metrics, executor, 2).apply(plan);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, failures);
+        verify(relationsWriter).updateRelations("uuid:edition1", Arrays.asList("uuid:title1", "uuid:title2"),
+                                                Collections.singletonList("uuid:title3"));
+        verify(relationsWriter).updateRelations("uuid:edition2", Collections.<String>emptyList(),
+                                                Collections.singletonList("uuid:title4"));
+        verify(relationsWriter).updateRelations("uuid:edition3", Collections.singletonList("uuid:title5"),
+                                                Collections.<String>emptyList());
+        verifyNoMoreInteractions(relationsWriter);
+        assertEquals(2, metrics.getItemsProcessed());
+        assertEquals(1, metrics.getItemsFailed());
+        assertEquals(2, metrics.getRelationsAdded());
+        assertEquals(2, metrics.getRelationsRemoved());
+    }
+}
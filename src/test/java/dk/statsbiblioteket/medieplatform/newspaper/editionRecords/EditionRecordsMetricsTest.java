@@ -0,0 +1,107 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+public class EditionRecordsMetricsTest {
+
+    /**
+     * Test that latencies are counted in the right buckets and percentiles are estimated from the bucket bounds.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHistogram() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(100, histogram.getCount());
+        // 3 ms falls in the bucket up to 4096 microseconds, 100 ms in the bucket up to 131072 microseconds
+        assertEquals(99, histogram.getBucketCount(12));
+        assertEquals(1, histogram.getBucketCount(17));
+        assertEquals(4.096, histogram.getMedianMillis(), 0.0001);
+        assertEquals(4.096, histogram.get99thPercentileMillis(), 0.0001);
+        assertEquals(100.0, histogram.getPercentileMillis(1.0), 0.0001);
+        assertEquals(100.0, histogram.getMaxMillis(), 0.0001);
+        assertEquals(3.97, histogram.getMeanMillis(), 0.0001);
+    }
+
+    /**
+     * Test that counters and histograms are written in the Prometheus text format.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWritePrometheus() throws Exception {
+        EditionRecordsMetrics metrics = new EditionRecordsMetrics();
+        metrics.itemsDone(3, 1);
+        metrics.relationsChanged(2, 1);
+        metrics.stateChanged("I");
+        metrics.stateChanged("A");
+        RetryBudget retryBudget = new RetryBudget(0.1, 10, 100);
+        metrics.addRetryBudget(retryBudget);
+        retryBudget.tryRetry();
+        metrics.getLatency(EditionRecordsMetrics.Phase.RELATIONS_READ).record(TimeUnit.MILLISECONDS.toNanos(3));
+
+        StringWriter text = new StringWriter();
+        metrics.writePrometheus(text);
+        String output = text.toString();
+        assertTrue(output.contains("edition_records_items_processed_total 3\n"));
+        assertTrue(output.contains("edition_records_items_failed_total 1\n"));
+        assertTrue(output.contains("edition_records_relations_added_total 2\n"));
+        assertTrue(output.contains("edition_records_relations_removed_total 1\n"));
+        assertTrue(output.contains("edition_records_editions_unpublished_total 1\n"));
+        assertTrue(output.contains("edition_records_editions_published_total 1\n"));
+        assertTrue(output.contains("edition_records_retries_total 1\n"));
+        assertTrue(output.contains(
+                "edition_records_phase_duration_seconds_bucket{phase=\"relations_read\",le=\"0.002048\"} 0\n"));
+        assertTrue(output.contains(
+                "edition_records_phase_duration_seconds_bucket{phase=\"relations_read\",le=\"0.004096\"} 1\n"));
+        assertTrue(output.contains(
+                "edition_records_phase_duration_seconds_bucket{phase=\"relations_read\",le=\"+Inf\"} 1\n"));
+        assertTrue(output.contains("edition_records_phase_duration_seconds_count{phase=\"item\"} 0\n"));
+    }
+
+    /**
+     * Test that the latency of DOMS calls is recorded whether they succeed or fail, while state changes are only
+     * counted when they succeed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMeteredFedora() throws Exception {
+        EditionRecordsMetrics metrics = new EditionRecordsMetrics();
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        doThrow(new BackendMethodFailedException("Failed")).when(enhancedFedoraMock)
+                                                           .modifyObjectState("uuid:edition", "I", "comment");
+        EnhancedFedora metered = MeteredFedora.wrap(enhancedFedoraMock, metrics);
+
+        try {
+            metered.modifyObjectState("uuid:edition", "I", "comment");
+            fail("Expected the failure to be passed on");
+        } catch (BackendMethodFailedException e) {
+            // Expected
+        }
+        metered.modifyObjectState("uuid:edition", "A", "comment");
+
+        assertEquals(2, metrics.getLatency(EditionRecordsMetrics.Phase.STATE_CHANGE).getCount());
+        StringWriter text = new StringWriter();
+        metrics.writePrometheus(text);
+        String output = text.toString();
+        assertTrue(output.contains("edition_records_editions_unpublished_total 0\n"));
+        assertTrue(output.contains("edition_records_editions_published_total 1\n"));
+    }
+}
@@ -0,0 +1,43 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Properties;
+
+import static org.testng.AssertJUnit.fail;
+
+public class EditionRecordsResourcesTest {
+
+    /**
+     * Test that the resources opened before one that fails to open are closed again, here the metrics server
+     * started before the journal, so its port is free afterwards.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOpenFailureClosesOpened() throws Exception {
+        InetAddress host = InetAddress.getByName("127.0.0.1");
+        int port;
+        try (ServerSocket socket = new ServerSocket(0, 1, host)) {
+            port = socket.getLocalPort();
+        }
+        File missingDirectory = File.createTempFile("resources", ".dir");
+        missingDirectory.delete();
+        Properties properties = new Properties();
+        properties.setProperty(EditionRecordsConfigConstants.METRICS_HTTP_PORT, Integer.toString(port));
+        properties.setProperty(EditionRecordsConfigConstants.JOURNAL_FILE,
+                               new File(missingDirectory, "relations.journal").getPath());
+
+        try {
+            EditionRecordsResources.open(properties);
+            fail("Expected the journal to fail to open");
+        } catch (IOException e) {
+            // Expected
+        }
+        new ServerSocket(port, 1, host).close();
+    }
+}
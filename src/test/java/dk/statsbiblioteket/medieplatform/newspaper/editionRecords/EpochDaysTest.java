@@ -0,0 +1,50 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+public class EpochDaysTest {
+
+    private static final String DOMS_TITLE_ID = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+
+    /**
+     * Test that a title boundary stored at local midnight falls on the day of that midnight, whether the index gives
+     * it as a date or as a timestamp, so it matches the editions issued on its first and last day.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLocalMidnightBoundary() throws Exception {
+        long startDay = EpochDays.parse("1900-01-01");
+        long endDay = EpochDays.parse("1950-06-30");
+        Date start = localMidnight(1900, 1, 1);
+        Date end = localMidnight(1950, 6, 30);
+
+        assertEquals(startDay, EpochDays.of(start));
+        assertEquals(endDay, EpochDays.of(end));
+        assertEquals(startDay, EpochDays.of("1899-12-31T23:00:00Z"));
+        assertEquals(endDay, EpochDays.of("1950-06-29T23:00:00.000Z"));
+        assertEquals(EpochDays.parse("1970-01-01"), EpochDays.of("1970-01-01T01:00:00.000+01:00"));
+        assertEquals(startDay, EpochDays.of("1900-01-01"));
+
+        TitleIntervalIndex index = new TitleIntervalIndex(Arrays.asList(
+                new TitleRecord(DOMS_TITLE_ID, "avis", EpochDays.of(start), EpochDays.of(end))));
+        assertEquals(Collections.singletonList(DOMS_TITLE_ID), index.lookup("avis", EpochDays.parse("1900-01-01")));
+        assertEquals(Collections.singletonList(DOMS_TITLE_ID), index.lookup("avis", EpochDays.parse("1950-06-30")));
+        assertEquals(Collections.emptyList(), index.lookup("avis", EpochDays.parse("1899-12-31")));
+        assertEquals(Collections.emptyList(), index.lookup("avis", EpochDays.parse("1950-07-01")));
+    }
+
+    private static Date localMidnight(int year, int month, int day) {
+        GregorianCalendar calendar = new GregorianCalendar(EpochDays.ZONE);
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar.getTime();
+    }
+}
@@ -0,0 +1,146 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+public class FoxmlEditionReaderTest {
+
+    private static final String RELS_EXT_VERSION = "<foxml:datastreamVersion ID=\"RELS-EXT.%d\"><foxml:xmlContent>"
+            + "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" "
+            + "xmlns:doms=\"http://doms.statsbiblioteket.dk/relations/default/0/1/#\">"
+            + "<rdf:Description rdf:about=\"info:fedora/%s\">"
+            + "<doms:hasModel rdf:resource=\"info:fedora/doms:ContentModel_Edition\"/>%s"
+            + "</rdf:Description></rdf:RDF></foxml:xmlContent></foxml:datastreamVersion>";
+
+    private static final String RELATION = "<doms:isPartOfNewspaper rdf:resource=\"info:fedora/%s\"/>";
+
+    private static final String EDITION_VERSION = "<foxml:datastreamVersion ID=\"EDITION.0\"><foxml:xmlContent>"
+            + "<mods xmlns=\"http://www.loc.gov/mods/v3\"><titleInfo type=\"uniform\"><title>%s</title></titleInfo>"
+            + "<originInfo><dateIssued>%s</dateIssued></originInfo><part/></mods>"
+            + "</foxml:xmlContent></foxml:datastreamVersion>";
+
+    /**
+     * Test that editions are read with the latest relations, and that deleted objects and objects without an EDITION
+     * datastream are skipped.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRead() throws Exception {
+        String foxml = "<export xmlns:foxml=\"info:fedora/fedora-system:def/foxml#\">"
+                + object("uuid:edition1", "Active",
+                         "<foxml:datastream ID=\"RELS-EXT\" CONTROL_GROUP=\"X\">"
+                         + String.format(RELS_EXT_VERSION, 0, "uuid:edition1", String.format(RELATION, "uuid:title1"))
+                         + String.format(RELS_EXT_VERSION, 1, "uuid:edition1",
+                                         String.format(RELATION, "uuid:title2") + String.format(RELATION, "uuid:title3"))
+                         + "</foxml:datastream>"
+                         + "<foxml:datastream ID=\"EDITION\" CONTROL_GROUP=\"X\">"
+                         + String.format(EDITION_VERSION, "adresseavisen1759", "1795-06-13")
+                         + "</foxml:datastream>")
+                + object("uuid:edition2", "Deleted",
+                         "<foxml:datastream ID=\"EDITION\" CONTROL_GROUP=\"X\">"
+                         + String.format(EDITION_VERSION, "adresseavisen1759", "1795-06-14")
+                         + "</foxml:datastream>")
+                + object("uuid:title1", "Active",
+                         "<foxml:datastream ID=\"RELS-EXT\" CONTROL_GROUP=\"X\">"
+                         + String.format(RELS_EXT_VERSION, 0, "uuid:title1", "")
+                         + "</foxml:datastream>")
+                + object("uuid:edition3", "Active",
+                         "<foxml:datastream ID=\"EDITION\" CONTROL_GROUP=\"X\">"
+                         + String.format(EDITION_VERSION, "adresseavisen1759", "1795-06-15")
+                         + "</foxml:datastream>")
+                + "</export>";
+
+        final List<String> editions = new ArrayList<>();
+        int count = new FoxmlEditionReader(RunnableEditionRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION)
+                .read(new ByteArrayInputStream(foxml.getBytes(StandardCharsets.UTF_8)),
+                      new FoxmlEditionReader.EditionHandler() {
+                          @Override
+                          public void edition(String domsID, EditionMetadata edition,
+                                              List<String> titlesWithRelation) {
+                              editions.add(domsID + " " + edition.getAvisID() + " " + edition.getDateIssued() + " "
+                                           + titlesWithRelation);
+                          }
+                      });
+
+        assertEquals(2, count);
+        assertEquals(Arrays.asList("uuid:edition1 adresseavisen1759 1795-06-13 [uuid:title2, uuid:title3]",
+                                   "uuid:edition3 adresseavisen1759 1795-06-15 []"), editions);
+    }
+
+    /**
+     * Test that deleted and inactive datastreams are skipped, that the version created last is the current one
+     * whatever its place, and that editions whose EDITION datastream is not inline are skipped and counted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReadStatesVersionsAndControlGroups() throws Exception {
+        String foxml = "<export xmlns:foxml=\"info:fedora/fedora-system:def/foxml#\">"
+                + object("uuid:edition1", "Active",
+                         "<foxml:datastream ID=\"RELS-EXT\" STATE=\"A\" CONTROL_GROUP=\"X\">"
+                         + created(String.format(RELS_EXT_VERSION, 1, "uuid:edition1",
+                                                 String.format(RELATION, "uuid:title2")), "2014-02-03T10:00:00.5Z")
+                         + created(String.format(RELS_EXT_VERSION, 0, "uuid:edition1",
+                                                 String.format(RELATION, "uuid:title1")), "2014-02-03T10:00:00Z")
+                         + "</foxml:datastream>"
+                         + "<foxml:datastream ID=\"EDITION\" STATE=\"A\" CONTROL_GROUP=\"X\">"
+                         + String.format(EDITION_VERSION, "adresseavisen1759", "1795-06-13")
+                         + "</foxml:datastream>")
+                + object("uuid:edition2", "Active",
+                         "<foxml:datastream ID=\"EDITION\" STATE=\"D\" CONTROL_GROUP=\"X\">"
+                         + String.format(EDITION_VERSION, "adresseavisen1759", "1795-06-14")
+                         + "</foxml:datastream>")
+                + object("uuid:edition3", "Active",
+                         "<foxml:datastream ID=\"RELS-EXT\" STATE=\"I\" CONTROL_GROUP=\"X\">"
+                         + String.format(RELS_EXT_VERSION, 0, "uuid:edition3", String.format(RELATION, "uuid:title1"))
+                         + "</foxml:datastream>"
+                         + "<foxml:datastream ID=\"EDITION\" CONTROL_GROUP=\"X\">"
+                         + String.format(EDITION_VERSION, "adresseavisen1759", "1795-06-15")
+                         + "</foxml:datastream>")
+                + object("uuid:edition4", "Active",
+                         "<foxml:datastream ID=\"EDITION\" STATE=\"A\" CONTROL_GROUP=\"M\">"
+                         + "<foxml:datastreamVersion ID=\"EDITION.0\"><foxml:contentLocation TYPE=\"INTERNAL_ID\" "
+                         + "REF=\"uuid:edition4+EDITION+EDITION.0\"/></foxml:datastreamVersion>"
+                         + "</foxml:datastream>")
+                + "</export>";
+
+        final List<String> editions = new ArrayList<>();
+        FoxmlEditionReader reader
+                = new FoxmlEditionReader(RunnableEditionRecordRelationsMaintainer.EDITION_TO_NEWSPAPER_RELATION);
+        int count = reader.read(new ByteArrayInputStream(foxml.getBytes(StandardCharsets.UTF_8)),
+                                new FoxmlEditionReader.EditionHandler() {
+                                    @Override
+                                    public void edition(String domsID, EditionMetadata edition,
+                                                        List<String> titlesWithRelation) {
+                                        editions.add(domsID + " " + edition.getDateIssued() + " "
+                                                     + titlesWithRelation);
+                                    }
+                                });
+
+        assertEquals(2, count);
+        assertEquals(Arrays.asList("uuid:edition1 1795-06-13 [uuid:title2]", "uuid:edition3 1795-06-15 []"),
+                     editions);
+        assertEquals(1, reader.getNotInline());
+    }
+
+    private static String created(String version, String created) {
+        return version.replaceFirst("<foxml:datastreamVersion ",
+                                    "<foxml:datastreamVersion CREATED=\"" + created + "\" ");
+    }
+
+    private static String object(String domsID, String state, String datastreams) {
+        return "<foxml:digitalObject VERSION=\"1.1\" PID=\"" + domsID + "\">"
+               + "<foxml:objectProperties><foxml:property NAME=\"info:fedora/fedora-system:def/model#state\" VALUE=\""
+               + state + "\"/></foxml:objectProperties>"
+               + datastreams
+               + "</foxml:digitalObject>";
+    }
+}
@@ -0,0 +1,124 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+public class HedgedSolrServerTest {
+
+    private static final SolrRequest REQUEST = new QueryRequest(new ModifiableSolrParams());
+
+    /**
+     * Test that once enough latencies are seen, a query slower than the percentile is hedged to the other endpoint,
+     * whose answer is used.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHedge() throws Exception {
+        FakeSolrServer primary = new FakeSolrServer("primary");
+        FakeSolrServer secondary = new FakeSolrServer("secondary");
+        EditionRecordsMetrics metrics = new EditionRecordsMetrics();
+        HedgedSolrServer solrServer = new HedgedSolrServer(Arrays.<SolrServer>asList(primary, secondary), 10000, 0.9,
+                                                           new RetryBudget(0.1, 10, 0), metrics, 4);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("primary", solrServer.request(REQUEST).get("endpoint"));
+        }
+        assertEquals(0, metrics.getSboiHedges());
+
+        primary.delayMillis = 5000;
+        long start = System.nanoTime();
+        assertEquals("secondary", solrServer.request(REQUEST).get("endpoint"));
+        assertTrue(System.nanoTime() - start < 2000000000L);
+        assertEquals(1, metrics.getSboiHedges());
+        assertEquals(1, metrics.getSboiHedgesWon());
+    }
+
+    /**
+     * Test that hedges are limited by the budget, so a slow endpoint is not hit with twice the queries.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testHedgeBudget() throws Exception {
+        FakeSolrServer primary = new FakeSolrServer("primary");
+        FakeSolrServer secondary = new FakeSolrServer("secondary");
+        EditionRecordsMetrics metrics = new EditionRecordsMetrics();
+        HedgedSolrServer solrServer = new HedgedSolrServer(Arrays.<SolrServer>asList(primary, secondary), 10000, 0.9,
+                                                           new RetryBudget(0, 1, 0), metrics, 4);
+        for (int i = 0; i < 100; i++) {
+            solrServer.request(REQUEST);
+        }
+
+        primary.delayMillis = 100;
+        for (int i = 0; i < 3; i++) {
+            solrServer.request(REQUEST);
+        }
+        assertEquals(1, metrics.getSboiHedges());
+        assertEquals(1, secondary.requests.get());
+    }
+
+    /**
+     * Test that a query not answered within the deadline fails.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDeadline() throws Exception {
+        FakeSolrServer primary = new FakeSolrServer("primary");
+        primary.delayMillis = 5000;
+        HedgedSolrServer solrServer = new HedgedSolrServer(Collections.<SolrServer>singletonList(primary), 100, 0,
+                                                           new RetryBudget(0.1, 10, 0), new EditionRecordsMetrics(),
+                                                           4);
+        long start = System.nanoTime();
+        try {
+            solrServer.request(REQUEST);
+            fail("Expected the deadline to pass");
+        } catch (SolrServerException e) {
+            assertTrue(System.nanoTime() - start < 2000000000L);
+        }
+    }
+
+    /**
+     * Endpoint answering with its name after a delay.
+     */
+    private static class FakeSolrServer extends SolrServer {
+        private final String name;
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile long delayMillis;
+
+        private FakeSolrServer(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException {
+            requests.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                throw new SolrServerException("Interrupted", e);
+            }
+            NamedList<Object> response = new NamedList<>();
+            response.add("endpoint", name);
+            return response;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
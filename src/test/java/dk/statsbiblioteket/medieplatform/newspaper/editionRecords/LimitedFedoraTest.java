@@ -0,0 +1,53 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import dk.statsbiblioteket.doms.central.connectors.BackendMethodFailedException;
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+
+import java.net.SocketTimeoutException;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.fail;
+
+public class LimitedFedoraTest {
+
+    private static final String DOMS_EDITION_ID = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+
+    /**
+     * Test that a read timing out is retried, while a write timing out fails at once, as DOMS may have carried it out,
+     * and that a write DOMS turned away unprocessed is retried.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRetryWritesOnlyWhenRejected() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        BackendMethodFailedException timeout = new BackendMethodFailedException("Failed",
+                                                                                new SocketTimeoutException("Timeout"));
+        when(enhancedFedoraMock.getXMLDatastreamContents(DOMS_EDITION_ID, "RELS-EXT")).thenThrow(timeout)
+                                                                                   .thenReturn("<rdf:RDF/>");
+        doThrow(timeout).when(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID, "I", "comment");
+        doThrow(new BackendMethodFailedException("Failed", new AdaptiveCallLimiterTest.HttpFailure(503)))
+                .doNothing().when(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID, "A", "comment");
+        EnhancedFedora limited = LimitedFedora.wrap(enhancedFedoraMock, new FixedCallLimiter(1),
+                                                    new RetryBudget(1, 10, 0));
+
+        assertEquals("<rdf:RDF/>", limited.getXMLDatastreamContents(DOMS_EDITION_ID, "RELS-EXT"));
+        verify(enhancedFedoraMock, times(2)).getXMLDatastreamContents(DOMS_EDITION_ID, "RELS-EXT");
+        try {
+            limited.modifyObjectState(DOMS_EDITION_ID, "I", "comment");
+            fail("Expected the timeout to be passed on");
+        } catch (BackendMethodFailedException e) {
+            assertEquals(timeout, e);
+        }
+        verify(enhancedFedoraMock, times(1)).modifyObjectState(DOMS_EDITION_ID, "I", "comment");
+        limited.modifyObjectState(DOMS_EDITION_ID, "A", "comment");
+        verify(enhancedFedoraMock, times(2)).modifyObjectState(DOMS_EDITION_ID, "A", "comment");
+    }
+}
@@ -0,0 +1,102 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import javax.xml.stream.XMLStreamException;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.fail;
+
+public class ModsEditionExtractorTest {
+
+    private final ModsEditionExtractor extractor = new ModsEditionExtractor();
+
+    /**
+     * Test that the avisID is taken from the uniform title only, and the issue date from originInfo.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExtract() throws Exception {
+        EditionMetadata metadata = extractor.extract(
+                "<mods xmlns=\"http://www.loc.gov/mods/v3\">"
+                + "<titleInfo><title>Not the avisID</title></titleInfo>"
+                + "<titleInfo type=\"uniform\" authority=\"Statens Avissamling\"><title>adresseavisen1759</title>"
+                + "</titleInfo>"
+                + "<originInfo><dateIssued>1795-06-15</dateIssued></originInfo>"
+                + "</mods>");
+        assertEquals("adresseavisen1759", metadata.getAvisID());
+        assertEquals("1795-06-15", metadata.getDateIssued());
+    }
+
+    /**
+     * Test that missing and partial dates are given as they are, the empty string when missing or empty.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExtractMissingAndPartialDates() throws Exception {
+        EditionMetadata missing = extractor.extract(
+                "<mods xmlns=\"http://www.loc.gov/mods/v3\">"
+                + "<titleInfo type=\"uniform\"><title>adresseavisen1759</title></titleInfo>"
+                + "<originInfo><publisher>Nobody</publisher></originInfo>"
+                + "</mods>");
+        assertEquals("adresseavisen1759", missing.getAvisID());
+        assertEquals("", missing.getDateIssued());
+
+        EditionMetadata empty = extractor.extract(
+                "<mods xmlns=\"http://www.loc.gov/mods/v3\">"
+                + "<originInfo><dateIssued/></originInfo>"
+                + "</mods>");
+        assertEquals("", empty.getAvisID());
+        assertEquals("", empty.getDateIssued());
+
+        EditionMetadata partial = extractor.extract(
+                "<mods xmlns=\"http://www.loc.gov/mods/v3\">"
+                + "<originInfo><dateIssued>1795-06<!-- day unknown --></dateIssued></originInfo>"
+                + "<titleInfo type=\"uniform\"><title>adresseavisen1759</title></titleInfo>"
+                + "</mods>");
+        assertEquals("adresseavisen1759", partial.getAvisID());
+        assertEquals("1795-06", partial.getDateIssued());
+    }
+
+    /**
+     * Test that the MODS namespace is matched whatever its prefix, and that elements in other namespaces or in no
+     * namespace are ignored.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExtractNamespaceVariants() throws Exception {
+        EditionMetadata prefixed = extractor.extract(
+                "<m:mods xmlns:m=\"http://www.loc.gov/mods/v3\" xmlns:x=\"http://example.com/other\">"
+                + "<x:titleInfo type=\"uniform\"><x:title>other</x:title></x:titleInfo>"
+                + "<m:titleInfo type=\"uniform\"><m:title>adresseavisen1759</m:title></m:titleInfo>"
+                + "<m:originInfo><x:dateIssued>1700-01-01</x:dateIssued><m:dateIssued>1795-06-15</m:dateIssued>"
+                + "</m:originInfo>"
+                + "</m:mods>");
+        assertEquals("adresseavisen1759", prefixed.getAvisID());
+        assertEquals("1795-06-15", prefixed.getDateIssued());
+
+        EditionMetadata noNamespace = extractor.extract(
+                "<mods><titleInfo type=\"uniform\"><title>adresseavisen1759</title></titleInfo>"
+                + "<originInfo><dateIssued>1795-06-15</dateIssued></originInfo></mods>");
+        assertEquals("", noNamespace.getAvisID());
+        assertEquals("", noNamespace.getDateIssued());
+    }
+
+    /**
+     * Test that MODS which is not well-formed is refused.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExtractMalformed() throws Exception {
+        try {
+            extractor.extract("<mods xmlns=\"http://www.loc.gov/mods/v3\"><titleInfo type=\"uniform\"><title>avis");
+            fail("Expected malformed MODS to be refused");
+        } catch (XMLStreamException e) {
+            // Expected
+        }
+    }
+}
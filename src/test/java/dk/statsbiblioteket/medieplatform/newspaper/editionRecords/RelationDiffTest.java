@@ -0,0 +1,134 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import java.util.UUID;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class RelationDiffTest {
+
+    private static final String DOMS_TITLE_ID1 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String DOMS_TITLE_ID2 = "uuid:781732b1-ca9a-46d4-94cd-ae1c0b7f1ebf";
+    private static final String DOMS_TITLE_ID3 = "uuid:aff7e1f0-4242-4fc1-877d-6382f2bbaaa9";
+
+    /**
+     * Test that PIDs survive the conversion to two longs and back, and agree with {@link UUID}.
+     */
+    @Test
+    public void testUuids() {
+        UUID uuid = UUID.fromString(DOMS_TITLE_ID3.substring("uuid:".length()));
+        assertEquals(uuid.getMostSignificantBits(), Uuids.mostSignificantBits(DOMS_TITLE_ID3));
+        assertEquals(uuid.getLeastSignificantBits(), Uuids.leastSignificantBits(DOMS_TITLE_ID3));
+        assertEquals(DOMS_TITLE_ID3, Uuids.toDomsID(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+    }
+
+    /**
+     * Test that a PID that is not a UUID is rejected.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUuidsNotAUuid() {
+        Uuids.mostSignificantBits("doms:ContentModel_Edition");
+    }
+
+    /**
+     * Test a diff where one relation is kept, one added and one removed.
+     */
+    @Test
+    public void testCompute() {
+        RelationDiff diff = new RelationDiff();
+        diff.getWanted().add(DOMS_TITLE_ID1);
+        diff.getWanted().add(DOMS_TITLE_ID2);
+        diff.getExisting().add(DOMS_TITLE_ID2);
+        diff.getExisting().add(DOMS_TITLE_ID3);
+        diff.compute();
+
+        assertFalse(diff.isEmpty());
+        assertEquals(1, diff.getToAdd().size());
+        assertEquals(DOMS_TITLE_ID1, diff.getToAdd().getDomsID(0));
+        assertEquals(1, diff.getToRemove().size());
+        assertEquals(DOMS_TITLE_ID3, diff.getToRemove().getDomsID(0));
+    }
+
+    /**
+     * Test that a PID in upper case is the same as in lower case, that PIDs which are not UUID PIDs work, and that
+     * relations to add and remove are given with the PIDs as they were wanted or exist.
+     */
+    @Test
+    public void testComputeKeepsPids() {
+        RelationDiff diff = new RelationDiff();
+        diff.getWanted().add(DOMS_TITLE_ID1);
+        diff.getWanted().add("doms:Newspaper_2");
+        diff.getExisting().add(DOMS_TITLE_ID1.toUpperCase());
+        diff.getExisting().add("doms:Newspaper_1");
+        diff.getExisting().add(DOMS_TITLE_ID2.toUpperCase());
+        diff.compute();
+
+        assertEquals(1, diff.getToAdd().size());
+        assertEquals("doms:Newspaper_2", diff.getToAdd().getDomsID(0));
+        assertEquals(2, diff.getToRemove().size());
+        assertEquals("doms:Newspaper_1", diff.getToRemove().getDomsID(0));
+        assertEquals(DOMS_TITLE_ID2.toUpperCase(), diff.getToRemove().getDomsID(1));
+
+        diff.clear();
+        diff.getWanted().add("doms:Newspaper_1");
+        diff.getExisting().add("doms:Newspaper_1");
+        assertTrue(diff.compute().isEmpty());
+    }
+
+    /**
+     * Test that a cleared diff can be reused, and that equal sides give an empty diff.
+     */
+    @Test
+    public void testClearAndReuse() {
+        RelationDiff diff = new RelationDiff();
+        diff.getWanted().add(DOMS_TITLE_ID1);
+        diff.compute();
+        assertEquals(1, diff.getToAdd().size());
+
+        diff.clear();
+        diff.getWanted().add(DOMS_TITLE_ID2);
+        diff.getExisting().add(DOMS_TITLE_ID2);
+        assertTrue(diff.compute().isEmpty());
+    }
+
+    /**
+     * Test a diff of many relations, where the sets have to grow, and every other wanted relation exists.
+     */
+    @Test
+    public void testComputeLarge() {
+        int size = 100000;
+        RelationDiff diff = new RelationDiff(4);
+        for (int i = 0; i < size; i++) {
+            diff.getWanted().add(i, i);
+            if (i % 2 == 0) {
+                diff.getExisting().add(i, i);
+            }
+            diff.getExisting().add(-1 - i, i);
+        }
+        diff.compute();
+
+        assertEquals(size / 2, diff.getToAdd().size());
+        assertEquals(size, diff.getToRemove().size());
+        for (int i = 0; i < diff.getToAdd().size(); i++) {
+            assertEquals(1, diff.getToAdd().mostSignificantBits(i) % 2);
+        }
+        assertTrue(diff.getToRemove().contains(-1, 0));
+        assertFalse(diff.getToRemove().contains(0, 0));
+    }
+
+    /**
+     * Test that adding a UUID twice keeps one copy.
+     */
+    @Test
+    public void testUuidSetNoDuplicates() {
+        UuidSet set = new UuidSet();
+        assertTrue(set.add(DOMS_TITLE_ID1));
+        assertFalse(set.add(DOMS_TITLE_ID1));
+        assertEquals(1, set.size());
+        assertTrue(set.contains(DOMS_TITLE_ID1));
+        assertFalse(set.contains(DOMS_TITLE_ID2));
+    }
+}
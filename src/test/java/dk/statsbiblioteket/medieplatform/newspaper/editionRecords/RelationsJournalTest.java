@@ -0,0 +1,166 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class RelationsJournalTest {
+    private static final String DONE = "uuid:00000000-0000-0000-0000-000000000001";
+    private static final String FAILED = "uuid:00000000-0000-0000-0000-000000000002";
+    private static final String CRASHED = "uuid:00000000-0000-0000-0000-000000000003";
+    private static final String TORN = "uuid:00000000-0000-0000-0000-000000000004";
+
+    /**
+     * Test that after a crash only the incomplete editions are rolled forward: the planned changes are written again
+     * and an edition left unpublished is published again, while completed and failed editions are left alone.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRecoverIncomplete() throws Exception {
+        File file = File.createTempFile("relations", ".journal");
+        file.deleteOnExit();
+        List<String> add = Arrays.asList("uuid:t1", "uuid:t2");
+        List<String> remove = Collections.singletonList("uuid:t3");
+        RelationsWriter failingWriter = mock(RelationsWriter.class);
+        doThrow(new RuntimeException("rejected")).when(failingWriter).updateRelations(anyString(),
+                                                                                     anyListOf(String.class),
+                                                                                     anyListOf(String.class));
+
+        RelationsJournal journal = new RelationsJournal(file);
+        EnhancedFedora eFedora = JournalingFedora.wrap(mock(EnhancedFedora.class), journal);
+        new JournalingRelationsWriter(journal, mock(RelationsWriter.class)).updateRelations(DONE, add, remove);
+        try {
+            new JournalingRelationsWriter(journal, failingWriter).updateRelations(FAILED, add, remove);
+        } catch (RuntimeException e) {
+            // Reported by the caller
+        }
+        journal.planned(CRASHED, add, remove);
+        eFedora.modifyObjectState(CRASHED, "I", "comment");
+        journal.close();
+
+        // A write torn by the crash is ignored
+        try (FileWriter torn = new FileWriter(file, true)) {
+            torn.write("P\t" + TORN);
+        }
+
+        RelationsJournal recovered = new RelationsJournal(file);
+        assertEquals(1, recovered.getIncompleteCount());
+        assertTrue(recovered.isCompleted(DONE));
+        assertFalse(recovered.isCompleted(FAILED));
+        RelationsWriter relationsWriter = mock(RelationsWriter.class);
+        EnhancedFedora recoveryFedora = mock(EnhancedFedora.class);
+        assertEquals(0, recovered.recover(relationsWriter, recoveryFedora));
+        verify(relationsWriter).updateRelations(CRASHED, add, remove);
+        verify(recoveryFedora).modifyObjectState(CRASHED, "A", "comment");
+        verifyNoMoreInteractions(relationsWriter, recoveryFedora);
+        recovered.close();
+
+        RelationsJournal reopened = new RelationsJournal(file);
+        assertEquals(0, reopened.getIncompleteCount());
+        assertTrue(reopened.isCompleted(CRASHED));
+        reopened.clear();
+        reopened.close();
+        assertEquals(0, file.length());
+        RelationsJournal cleared = new RelationsJournal(file);
+        assertEquals(0, cleared.getIncompleteCount());
+        assertFalse(cleared.isCompleted(CRASHED));
+        cleared.close();
+    }
+
+    /**
+     * Test that an edition whose changes failed while it was unpublished is published again on recovery, without
+     * writing its changes again, and that an edition is published again even if writing its changes fails on
+     * recovery, in which case it is counted as failed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRecoverUnpublished() throws Exception {
+        File file = File.createTempFile("relations", ".journal");
+        file.deleteOnExit();
+        List<String> add = Collections.singletonList("uuid:t1");
+        List<String> remove = Collections.emptyList();
+
+        RelationsJournal journal = new RelationsJournal(file);
+        journal.planned(FAILED, add, remove);
+        journal.unpublishing(FAILED);
+        journal.failed(FAILED);
+        journal.planned(CRASHED, add, remove);
+        journal.unpublishing(CRASHED);
+        journal.close();
+
+        RelationsJournal recovered = new RelationsJournal(file);
+        assertEquals(2, recovered.getIncompleteCount());
+        RelationsWriter relationsWriter = mock(RelationsWriter.class);
+        doThrow(new RuntimeException("rejected")).when(relationsWriter).updateRelations(CRASHED, add, remove);
+        EnhancedFedora recoveryFedora = mock(EnhancedFedora.class);
+        assertEquals(1, recovered.recover(relationsWriter, recoveryFedora));
+        verify(relationsWriter).updateRelations(CRASHED, add, remove);
+        verify(recoveryFedora).modifyObjectState(FAILED, "A", "comment");
+        verify(recoveryFedora).modifyObjectState(CRASHED, "A", "comment");
+        verifyNoMoreInteractions(relationsWriter, recoveryFedora);
+        recovered.close();
+
+        RelationsJournal reopened = new RelationsJournal(file);
+        assertEquals(0, reopened.getIncompleteCount());
+        assertTrue(reopened.isCompleted(FAILED));
+        assertFalse(reopened.isCompleted(CRASHED));
+        reopened.close();
+    }
+
+    /**
+     * Test that emptying the journal keeps an edition whose changes failed while it was unpublished, so it is still
+     * published again, by recovery or by the next run reading the journal.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testClearKeepsUnpublished() throws Exception {
+        File file = File.createTempFile("relations", ".journal");
+        file.deleteOnExit();
+        List<String> add = Collections.singletonList("uuid:t1");
+        List<String> remove = Collections.emptyList();
+
+        RelationsJournal journal = new RelationsJournal(file);
+        journal.unpublishing(FAILED);
+        journal.failed(FAILED);
+        journal.planned(CRASHED, add, remove);
+        journal.completed(CRASHED);
+        journal.clear();
+        assertEquals(1, journal.getIncompleteCount());
+        assertFalse(journal.isCompleted(CRASHED));
+        journal.close();
+
+        RelationsJournal reopened = new RelationsJournal(file);
+        assertEquals(1, reopened.getIncompleteCount());
+        RelationsWriter relationsWriter = mock(RelationsWriter.class);
+        EnhancedFedora recoveryFedora = mock(EnhancedFedora.class);
+        assertEquals(0, reopened.recover(relationsWriter, recoveryFedora));
+        verify(recoveryFedora).modifyObjectState(FAILED, "A", "comment");
+        verifyNoMoreInteractions(relationsWriter, recoveryFedora);
+        reopened.clear();
+        assertEquals(0, reopened.getIncompleteCount());
+        reopened.close();
+
+        RelationsJournal cleared = new RelationsJournal(file);
+        assertEquals(0, cleared.getIncompleteCount());
+        cleared.close();
+    }
+}
@@ -0,0 +1,114 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.Test;
+
+import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.ObjectProfile;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class RelsExtRelationsWriterTest {
+
+    private static final String PREDICATE = "http://doms.statsbiblioteket.dk/relations/default/0/1/#isPartOfNewspaper";
+    private static final String DOMS_EDITION_ID = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+    private static final String DOMS_TITLE_ID1 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String DOMS_TITLE_ID2 = "uuid:781732b1-ca9a-46d4-94cd-ae1c0b7f1ebf";
+    private static final String DOMS_TITLE_ID3 = "uuid:aff7e1f0-4242-4fc1-877d-6382f2bbaaa9";
+    private static final String RELS_EXT = "<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"\n"
+                                           + "         xmlns:doms=\"http://doms.statsbiblioteket.dk/relations/default/0/1/#\"\n"
+                                           + "         xmlns:model=\"info:fedora/fedora-system:def/model#\">\n"
+                                           + "    <rdf:Description rdf:about=\"info:fedora/" + DOMS_EDITION_ID + "\">\n"
+                                           + "        <model:hasModel rdf:resource=\"info:fedora/doms:ContentModel_Edition\"/>\n"
+                                           + "        <doms:isPartOfNewspaper rdf:resource=\"info:fedora/" + DOMS_TITLE_ID1 + "\"/>\n"
+                                           + "        <doms:isPartOfNewspaper rdf:resource=\"info:fedora/" + DOMS_TITLE_ID2 + "\"/>\n"
+                                           + "    </rdf:Description>\n"
+                                           + "</rdf:RDF>";
+
+    /**
+     * Test that one relation is added and one removed with a single update of RELS-EXT, keeping the other content.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUpdateRelations() throws Exception {
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getXMLDatastreamContents(DOMS_EDITION_ID, "RELS-EXT")).thenReturn(RELS_EXT);
+        ObjectProfile profile = profile(1000L);
+        when(enhancedFedoraMock.getObjectProfile(DOMS_EDITION_ID, null)).thenReturn(profile);
+
+        new RelsExtRelationsWriter(enhancedFedoraMock, PREDICATE)
+                .updateRelations(DOMS_EDITION_ID, Arrays.asList(DOMS_TITLE_ID3), Arrays.asList(DOMS_TITLE_ID2));
+
+        ArgumentCaptor<String> relsExt = ArgumentCaptor.forClass(String.class);
+        verify(enhancedFedoraMock, times(2)).getObjectProfile(DOMS_EDITION_ID, null);
+        verify(enhancedFedoraMock).getXMLDatastreamContents(DOMS_EDITION_ID, "RELS-EXT");
+        verify(enhancedFedoraMock).modifyDatastreamByValue(eq(DOMS_EDITION_ID), eq("RELS-EXT"), relsExt.capture(),
+                                                           anyListOf(String.class), eq("linking to"));
+        verifyNoMoreInteractions(enhancedFedoraMock);
+        assertTrue(relsExt.getValue().contains("doms:ContentModel_Edition"));
+        assertTrue(relsExt.getValue().contains("info:fedora/" + DOMS_TITLE_ID1));
+        assertFalse(relsExt.getValue().contains("info:fedora/" + DOMS_TITLE_ID2));
+        assertTrue(relsExt.getValue().contains("info:fedora/" + DOMS_TITLE_ID3));
+    }
+
+    /**
+     * Test that the update starts over when the edition changed between reading and writing its RELS-EXT, so the
+     * RELS-EXT written is based on the latest version.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUpdateRelationsConcurrentModification() throws Exception {
+        String changedRelsExt = RELS_EXT.replace("doms:ContentModel_Edition", "doms:ContentModel_Changed");
+        EnhancedFedora enhancedFedoraMock = mock(EnhancedFedora.class);
+        when(enhancedFedoraMock.getXMLDatastreamContents(DOMS_EDITION_ID, "RELS-EXT")).thenReturn(RELS_EXT,
+                                                                                                 changedRelsExt);
+        ObjectProfile before = profile(1000L);
+        ObjectProfile after = profile(2000L);
+        when(enhancedFedoraMock.getObjectProfile(DOMS_EDITION_ID, null)).thenReturn(before, after, after, after);
+
+        new RelsExtRelationsWriter(enhancedFedoraMock, PREDICATE)
+                .updateRelations(DOMS_EDITION_ID, Arrays.asList(DOMS_TITLE_ID3), Collections.<String>emptyList());
+
+        ArgumentCaptor<String> relsExt = ArgumentCaptor.forClass(String.class);
+        verify(enhancedFedoraMock, times(4)).getObjectProfile(DOMS_EDITION_ID, null);
+        verify(enhancedFedoraMock, times(2)).getXMLDatastreamContents(DOMS_EDITION_ID, "RELS-EXT");
+        verify(enhancedFedoraMock).modifyDatastreamByValue(eq(DOMS_EDITION_ID), eq("RELS-EXT"), relsExt.capture(),
+                                                           anyListOf(String.class), eq("linking to"));
+        verifyNoMoreInteractions(enhancedFedoraMock);
+        assertTrue(relsExt.getValue().contains("doms:ContentModel_Changed"));
+        assertTrue(relsExt.getValue().contains("info:fedora/" + DOMS_TITLE_ID3));
+    }
+
+    /**
+     * Test that relations already present are not added twice.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testUpdateRelsExtNoDuplicates() throws Exception {
+        String updated = new RelsExtRelationsWriter(null, PREDICATE).updateRelsExt(RELS_EXT, DOMS_EDITION_ID,
+                Arrays.asList(DOMS_TITLE_ID1), Collections.<String>emptyList());
+        int first = updated.indexOf(DOMS_TITLE_ID1);
+        assertTrue(first >= 0);
+        assertFalse(updated.indexOf(DOMS_TITLE_ID1, first + 1) >= 0);
+    }
+
+    private static ObjectProfile profile(long lastModified) {
+        ObjectProfile profile = mock(ObjectProfile.class);
+        when(profile.getObjectLastModifiedDate()).thenReturn(lastModified);
+        return profile;
+    }
+}
@@ -1,21 +1,33 @@
 package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
 
+import org.mockito.InOrder;
 import org.testng.annotations.Test;
 
 import dk.statsbiblioteket.doms.central.connectors.EnhancedFedora;
 import dk.statsbiblioteket.doms.central.connectors.fedora.structures.FedoraRelation;
+import dk.statsbiblioteket.doms.central.connectors.fedora.structures.ObjectProfile;
 import dk.statsbiblioteket.medieplatform.autonomous.Item;
 import dk.statsbiblioteket.medieplatform.autonomous.ItemFactory;
 import dk.statsbiblioteket.medieplatform.autonomous.ResultCollector;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
 
 public class RunnableEditionRecordRelationsMaintainerTest {
 
@@ -227,6 +239,216 @@ public class RunnableEditionRecordRelationsMaintainerTest {
         verifyNormalCalls(resultCollectorMock, enhancedFedoraMock, newspaperIndexMock);
     }
 
+    /**
+     * Test where avisID and issue date are read from SBOI.
+     *
+     * Edition index returns the edition. Index query returns three items. DOMS returns two known.
+     *
+     * The result should be that the missing relation is added, without reading the EDITION datastream.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemEditionMetadataFromIndex() throws Exception {
+        //Set up mocks
+        Item itemMock = getItemMock();
+        ItemFactory<Item> itemFactoryMock = getItemItemFactoryMock();
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_TITLE_ID1, DOMS_TITLE_ID2);
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock(DOMS_TITLE_ID1, DOMS_TITLE_ID2, DOMS_TITLE_ID3);
+        EditionIndex editionIndexMock = mock(EditionIndex.class);
+        when(editionIndexMock.getEditionMetadata(Collections.singletonList(DOMS_EDITION_ID))).thenReturn(
+                Collections.singletonMap(DOMS_EDITION_ID, new EditionMetadata(NEWSPAPERID, DATE)));
+
+        //Call the component with the mocks
+        RunnableEditionRecordRelationsMaintainer maintainer = new RunnableEditionRecordRelationsMaintainer(
+                new Properties(), enhancedFedoraMock, itemFactoryMock, newspaperIndexMock);
+        maintainer.setEditionIndex(editionIndexMock);
+        maintainer.doWorkOnItem(itemMock, resultCollectorMock);
+
+        //One relation should be added
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID, URI_PREFIX + DOMS_EDITION_ID, PREDICATE,
+                                               URI_PREFIX + DOMS_TITLE_ID3, false, MESSAGE);
+
+        //The EDITION datastream should not be read
+        verify(newspaperIndexMock).getNewspapers(NEWSPAPERID, DATE);
+        verify(enhancedFedoraMock).getNamedRelations(DOMS_EDITION_ID, PREDICATE, null);
+        verifyNoMoreInteractions(newspaperIndexMock, enhancedFedoraMock, resultCollectorMock);
+    }
+
+    /**
+     * Test where relations of a published edition are changed with a state aware writer.
+     *
+     * Index query returns one item. DOMS returns two different items known, and the edition is published.
+     *
+     * The result should be that the edition is unpublished once, the relations are changed, and the edition is
+     * republished.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemPublishedEdition() throws Exception {
+        //Set up mocks
+        Item itemMock = getItemMock();
+        ItemFactory<Item> itemFactoryMock = getItemItemFactoryMock();
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_TITLE_ID2, DOMS_TITLE_ID3);
+        ObjectProfile profileMock = mock(ObjectProfile.class);
+        when(profileMock.getState()).thenReturn("A");
+        when(enhancedFedoraMock.getObjectProfile(DOMS_EDITION_ID, null)).thenReturn(profileMock);
+        NewspaperIndex newspaperIndexMock = getNewspaperIndexMock(DOMS_TITLE_ID1);
+
+        //Call the component with the mocks
+        RunnableEditionRecordRelationsMaintainer maintainer = new RunnableEditionRecordRelationsMaintainer(
+                new Properties(), enhancedFedoraMock, itemFactoryMock, newspaperIndexMock);
+        maintainer.setRelationsWriter(new StateAwareRelationsWriter(enhancedFedoraMock, new PerRelationWriter(
+                enhancedFedoraMock, PREDICATE)));
+        maintainer.doWorkOnItem(itemMock, resultCollectorMock);
+
+        //The edition should be unpublished once around all changes
+        InOrder inOrder = inOrder(enhancedFedoraMock);
+        inOrder.verify(enhancedFedoraMock).getObjectProfile(DOMS_EDITION_ID, null);
+        inOrder.verify(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID, "I", "comment");
+        inOrder.verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID, URI_PREFIX + DOMS_EDITION_ID, PREDICATE,
+                                                       URI_PREFIX + DOMS_TITLE_ID1, false, MESSAGE);
+        inOrder.verify(enhancedFedoraMock)
+               .deleteRelation(DOMS_EDITION_ID, URI_PREFIX + DOMS_EDITION_ID, PREDICATE, URI_PREFIX + DOMS_TITLE_ID2,
+                               false, MESSAGE);
+        inOrder.verify(enhancedFedoraMock)
+               .deleteRelation(DOMS_EDITION_ID, URI_PREFIX + DOMS_EDITION_ID, PREDICATE, URI_PREFIX + DOMS_TITLE_ID3,
+                               false, MESSAGE);
+        inOrder.verify(enhancedFedoraMock).modifyObjectState(DOMS_EDITION_ID, "A", "comment");
+
+        //Verify normal calls
+        verifyNormalCalls(resultCollectorMock, enhancedFedoraMock, newspaperIndexMock);
+    }
+
+    /**
+     * Test of batch reconciliation.
+     *
+     * Titles of the avisID are looked up once. DOMS returns two known.
+     *
+     * The result should be that the missing relation is added and the superfluous relation removed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItems() throws Exception {
+        //Set up mocks
+        Item itemMock = getItemMock();
+        ItemFactory<Item> itemFactoryMock = getItemItemFactoryMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_TITLE_ID1, DOMS_TITLE_ID2);
+        NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
+        when(newspaperIndexMock.getTitleIntervals(NEWSPAPERID)).thenReturn(new TitleIntervalIndex(Arrays.asList(
+                new TitleRecord(DOMS_TITLE_ID1, NEWSPAPERID, -10, 10),
+                new TitleRecord(DOMS_TITLE_ID2, NEWSPAPERID, 1, 10),
+                new TitleRecord(DOMS_TITLE_ID3, NEWSPAPERID, -10, 0))));
+
+        //Call the component with the mocks
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        RunnableEditionRecordRelationsMaintainer maintainer = new RunnableEditionRecordRelationsMaintainer(
+                new Properties(), enhancedFedoraMock, itemFactoryMock, newspaperIndexMock);
+        Map<String, Exception> failures;
+        try {
+            failures = maintainer.doWorkOnItems(Collections.singletonList(itemMock), executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        //One relation should be added and one removed
+        assertTrue(failures.isEmpty());
+        assertEquals(1, maintainer.getMetrics().getLatency(EditionRecordsMetrics.Phase.ITEM).getCount());
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID, URI_PREFIX + DOMS_EDITION_ID, PREDICATE,
+                                               URI_PREFIX + DOMS_TITLE_ID3, false, MESSAGE);
+        verify(enhancedFedoraMock)
+                .deleteRelation(DOMS_EDITION_ID, URI_PREFIX + DOMS_EDITION_ID, PREDICATE, URI_PREFIX + DOMS_TITLE_ID2,
+                                false, MESSAGE);
+        verify(newspaperIndexMock).getTitleIntervals(NEWSPAPERID);
+        verify(enhancedFedoraMock).getXMLDatastreamContents(DOMS_EDITION_ID, EDITION_DATASTREAM_NAME);
+        verify(enhancedFedoraMock).getNamedRelations(DOMS_EDITION_ID, PREDICATE, null);
+        verifyNoMoreInteractions(newspaperIndexMock, enhancedFedoraMock);
+    }
+
+    /**
+     * Test that an edition reconciled before is skipped after reading its avisID and date, as long as neither they
+     * nor the titles of the avisID have changed, and reconciled again when the titles change.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemsSkipsUnchanged() throws Exception {
+        //Set up mocks
+        Item itemMock = getItemMock();
+        ItemFactory<Item> itemFactoryMock = getItemItemFactoryMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_TITLE_ID1);
+        NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
+        when(newspaperIndexMock.getTitleIntervals(NEWSPAPERID)).thenReturn(
+                new TitleIntervalIndex(Arrays.asList(new TitleRecord(DOMS_TITLE_ID1, NEWSPAPERID, -10, 10))),
+                new TitleIntervalIndex(Arrays.asList(new TitleRecord(DOMS_TITLE_ID1, NEWSPAPERID, -10, 10))),
+                new TitleIntervalIndex(Arrays.asList(new TitleRecord(DOMS_TITLE_ID1, NEWSPAPERID, -10, 10),
+                                                     new TitleRecord(DOMS_TITLE_ID2, NEWSPAPERID, 0, 0))));
+        File file = File.createTempFile("editions", ".fingerprints");
+        file.delete();
+        file.deleteOnExit();
+        RunnableEditionRecordRelationsMaintainer maintainer = new RunnableEditionRecordRelationsMaintainer(
+                new Properties(), enhancedFedoraMock, itemFactoryMock, newspaperIndexMock);
+        maintainer.setFingerprints(new EditionFingerprints(file));
+
+        //Call the component three times with the mocks
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(maintainer.doWorkOnItems(Collections.singletonList(itemMock), executor).isEmpty());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        //Relations are read on the first and third call only, and the new title is added on the third
+        assertEquals(1, maintainer.getMetrics().getItemsUnchanged());
+        verify(enhancedFedoraMock, times(2)).getNamedRelations(DOMS_EDITION_ID, PREDICATE, null);
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID, URI_PREFIX + DOMS_EDITION_ID, PREDICATE,
+                                               URI_PREFIX + DOMS_TITLE_ID2, false, MESSAGE);
+        verify(enhancedFedoraMock, times(3)).getXMLDatastreamContents(DOMS_EDITION_ID, EDITION_DATASTREAM_NAME);
+        verifyNoMoreInteractions(enhancedFedoraMock);
+    }
+
+    /**
+     * Test that an edition handed to the component is reconciled even if its fingerprint is unchanged, so a relation
+     * removed in DOMS by other means is added again.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDoWorkOnItemIgnoresFingerprint() throws Exception {
+        //Set up mocks
+        Item itemMock = getItemMock();
+        ItemFactory<Item> itemFactoryMock = getItemItemFactoryMock();
+        ResultCollector resultCollectorMock = getResultCollectorMock();
+        EnhancedFedora enhancedFedoraMock = getEnhancedFedoraMock(DOMS_TITLE_ID1);
+        NewspaperIndex newspaperIndexMock = mock(NewspaperIndex.class);
+        when(newspaperIndexMock.getTitleIntervals(NEWSPAPERID)).thenReturn(
+                new TitleIntervalIndex(Arrays.asList(new TitleRecord(DOMS_TITLE_ID1, NEWSPAPERID, -10, 10))));
+        File file = File.createTempFile("editions", ".fingerprints");
+        file.delete();
+        file.deleteOnExit();
+        RunnableEditionRecordRelationsMaintainer maintainer = new RunnableEditionRecordRelationsMaintainer(
+                new Properties(), enhancedFedoraMock, itemFactoryMock, newspaperIndexMock);
+        maintainer.setFingerprints(new EditionFingerprints(file));
+
+        //Reconcile, remove the relation in DOMS, and reconcile again
+        maintainer.doWorkOnItem(itemMock, resultCollectorMock);
+        when(enhancedFedoraMock.getNamedRelations(DOMS_EDITION_ID, PREDICATE, null)).thenReturn(
+                Collections.<FedoraRelation>emptyList());
+        maintainer.doWorkOnItem(itemMock, resultCollectorMock);
+
+        //The relation is added again
+        assertEquals(0, maintainer.getMetrics().getItemsUnchanged());
+        verify(enhancedFedoraMock, times(2)).getNamedRelations(DOMS_EDITION_ID, PREDICATE, null);
+        verify(enhancedFedoraMock).addRelation(DOMS_EDITION_ID, URI_PREFIX + DOMS_EDITION_ID, PREDICATE,
+                                               URI_PREFIX + DOMS_TITLE_ID1, false, MESSAGE);
+    }
+
     /**
      * Verify that the expected normal calls are made, and none other.
      * @param resultCollectorMock Verify no calls are med to this.
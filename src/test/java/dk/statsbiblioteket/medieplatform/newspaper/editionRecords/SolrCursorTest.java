@@ -0,0 +1,89 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.testng.annotations.Test;
+
+import dk.statsbiblioteket.medieplatform.autonomous.SBOIEventIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+
+public class SolrCursorTest {
+
+    private static QueryResponse page(String nextCursorMark, String... uuids) {
+        SolrDocumentList results = new SolrDocumentList();
+        for (String uuid : uuids) {
+            SolrDocument document = new SolrDocument();
+            document.addField(SBOIEventIndex.UUID, uuid);
+            results.add(document);
+        }
+        NamedList<Object> header = new NamedList<>();
+        header.add("nextCursorMark", nextCursorMark);
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(results);
+        when(response.getResponse()).thenReturn(header);
+        return response;
+    }
+
+    /**
+     * Test that pages are read until the cursor stops moving, and that documents converted to null are skipped.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIterate() throws Exception {
+        SolrServer solrServer = mock(SolrServer.class);
+        QueryResponse page1 = page("mark1", "uuid:1", "uuid:2");
+        QueryResponse page2 = page("mark2", "uuid:3", "uuid:4");
+        QueryResponse page3 = page("mark2");
+        when(solrServer.query(any(SolrParams.class))).thenReturn(page1, page2, page3);
+
+        List<String> uuids = new ArrayList<>();
+        for (String uuid : new SolrCursor(solrServer, "*:*", 2, SBOIEventIndex.UUID).convert(
+                new SolrCursor.Converter<String>() {
+                    @Override
+                    public String convert(SolrDocument document) {
+                        String uuid = document.getFirstValue(SBOIEventIndex.UUID).toString();
+                        return uuid.equals("uuid:3") ? null : uuid;
+                    }
+                })) {
+            uuids.add(uuid);
+        }
+
+        assertEquals(Arrays.asList("uuid:1", "uuid:2", "uuid:4"), uuids);
+        verify(solrServer, times(3)).query(any(SolrParams.class));
+    }
+
+    /**
+     * Test that a page shorter than the page size ends the iteration without another request.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testShortPage() throws Exception {
+        SolrServer solrServer = mock(SolrServer.class);
+        QueryResponse page1 = page("mark1", "uuid:1");
+        when(solrServer.query(any(SolrParams.class))).thenReturn(page1);
+
+        int count = 0;
+        for (SolrDocument ignored : new SolrCursor(solrServer, "*:*", 2, SBOIEventIndex.UUID)) {
+            count++;
+        }
+
+        assertEquals(1, count);
+        verify(solrServer, times(1)).query(any(SolrParams.class));
+    }
+}
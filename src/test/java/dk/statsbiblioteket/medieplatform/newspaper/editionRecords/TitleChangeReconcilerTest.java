@@ -0,0 +1,111 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class TitleChangeReconcilerTest {
+
+    private static final String DOMS_TITLE_ID1 = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+    private static final String DOMS_TITLE_ID2 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+
+    /**
+     * Test that the first run only records the titles, that later runs reconcile the windows of changed titles, and
+     * that the snapshot records the current titles also when affected editions failed, with their window pending, so
+     * only that window is reconciled again.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReconcileSinceSnapshot() throws Exception {
+        File file = File.createTempFile("titles", ".snapshot");
+        file.delete();
+        file.deleteOnExit();
+        EditionRecordRelationsBatchReconciler batchReconciler = mock(EditionRecordRelationsBatchReconciler.class);
+        TitleChangeReconciler reconciler = new TitleChangeReconciler(batchReconciler, file);
+
+        List<TitleRecord> titles = Arrays.asList(
+                new TitleRecord(DOMS_TITLE_ID1, "avis", EpochDays.parse("1900-01-01"), EpochDays.parse("1910-12-31")));
+        assertEquals(0, reconciler.reconcileSinceSnapshot(titles));
+        assertEquals(titles, TitleIndexSnapshot.map(file).getTitles());
+
+        List<TitleRecord> changed = Arrays.asList(
+                new TitleRecord(DOMS_TITLE_ID1, "avis", EpochDays.parse("1900-01-01"), EpochDays.parse("1911-12-31")));
+        when(batchReconciler.reconcile("avis", "1900-01-01", "1911-12-31")).thenReturn(2, 0);
+        assertEquals(2, reconciler.reconcileSinceSnapshot(changed));
+        TitleIndexSnapshot snapshot = TitleIndexSnapshot.map(file);
+        assertEquals(changed, snapshot.getTitles());
+        assertTrue(snapshot.isPending());
+        assertEquals(Collections.singletonList(new EditionWindow("avis", EpochDays.parse("1900-01-01"),
+                                                                 EpochDays.parse("1911-12-31"))),
+                     snapshot.getPendingWindows());
+        assertEquals(0, reconciler.reconcileSinceSnapshot(changed));
+        assertEquals(changed, TitleIndexSnapshot.map(file).getTitles());
+        assertFalse(TitleIndexSnapshot.map(file).isPending());
+        assertEquals(0, reconciler.reconcileSinceSnapshot(changed));
+
+        verify(batchReconciler, times(2)).reconcile("avis", "1900-01-01", "1911-12-31");
+        verifyNoMoreInteractions(batchReconciler);
+        assertEquals(Collections.emptyList(),
+                     TitleChanges.affectedWindows(changed, TitleIndexSnapshot.map(file).getTitles()));
+    }
+
+    /**
+     * Test that with the avisIDs divided between nodes, only the windows of the avisIDs of this node are reconciled,
+     * that the windows of the other avisIDs are kept pending in the snapshot of the current titles, and that they are
+     * reconciled when this node becomes the owner of their avisID.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReconcileOwnedAvisIDsOnly() throws Exception {
+        File file = File.createTempFile("titles", ".snapshot");
+        file.delete();
+        file.deleteOnExit();
+        EditionRecordRelationsBatchReconciler batchReconciler = mock(EditionRecordRelationsBatchReconciler.class);
+        AvisIDShards shards = mock(AvisIDShards.class);
+        when(shards.owns("mine")).thenReturn(true);
+        when(shards.owns("theirs")).thenReturn(false);
+        TitleChangeReconciler reconciler = new TitleChangeReconciler(batchReconciler, file);
+        reconciler.setShards(shards);
+
+        List<TitleRecord> titles = Arrays.asList(
+                new TitleRecord(DOMS_TITLE_ID1, "mine", EpochDays.parse("1900-01-01"), EpochDays.parse("1910-12-31")),
+                new TitleRecord(DOMS_TITLE_ID2, "theirs", EpochDays.parse("1900-01-01"),
+                                EpochDays.parse("1910-12-31")));
+        TitleIndexSnapshot.write(file, titles);
+        List<TitleRecord> changed = Arrays.asList(
+                new TitleRecord(DOMS_TITLE_ID1, "mine", EpochDays.parse("1900-01-01"), EpochDays.parse("1911-12-31")),
+                new TitleRecord(DOMS_TITLE_ID2, "theirs", EpochDays.parse("1900-01-01"),
+                                EpochDays.parse("1911-12-31")));
+        assertEquals(0, reconciler.reconcileSinceSnapshot(changed));
+
+        verify(batchReconciler).reconcile("mine", "1900-01-01", "1911-12-31");
+        verifyNoMoreInteractions(batchReconciler);
+        TitleIndexSnapshot snapshot = TitleIndexSnapshot.map(file);
+        assertEquals(changed, snapshot.getTitles());
+        assertEquals(Collections.singletonList(new EditionWindow("theirs", EpochDays.parse("1900-01-01"),
+                                                                 EpochDays.parse("1911-12-31"))),
+                     snapshot.getPendingWindows());
+
+        when(shards.owns("theirs")).thenReturn(true);
+        reconciler.membersChanged(Collections.singleton("this"));
+
+        verify(batchReconciler).reconcile("theirs", "1900-01-01", "1911-12-31");
+        verifyNoMoreInteractions(batchReconciler);
+        assertEquals(changed, TitleIndexSnapshot.map(file).getTitles());
+        assertFalse(TitleIndexSnapshot.map(file).isPending());
+    }
+}
@@ -0,0 +1,60 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+public class TitleChangesTest {
+
+    private static TitleRecord title(String domsID, String avisID, String from, String to) {
+        return new TitleRecord(domsID, avisID, EpochDays.parse(from), EpochDays.parse(to));
+    }
+
+    private static EditionWindow window(String avisID, String from, String to) {
+        return new EditionWindow(avisID, EpochDays.parse(from), EpochDays.parse(to));
+    }
+
+    /**
+     * Test that unchanged titles affect no editions.
+     */
+    @Test
+    public void testUnchanged() {
+        assertEquals(Collections.emptyList(),
+                     TitleChanges.affectedWindows(Arrays.asList(title("uuid:t1", "avis", "1900-01-01", "1910-12-31")),
+                                                  Arrays.asList(title("uuid:t1", "avis", "1900-01-01", "1910-12-31"))));
+    }
+
+    /**
+     * Test that a changed period affects the union of the old and new period, and that disjoint periods are kept
+     * apart.
+     */
+    @Test
+    public void testChangedPeriod() {
+        assertEquals(Arrays.asList(window("avis", "1900-01-01", "1912-12-31")),
+                     TitleChanges.affectedWindows(Arrays.asList(title("uuid:t1", "avis", "1900-01-01", "1910-12-31")),
+                                                  Arrays.asList(title("uuid:t1", "avis", "1901-01-01", "1912-12-31"))));
+        assertEquals(Arrays.asList(window("avis", "1900-01-01", "1900-12-31"), window("avis", "1920-01-01", "1920-12-31")),
+                     TitleChanges.affectedWindows(Arrays.asList(title("uuid:t1", "avis", "1900-01-01", "1900-12-31")),
+                                                  Arrays.asList(title("uuid:t1", "avis", "1920-01-01", "1920-12-31"))));
+    }
+
+    /**
+     * Test that added, removed and moved titles affect their periods under both avisIDs, and that adjacent windows are
+     * merged.
+     */
+    @Test
+    public void testAddedRemovedAndMoved() {
+        assertEquals(Arrays.asList(window("avis1", "1900-01-01", "1920-12-31"),
+                                   window("avis2", "1950-01-01", "1960-12-31")),
+                     TitleChanges.affectedWindows(
+                             Arrays.asList(title("uuid:t1", "avis1", "1900-01-01", "1910-12-31"),
+                                           title("uuid:t2", "avis1", "1911-01-01", "1920-12-31"),
+                                           title("uuid:t3", "avis1", "1930-01-01", "1940-12-31")),
+                             Arrays.asList(title("uuid:t2", "avis2", "1950-01-01", "1960-12-31"),
+                                           title("uuid:t3", "avis1", "1930-01-01", "1940-12-31"),
+                                           title("uuid:t4", "avis1", "1905-01-01", "1915-12-31"))));
+    }
+}
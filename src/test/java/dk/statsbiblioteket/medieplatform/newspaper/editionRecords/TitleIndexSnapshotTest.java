@@ -0,0 +1,115 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+public class TitleIndexSnapshotTest {
+
+    private static final String DOMS_TITLE_ID1 = "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7";
+    private static final String DOMS_TITLE_ID2 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String DOMS_TITLE_ID3 = "uuid:a5b6c7d8-0000-4abf-a6c1-000000000003";
+
+    /**
+     * Test that a mapped snapshot answers lookups and versions as the index of the titles written to it does.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWriteAndMap() throws Exception {
+        File file = File.createTempFile("titles", ".index");
+        file.deleteOnExit();
+        List<TitleRecord> titles = Arrays.asList(new TitleRecord(DOMS_TITLE_ID2, "avis", 11, 20),
+                                                 new TitleRecord(DOMS_TITLE_ID1, "avis", 0, 10),
+                                                 new TitleRecord(DOMS_TITLE_ID3, "ærøavis", 5, 15));
+        TitleIndexSnapshot.write(file, titles);
+
+        TitleIndexSnapshot snapshot = TitleIndexSnapshot.map(file);
+        TitleIntervalIndex index = new TitleIntervalIndex(titles);
+        assertEquals(3, snapshot.size());
+        assertEquals(Collections.singletonList(DOMS_TITLE_ID1), snapshot.lookup("avis", 10));
+        assertEquals(Collections.singletonList(DOMS_TITLE_ID2), snapshot.lookup("avis", 11));
+        assertEquals(Collections.emptyList(), snapshot.lookup("avis", 21));
+        assertEquals(Collections.singletonList(DOMS_TITLE_ID3), snapshot.lookup("ærøavis", 5));
+        assertEquals(Collections.emptyList(), snapshot.lookup("ukendt", 5));
+        assertEquals(index.getVersion("avis"), snapshot.getVersion("avis"));
+        assertEquals(index.getVersion("ærøavis"), snapshot.getVersion("ærøavis"));
+        assertEquals(0, snapshot.getVersion("ukendt"));
+        assertEquals(TitleIndexSnapshot.versionOf(titles), snapshot.getVersion());
+        assertEquals(3, snapshot.getTitles().size());
+        assertEquals(TitleIndexSnapshot.versionOf(titles), TitleIndexSnapshot.versionOf(snapshot.getTitles()));
+
+        assertFalse(snapshot.getVersion() == TitleIndexSnapshot.versionOf(titles.subList(0, 2)));
+        assertFalse(snapshot.getVersion() == TitleIndexSnapshot.versionOf(Arrays.asList(
+                titles.get(0), titles.get(1), new TitleRecord(DOMS_TITLE_ID3, "ærøavis", 5, 16))));
+
+        // Replacing the file leaves the mapped snapshot as it was
+        TitleIndexSnapshot.write(file, titles.subList(0, 1));
+        assertEquals(3, snapshot.size());
+        assertEquals(Collections.singletonList(DOMS_TITLE_ID1), snapshot.lookup("avis", 0));
+        assertEquals(1, TitleIndexSnapshot.map(file).size());
+    }
+
+    /**
+     * Test that a snapshot records the windows pending reconciliation and when its titles were verified, and that the
+     * verification time is only updated while the file holds the verified titles.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPendingAndVerified() throws Exception {
+        File file = File.createTempFile("titles", ".index");
+        file.deleteOnExit();
+        List<TitleRecord> titles = Arrays.asList(new TitleRecord(DOMS_TITLE_ID1, "avis", 0, 10),
+                                                 new TitleRecord(DOMS_TITLE_ID3, "ærøavis", 5, 15));
+        List<EditionWindow> pending = Arrays.asList(new EditionWindow("ærøavis", 5, 16),
+                                                    new EditionWindow("gone", 1, 2));
+        long before = System.currentTimeMillis();
+        TitleIndexSnapshot.write(file, titles, pending);
+
+        TitleIndexSnapshot snapshot = TitleIndexSnapshot.map(file);
+        assertTrue(snapshot.isPending());
+        assertEquals(pending, snapshot.getPendingWindows());
+        assertEquals(titles.size(), snapshot.getTitles().size());
+        assertEquals(Collections.singletonList(DOMS_TITLE_ID3), snapshot.lookup("ærøavis", 15));
+        assertTrue(snapshot.getVerifiedAt() >= before);
+
+        assertTrue(TitleIndexSnapshot.markVerified(file, snapshot.getVersion(), 42));
+        assertEquals(42, TitleIndexSnapshot.map(file).getVerifiedAt());
+        assertEquals(pending, TitleIndexSnapshot.map(file).getPendingWindows());
+        assertFalse(TitleIndexSnapshot.markVerified(file, TitleIndexSnapshot.versionOf(titles.subList(0, 1)), 43));
+        assertEquals(42, TitleIndexSnapshot.map(file).getVerifiedAt());
+
+        TitleIndexSnapshot.write(file, titles);
+        assertFalse(TitleIndexSnapshot.map(file).isPending());
+        assertEquals(Collections.emptyList(), TitleIndexSnapshot.map(file).getPendingWindows());
+    }
+
+    /**
+     * Test that a file which is not a title snapshot is refused.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMapMalformed() throws Exception {
+        File file = File.createTempFile("titles", ".index");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "uuid:0c1969ca-94be-4ebb-abab-0bd8130e59d7\tavis\t1900-01-01".getBytes("UTF-8"));
+        try {
+            TitleIndexSnapshot.map(file);
+            fail("Expected the file to be refused");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains(file.toString()));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package dk.statsbiblioteket.medieplatform.newspaper.editionRecords;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+
+public class TitleIntervalIndexTest {
+
+    private static final String DOMS_TITLE_ID1 = "uuid:38deefa7-381f-4abf-a6c1-a3531b54f997";
+    private static final String DOMS_TITLE_ID2 = "uuid:781732b1-ca9a-46d4-94cd-ae1c0b7f1ebf";
+    private static final String DOMS_TITLE_ID3 = "uuid:aff7e1f0-4242-4fc1-877d-6382f2bbaaa9";
+
+    /**
+     * Test that lookups find exactly the titles with the given avisID whose period contains the date, including the
+     * first and last day of the period.
+     */
+    @Test
+    public void testLookup() {
+        TitleIntervalIndex index = new TitleIntervalIndex(Arrays.asList(
+                new TitleRecord(DOMS_TITLE_ID1, "avis", EpochDays.parse("1759-01-01"), EpochDays.parse("1799-12-31")),
+                new TitleRecord(DOMS_TITLE_ID2, "avis", EpochDays.parse("1789-01-01"), EpochDays.parse("1850-12-31")),
+                new TitleRecord(DOMS_TITLE_ID3, "andenavis", EpochDays.parse("1700-01-01"),
+                                EpochDays.parse("1900-01-01"))));
+
+        assertEquals(Arrays.asList(DOMS_TITLE_ID1), index.lookup("avis", EpochDays.parse("1759-01-01")));
+        assertEquals(Arrays.asList(DOMS_TITLE_ID1, DOMS_TITLE_ID2), index.lookup("avis", EpochDays.parse("1789-01-01")));
+        assertEquals(Arrays.asList(DOMS_TITLE_ID2), index.lookup("avis", EpochDays.parse("1850-12-31")));
+        assertEquals(Collections.<String>emptyList(), index.lookup("avis", EpochDays.parse("1851-01-01")));
+        assertEquals(Collections.<String>emptyList(), index.lookup("ukendt", EpochDays.parse("1800-01-01")));
+        assertEquals(3, index.size());
+    }
+
+    /**
+     * Test that the version of the titles of an avisID changes with their periods, but not with their order or with
+     * titles of other avisIDs.
+     */
+    @Test
+    public void testVersion() {
+        TitleRecord title1 = new TitleRecord(DOMS_TITLE_ID1, "avis", EpochDays.parse("1759-01-01"),
+                                             EpochDays.parse("1799-12-31"));
+        TitleRecord title2 = new TitleRecord(DOMS_TITLE_ID2, "avis", EpochDays.parse("1789-01-01"),
+                                             EpochDays.parse("1850-12-31"));
+        TitleRecord other = new TitleRecord(DOMS_TITLE_ID3, "andenavis", EpochDays.parse("1700-01-01"),
+                                            EpochDays.parse("1900-01-01"));
+        long version = new TitleIntervalIndex(Arrays.asList(title1, title2)).getVersion("avis");
+
+        assertEquals(version, new TitleIntervalIndex(Arrays.asList(title2, other, title1)).getVersion("avis"));
+        assertFalse(version == new TitleIntervalIndex(Arrays.asList(title1)).getVersion("avis"));
+        assertFalse(version == new TitleIntervalIndex(Arrays.asList(title1, new TitleRecord(
+                DOMS_TITLE_ID2, "avis", EpochDays.parse("1789-01-01"), EpochDays.parse("1851-12-31"))))
+                .getVersion("avis"));
+        assertEquals(0, new TitleIntervalIndex(Arrays.asList(title1)).getVersion("ukendt"));
+    }
+
+    /**
+     * Test that dates are parsed by their day, ignoring time and time zone.
+     */
+    @Test
+    public void testEpochDays() {
+        assertEquals(0, EpochDays.parse("1970-01-01T01:00:00.000+01:00"));
+        assertEquals(-1, EpochDays.parse("1969-12-31"));
+        assertEquals("1789-01-01", EpochDays.format(EpochDays.parse("1789-01-01")));
+    }
+}